@@ -21,6 +21,9 @@ package org.jboss.msc._private;
 import static org.jboss.logging.Logger.Level.ERROR;
 import static org.jboss.logging.Logger.Level.FATAL;
 import static org.jboss.logging.Logger.Level.INFO;
+import static org.jboss.logging.Logger.Level.WARN;
+
+import java.io.File;
 
 import org.jboss.logging.Logger;
 import org.jboss.logging.annotations.Cause;
@@ -138,6 +141,22 @@ public interface MSCLogger {
     @Message(id = 105, value = "Parameter %s is invalid")
     IllegalArgumentException methodParameterIsInvalid(final String parameterName);
 
+    @LogMessage(level = WARN)
+    @Message(id = 106, value = "Ignoring invalid boot cache %s")
+    void invalidBootCache(@Cause Throwable cause, File file);
+
+    @LogMessage(level = WARN)
+    @Message(id = 107, value = "Failed to write boot cache %s")
+    void bootCacheWriteFailed(@Cause Throwable cause, File file);
+
+    @LogMessage(level = WARN)
+    @Message(id = 108, value = "Failed to write transaction journal %s")
+    void journalWriteFailed(@Cause Throwable cause, File file);
+
+    @LogMessage(level = INFO)
+    @Message(id = 109, value = "Boot cache %s does not match the installed services, ignoring its remaining entries")
+    void staleBootCache(File file);
+
     /*
      * Location nesting types.
      */
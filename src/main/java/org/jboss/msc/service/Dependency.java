@@ -18,6 +18,7 @@
 
 package org.jboss.msc.service;
 
+import org.jboss.msc.txn.Listener;
 
 /**
  * A dependency. Every service that needs to access a dependency value should use this class.
@@ -38,4 +39,13 @@ public interface Dependency<T> {
      */
     public T get();
 
+    /**
+     * Sets the listener to be notified whenever the value of this dependency changes, i.e., when the dependency
+     * comes up, when it stops, and when it is replaced. The listener is invoked when the transaction making the change
+     * commits, and must not block. Replaces the current listener, if any.
+     *
+     * @param listener the listener, or {@code null} to remove the current listener
+     */
+    public void setChangeListener(Listener<? super Dependency<T>> listener);
+
 }
@@ -44,6 +44,12 @@ public enum DependencyFlag {
      * Do not place a demand on this dependency. Overrides default mode behavior.
      */
     UNDEMANDED,
+    /**
+     * Do not stop the dependent when this dependency is {@link org.jboss.msc.txn.ServiceController#restart restarted}.
+     * The dependent must not use the dependency value while it is restarting, the new value is available through the
+     * dependency once the restart completes.
+     */
+    RESTART_TOLERANT,
     ;
 
     /**
@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.service;
+
+/**
+ * Latency statistics of a service start or stop, as recorded since the service was installed.
+ * <p>
+ * Latencies are aggregated in a histogram of power of two buckets: bucket {@code 0} counts latencies below one
+ * microsecond (1024 nanoseconds), and bucket {@code i} counts latencies below {@code 2^i} microseconds. The last
+ * bucket also counts all longer latencies.
+ *
+ * @see ServiceRegistry#getSlowestServices(int)
+ */
+public final class LatencyStatistics {
+
+    private final long count;
+    private final long totalNanos;
+    private final long totalWaitNanos;
+    private final long maxNanos;
+    private final long[] buckets;
+
+    /**
+     * Creates latency statistics.
+     *
+     * @param count          the number of recorded latencies
+     * @param totalNanos     the sum of the recorded latencies, in nanoseconds
+     * @param totalWaitNanos the sum of the time spent waiting for dependencies, in nanoseconds
+     * @param maxNanos       the longest recorded latency, in nanoseconds
+     * @param buckets        the histogram bucket counts
+     */
+    public LatencyStatistics(final long count, final long totalNanos, final long totalWaitNanos, final long maxNanos, final long[] buckets) {
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxNanos = maxNanos;
+        this.buckets = buckets.clone();
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return the number of times the service started, or stopped
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of the recorded latencies, measured from the moment the service dependencies are satisfied until
+     * the service completes its start or stop.
+     *
+     * @return the total latency, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the sum of the time spent from the moment the start or stop was scheduled until the service dependencies
+     * were satisfied. This time is not included in {@link #getTotalNanos()}.
+     *
+     * @return the total wait time, in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * Returns the longest recorded latency.
+     *
+     * @return the maximum latency, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the mean of the recorded latencies.
+     *
+     * @return the mean latency, in nanoseconds, or {@code 0} if no latency has been recorded
+     */
+    public long getMeanNanos() {
+        return count == 0? 0: totalNanos / count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded latencies, precise to a factor of two.
+     *
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @return the latency upper bound, in nanoseconds, never greater than {@link #getMaxNanos()}
+     */
+    public long getPercentileNanos(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile");
+        }
+        final long rank = (long) Math.ceil(count * percentile / 100);
+        long accumulated = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            accumulated += buckets[i];
+            if (accumulated >= rank && accumulated > 0) {
+                return i == buckets.length - 1? maxNanos: Math.min(maxNanos, (1L << i) << 10);
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * Returns the histogram bucket counts.
+     *
+     * @return a copy of the bucket counts
+     */
+    public long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    void toJson(final StringBuilder builder) {
+        builder.append("{\"count\":").append(count);
+        builder.append(",\"totalNanos\":").append(totalNanos);
+        builder.append(",\"totalWaitNanos\":").append(totalWaitNanos);
+        builder.append(",\"maxNanos\":").append(maxNanos);
+        builder.append(",\"p50Nanos\":").append(getPercentileNanos(50));
+        builder.append(",\"p99Nanos\":").append(getPercentileNanos(99));
+        builder.append('}');
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", total=" + totalNanos + "ns, wait=" + totalWaitNanos + "ns, max=" + maxNanos + "ns";
+    }
+}
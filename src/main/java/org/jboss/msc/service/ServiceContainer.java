@@ -18,6 +18,7 @@
 
 package org.jboss.msc.service;
 
+import org.jboss.msc.txn.Listener;
 import org.jboss.msc.txn.Transaction;
 
 /**
@@ -37,10 +38,22 @@ public interface ServiceContainer {
     ServiceRegistry newRegistry();
 
     /**
-     * Shuts down the container, removing all registries and their services.
+     * Shuts down the container, removing all registries and their services. Services are removed in shutdown waves,
+     * in reverse dependency order: the services of a wave are stopped in parallel, once all services of the previous
+     * waves are removed.
      *
      * @param transaction the transaction
      */
     void shutdown(Transaction transaction);
 
+    /**
+     * Shuts down the container, removing all registries and their services. Services are removed in shutdown waves,
+     * as by {@link #shutdown(Transaction)}, and {@code progressListener} is notified every time all services of a
+     * wave are removed.
+     *
+     * @param transaction      the transaction
+     * @param progressListener the shutdown progress listener
+     */
+    void shutdown(Transaction transaction, Listener<ShutdownProgress> progressListener);
+
 }
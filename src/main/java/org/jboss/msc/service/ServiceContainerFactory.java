@@ -18,6 +18,9 @@
 
 package org.jboss.msc.service;
 
+import java.io.File;
+
+import org.jboss.msc._private.MSCLogger;
 import org.jboss.msc.txn.ServiceContainerImpl;
 
 /**
@@ -49,4 +52,20 @@ public final class ServiceContainerFactory {
         return new ServiceContainerImpl();
     }
 
+    /**
+     * Creates new service container that uses a boot cache. The cache is read from {@code bootCacheFile} on creation,
+     * if available, and is overwritten with the container's service graph when the shutdown transaction commits. The
+     * cache only speeds up the installation of services; an outdated or invalid cache has no effect on the container
+     * behavior.
+     *
+     * @param bootCacheFile the boot cache file
+     * @return a reference to this object
+     */
+    public ServiceContainer newServiceContainer(final File bootCacheFile) {
+        if (bootCacheFile == null) {
+            throw MSCLogger.SERVICE.methodParameterIsNull("bootCacheFile");
+        }
+        return new ServiceContainerImpl(bootCacheFile);
+    }
+
 }
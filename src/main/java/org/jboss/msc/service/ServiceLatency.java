@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.service;
+
+/**
+ * The start and stop latencies of a service.
+ *
+ * @see ServiceRegistry#getSlowestServices(int)
+ */
+public final class ServiceLatency {
+
+    private final ServiceName serviceName;
+    private final LatencyStatistics startLatency;
+    private final LatencyStatistics stopLatency;
+
+    /**
+     * Creates a service latency.
+     *
+     * @param serviceName  the service name
+     * @param startLatency the start latency statistics
+     * @param stopLatency  the stop latency statistics
+     */
+    public ServiceLatency(final ServiceName serviceName, final LatencyStatistics startLatency, final LatencyStatistics stopLatency) {
+        this.serviceName = serviceName;
+        this.startLatency = startLatency;
+        this.stopLatency = stopLatency;
+    }
+
+    /**
+     * Returns the service name.
+     *
+     * @return the service name
+     */
+    public ServiceName getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Returns the start latency statistics.
+     *
+     * @return the start latency statistics
+     */
+    public LatencyStatistics getStartLatency() {
+        return startLatency;
+    }
+
+    /**
+     * Returns the stop latency statistics.
+     *
+     * @return the stop latency statistics
+     */
+    public LatencyStatistics getStopLatency() {
+        return stopLatency;
+    }
+
+    void toJson(final StringBuilder builder) {
+        builder.append("{\"name\":\"");
+        final String name = serviceName.getCanonicalName();
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append("\",\"start\":");
+        startLatency.toJson(builder);
+        builder.append(",\"stop\":");
+        stopLatency.toJson(builder);
+        builder.append('}');
+    }
+
+    @Override
+    public String toString() {
+        return serviceName + " start[" + startLatency + "] stop[" + stopLatency + "]";
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A report of the services that took the longest to start, slowest first.
+ *
+ * @see ServiceRegistry#getSlowestServices(int)
+ */
+public final class ServiceLatencyReport {
+
+    private final List<ServiceLatency> services;
+
+    /**
+     * Creates a report.
+     *
+     * @param services the service latencies, slowest first
+     */
+    public ServiceLatencyReport(final List<ServiceLatency> services) {
+        this.services = Collections.unmodifiableList(services);
+    }
+
+    /**
+     * Returns the service latencies, slowest first.
+     *
+     * @return the service latencies
+     */
+    public List<ServiceLatency> getServices() {
+        return services;
+    }
+
+    /**
+     * Exports this report as a JSON document of the form
+     * <code>{"services":[{"name":..., "start":{...}, "stop":{...}}, ...]}</code>.
+     *
+     * @return the JSON document
+     */
+    public String toJson() {
+        final StringBuilder builder = new StringBuilder("{\"services\":[");
+        for (int i = 0; i < services.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            services.get(i).toJson(builder);
+        }
+        return builder.append("]}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
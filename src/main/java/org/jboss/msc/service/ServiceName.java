@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -29,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
@@ -46,6 +48,8 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
     private volatile String canonicalName;
     private final ServiceName parent;
     private final transient int hashCode;
+    // true if this is the canonical instance of this name in the intern pool
+    private transient boolean interned;
 
     private static final AtomicReferenceFieldUpdater<ServiceName, String> canonicalNameUpdater = AtomicReferenceFieldUpdater.newUpdater(ServiceName.class, String.class, "canonicalName");
 
@@ -88,6 +92,29 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
         return current;
     }
 
+    /**
+     * Create an interned ServiceName from a series of String parts.
+     *
+     * @param parts The string representations of the service name segments
+     * @return The canonical ServiceName instance
+     * @see #intern()
+     */
+    public static ServiceName ofInterned(final String... parts) {
+        return of(null, parts).intern();
+    }
+
+    /**
+     * Create an interned ServiceName from a series of String parts and a parent service name.
+     *
+     * @param parent The parent ServiceName for this name
+     * @param parts The string representations of the service name segments
+     * @return The canonical ServiceName instance
+     * @see #intern()
+     */
+    public static ServiceName ofInterned(final ServiceName parent, String... parts) {
+        return of(parent, parts).intern();
+    }
+
     private ServiceName(final ServiceName parent, final String name) {
         this.name = name;
         this.parent = parent;
@@ -125,6 +152,33 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
         }
     }
 
+    /**
+     * Returns a canonical instance of this service name. Two interned service names are equal if and only if they
+     * are the same instance, and the parent of an interned name is interned as well, so common prefixes are shared.
+     * Interned names are weakly referenced by the intern pool, and are discarded when no longer used.
+     *
+     * @return the canonical service name, which may be this instance
+     */
+    public ServiceName intern() {
+        if (interned) {
+            return this;
+        }
+        final ServiceName parent = this.parent;
+        final ServiceName internedParent = parent == null ? null : parent.intern();
+        final InternPool pool = INTERN_POOLS[hashCode & (INTERN_POOLS.length - 1)];
+        synchronized (pool) {
+            final WeakReference<ServiceName> reference = pool.get(this);
+            final ServiceName existing = reference == null ? null : reference.get();
+            if (existing != null) {
+                return existing;
+            }
+            final ServiceName canonical = internedParent == parent ? this : new ServiceName(internedParent, name);
+            canonical.interned = true;
+            pool.put(canonical, new WeakReference<ServiceName>(canonical));
+            return canonical;
+        }
+    }
+
     /**
      * Get the length (in segments) of this service name.
      *
@@ -220,7 +274,7 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
         if (o == this) {
             return true;
         }
-        if (o == null || hashCode != o.hashCode || ! name.equals(o.name)) {
+        if (o == null || hashCode != o.hashCode || interned && o.interned || ! name.equals(o.name)) {
             return false;
         }
 
@@ -597,6 +651,19 @@ public final class ServiceName implements Comparable<ServiceName>, Serializable
         }
     }
 
+    // Intern pool, striped to reduce contention
+
+    private static final InternPool[] INTERN_POOLS = new InternPool[16];
+
+    static {
+        for (int i = 0; i < INTERN_POOLS.length; i++) {
+            INTERN_POOLS[i] = new InternPool();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class InternPool extends WeakHashMap<ServiceName, WeakReference<ServiceName>> {}
+
     // Serialization stuff
 
     private static final Field hashCodeField;
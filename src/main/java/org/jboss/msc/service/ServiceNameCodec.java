@@ -0,0 +1,163 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary codec for collections of {@link ServiceName service names}.
+ * <p>
+ * Names are written in collection order. Every name, and every one of its prefixes, is assigned an id the first time
+ * it is written, so a name sharing a prefix with a previous name is written as a reference to that prefix followed by
+ * its remaining segments only. Segments are kept in a dictionary as well, so a segment that repeats in different
+ * positions is written only once. The format is:
+ * <pre>
+ * names   := count:varint name*
+ * name    := prefixId:varint newSegmentCount:varint segment*
+ * segment := 0:varint text:utf | (segmentId + 1):varint
+ * </pre>
+ * where {@code prefixId} is zero for a name with no previously written prefix, or the id of its longest previously
+ * written prefix plus one. Reading a stream recreates the shared prefixes as shared {@code ServiceName} instances.
+ */
+public final class ServiceNameCodec {
+
+    private ServiceNameCodec() {
+    }
+
+    /**
+     * Writes a collection of service names.
+     *
+     * @param output the data output
+     * @param serviceNames the service names to write
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeServiceNames(final DataOutput output, final Collection<ServiceName> serviceNames) throws IOException {
+        final Map<ServiceName, Integer> prefixIds = new HashMap<ServiceName, Integer>();
+        final Map<String, Integer> segmentIds = new HashMap<String, Integer>();
+        final ArrayList<String> newSegments = new ArrayList<String>();
+        writeVarInt(output, serviceNames.size());
+        for (ServiceName serviceName : serviceNames) {
+            // find the longest prefix already written
+            Integer prefixId = null;
+            ServiceName prefix = serviceName;
+            newSegments.clear();
+            while (prefix != null && (prefixId = prefixIds.get(prefix)) == null) {
+                newSegments.add(prefix.getSimpleName());
+                prefix = prefix.getParent();
+            }
+            writeVarInt(output, prefixId == null ? 0 : prefixId + 1);
+            writeVarInt(output, newSegments.size());
+            // segments were collected from child to parent
+            for (int i = newSegments.size() - 1; i >= 0; i--) {
+                final String segment = newSegments.get(i);
+                final Integer segmentId = segmentIds.get(segment);
+                if (segmentId == null) {
+                    segmentIds.put(segment, segmentIds.size());
+                    writeVarInt(output, 0);
+                    output.writeUTF(segment);
+                } else {
+                    writeVarInt(output, segmentId + 1);
+                }
+            }
+            // register the new prefixes, from parent to child, the same order the reader follows
+            int depth = newSegments.size();
+            final ServiceName[] newPrefixes = new ServiceName[depth];
+            for (ServiceName name = serviceName; depth > 0; name = name.getParent()) {
+                newPrefixes[--depth] = name;
+            }
+            for (ServiceName newPrefix : newPrefixes) {
+                prefixIds.put(newPrefix, prefixIds.size());
+            }
+        }
+    }
+
+    /**
+     * Reads a collection of service names written by {@link #writeServiceNames(DataOutput, Collection)}.
+     *
+     * @param input the data input
+     * @return the service names, in the order they were written
+     * @throws IOException if an I/O error occurs or the input is not valid
+     */
+    public static List<ServiceName> readServiceNames(final DataInput input) throws IOException {
+        final int count = readVarInt(input);
+        final List<ServiceName> prefixes = new ArrayList<ServiceName>();
+        final List<String> segments = new ArrayList<String>();
+        final List<ServiceName> serviceNames = new ArrayList<ServiceName>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            final int prefixId = readVarInt(input);
+            if (prefixId > prefixes.size()) {
+                throw new StreamCorruptedException("Invalid prefix reference " + prefixId);
+            }
+            ServiceName serviceName = prefixId == 0 ? null : prefixes.get(prefixId - 1);
+            final int newSegmentCount = readVarInt(input);
+            if (serviceName == null && newSegmentCount == 0) {
+                throw new StreamCorruptedException("Empty service name");
+            }
+            for (int j = 0; j < newSegmentCount; j++) {
+                final int segmentId = readVarInt(input);
+                final String segment;
+                if (segmentId == 0) {
+                    segment = input.readUTF();
+                    segments.add(segment);
+                } else if (segmentId > segments.size()) {
+                    throw new StreamCorruptedException("Invalid segment reference " + segmentId);
+                } else {
+                    segment = segments.get(segmentId - 1);
+                }
+                if (segment.isEmpty()) {
+                    throw new StreamCorruptedException("Empty service name segment");
+                }
+                serviceName = ServiceName.of(serviceName, segment);
+                prefixes.add(serviceName);
+            }
+            serviceNames.add(serviceName);
+        }
+        return serviceNames;
+    }
+
+    private static void writeVarInt(final DataOutput output, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            output.writeByte(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readVarInt(final DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = input.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Invalid variable length integer");
+    }
+}
@@ -18,6 +18,8 @@
 
 package org.jboss.msc.service;
 
+import java.util.Collection;
+
 import org.jboss.msc.txn.ServiceController;
 import org.jboss.msc.txn.Transaction;
 
@@ -47,6 +49,54 @@ public interface ServiceRegistry {
      */
     ServiceController getService(ServiceName serviceName);
 
+    /**
+     * Gets all service controllers installed under {@code serviceName}, i.e., whose name or alias is
+     * {@code serviceName} or one of its descendants. The cost of this operation is proportional to the size of the
+     * {@code serviceName} subtree, not to the size of the registry.
+     *
+     * @param serviceName the subtree root name
+     * @return the service controllers in the subtree; each controller is included only once
+     */
+    Collection<ServiceController> getServices(ServiceName serviceName);
+
+    /**
+     * Counts the service controllers installed under {@code serviceName}, i.e., whose name or alias is
+     * {@code serviceName} or one of its descendants.
+     *
+     * @param serviceName the subtree root name
+     * @return the number of service controllers in the subtree
+     */
+    int countServices(ServiceName serviceName);
+
+    /**
+     * Removes all services installed under {@code serviceName}, i.e., whose name is {@code serviceName} or one of its
+     * descendants. Services that only have an alias under {@code serviceName} are left installed.
+     *
+     * @param serviceName the subtree root name
+     * @param transaction the transaction
+     */
+    void removeServices(ServiceName serviceName, Transaction transaction);
+
+    /**
+     * Subscribes to the state changes of the services in this registry. Every state change committed by a transaction
+     * is published as a {@link ServiceStateEvent} to the subscription, without blocking the transaction.
+     *
+     * @param capacity the maximum number of events buffered by the subscription, rounded up to a power of two and to
+     *                 at least two; events published while the buffer is full are dropped
+     * @return the subscription
+     */
+    ServiceStateSubscription subscribe(int capacity);
+
+    /**
+     * Reports the services in this registry that took the longest to start, measured from the moment their
+     * dependencies were satisfied until they completed their start. Services that have never started nor stopped are
+     * not included.
+     *
+     * @param count the maximum number of services in the report
+     * @return the report, slowest service first
+     */
+    ServiceLatencyReport getSlowestServices(int count);
+
     /**
      * Disables this registry and all its services, causing {@code UP} services to stop.
      *
@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.service;
+
+/**
+ * The state of a service.
+ */
+public enum ServiceState {
+    /**
+     * Service is being installed.
+     */
+    NEW,
+    /**
+     * Service is installed and not running.
+     */
+    DOWN,
+    /**
+     * Service is starting.
+     */
+    STARTING,
+    /**
+     * Service is running.
+     */
+    UP,
+    /**
+     * Service failed to start.
+     */
+    FAILED,
+    /**
+     * Service is stopping.
+     */
+    STOPPING,
+    /**
+     * Service is being removed.
+     */
+    REMOVING,
+    /**
+     * Service is removed.
+     */
+    REMOVED,
+    ;
+}
@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.service;
+
+/**
+ * A change of service state, committed by a transaction.
+ *
+ * @see ServiceStateSubscription
+ */
+public final class ServiceStateEvent {
+
+    private final ServiceName serviceName;
+    private final ServiceState previousState;
+    private final ServiceState state;
+
+    /**
+     * Creates a service state event.
+     *
+     * @param serviceName   the name of the service
+     * @param previousState the state of the service before the transaction
+     * @param state         the state of the service after the transaction
+     */
+    public ServiceStateEvent(final ServiceName serviceName, final ServiceState previousState, final ServiceState state) {
+        this.serviceName = serviceName;
+        this.previousState = previousState;
+        this.state = state;
+    }
+
+    /**
+     * Returns the name of the service.
+     *
+     * @return the service name
+     */
+    public ServiceName getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Returns the state of the service before the transaction.
+     *
+     * @return the previous state
+     */
+    public ServiceState getPreviousState() {
+        return previousState;
+    }
+
+    /**
+     * Returns the state of the service after the transaction.
+     *
+     * @return the new state
+     */
+    public ServiceState getState() {
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        return serviceName + ": " + previousState + " -> " + state;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.service;
+
+import java.util.Collection;
+
+/**
+ * A subscription to the {@link ServiceStateEvent state changes} of services.
+ * <p>
+ * Events are delivered to a bounded buffer that subscribers drain at their own pace, so that publishing an event never
+ * blocks the transaction that committed the state change. When the buffer is full, new events are dropped and counted
+ * as {@link #getDroppedEvents() dropped events}; a subscriber that finds dropped events should query the current state
+ * of the services it is interested in.
+ *
+ * @see ServiceRegistry#subscribe(int)
+ */
+public interface ServiceStateSubscription {
+
+    /**
+     * Retrieves and removes the oldest event in this subscription.
+     *
+     * @return the oldest event, or {@code null} if there are no events
+     */
+    ServiceStateEvent poll();
+
+    /**
+     * Retrieves and removes up to {@code maxEvents} events, in the order they were published.
+     *
+     * @param events    the collection the events are added to
+     * @param maxEvents the maximum number of events to retrieve
+     * @return the number of events retrieved
+     */
+    int drainTo(Collection<? super ServiceStateEvent> events, int maxEvents);
+
+    /**
+     * Returns the number of events dropped so far because the buffer was full.
+     *
+     * @return the number of dropped events
+     */
+    long getDroppedEvents();
+
+    /**
+     * Closes this subscription. No more events are published to it.
+     */
+    void close();
+}
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.service;
+
+/**
+ * Progress of a container shutdown, reported every time a shutdown wave completes.
+ * <p>
+ * Services are grouped in waves: the first wave contains the services that no other service depends on, and each
+ * following wave contains the services whose dependents are all in previous waves. The services of a wave are stopped
+ * in parallel, once all services of the previous waves are removed.
+ *
+ * @see ServiceContainer#shutdown(org.jboss.msc.txn.Transaction, org.jboss.msc.txn.Listener)
+ */
+public final class ShutdownProgress {
+
+    private final int completedWaves;
+    private final int totalWaves;
+    private final int removedServices;
+    private final int totalServices;
+
+    /**
+     * Creates a shutdown progress.
+     *
+     * @param completedWaves  the number of completed waves
+     * @param totalWaves      the total number of waves
+     * @param removedServices the number of services removed so far
+     * @param totalServices   the total number of services being removed
+     */
+    public ShutdownProgress(final int completedWaves, final int totalWaves, final int removedServices, final int totalServices) {
+        this.completedWaves = completedWaves;
+        this.totalWaves = totalWaves;
+        this.removedServices = removedServices;
+        this.totalServices = totalServices;
+    }
+
+    /**
+     * Returns the number of completed waves.
+     *
+     * @return the number of completed waves
+     */
+    public int getCompletedWaves() {
+        return completedWaves;
+    }
+
+    /**
+     * Returns the total number of waves.
+     *
+     * @return the total number of waves
+     */
+    public int getTotalWaves() {
+        return totalWaves;
+    }
+
+    /**
+     * Returns the number of services removed so far.
+     *
+     * @return the number of removed services
+     */
+    public int getRemovedServices() {
+        return removedServices;
+    }
+
+    /**
+     * Returns the total number of services being removed by the shutdown.
+     *
+     * @return the total number of services
+     */
+    public int getTotalServices() {
+        return totalServices;
+    }
+
+    /**
+     * Indicates if shutdown is complete.
+     *
+     * @return {@code true} if all waves are completed
+     */
+    public boolean isComplete() {
+        return completedWaves == totalWaves;
+    }
+
+    @Override
+    public String toString() {
+        return "Shutdown wave " + completedWaves + " of " + totalWaves + " completed (" + removedServices + " of " + totalServices + " services removed)";
+    }
+}
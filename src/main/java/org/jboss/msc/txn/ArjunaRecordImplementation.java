@@ -24,6 +24,12 @@ import com.arjuna.ats.arjuna.coordinator.RecordType;
 import com.arjuna.ats.arjuna.coordinator.TwoPhaseOutcome;
 
 /**
+ * An Arjuna record driving a transaction.
+ * <p>
+ * Every phase blocks the coordinator thread until the transaction completes it. A prepared transaction that is
+ * {@link Transaction#isReadOnly() read-only} is committed during prepare and votes read-only, so that Arjuna skips the
+ * second phase for it.
+ *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  * @author <a href="mailto:ropalka@redhat.com">Richard Opalka</a>
  */
@@ -99,7 +105,17 @@ final class ArjunaRecordImplementation extends AbstractRecord {
             final CompletionListener<PrepareResult<? extends Transaction>> listener = new CompletionListener<>();
             transaction.prepare(listener);
             final PrepareResult<? extends Transaction> prepareResult = listener.awaitCompletionUninterruptibly();
-            return prepareResult.isPrepared() ? TwoPhaseOutcome.PREPARE_OK : TwoPhaseOutcome.PREPARE_NOTOK;
+            if (!prepareResult.isPrepared()) {
+                return TwoPhaseOutcome.PREPARE_NOTOK;
+            }
+            if (transaction.isReadOnly() && transaction.canCommit()) {
+                // nothing to commit nor roll back, Arjuna skips the second phase
+                final CompletionListener<CommitResult<? extends Transaction>> commitListener = new CompletionListener<>();
+                transaction.commit(commitListener);
+                commitListener.awaitCompletionUninterruptibly();
+                return TwoPhaseOutcome.PREPARE_READONLY;
+            }
+            return TwoPhaseOutcome.PREPARE_OK;
         } catch (final InvalidTransactionStateException e) {
             return TwoPhaseOutcome.PREPARE_NOTOK;
         }
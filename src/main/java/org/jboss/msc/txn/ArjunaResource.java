@@ -28,7 +28,7 @@ import com.arjuna.ats.arjuna.AtomicAction;
 public final class ArjunaResource {
     private final TransactionController transactionController;
 
-    private static final AttachmentKey<ArjunaResource> KEY = AttachmentKey.create();
+    private static final AttachmentKey<ArjunaResource> KEY = AttachmentKey.createIndexed();
     private static final ArjunaTransactionManagementScheme SCHEME = new ArjunaTransactionManagementScheme();
 
     ArjunaResource(final TransactionController transactionController) {
@@ -62,7 +62,9 @@ public final class ArjunaResource {
     }
 
     /**
-     * Register a transaction with the given atomic action.
+     * Register a transaction with the given atomic action. The transaction is prepared when the action prepares, and
+     * committed or aborted when the action completes. A transaction that is read-only once prepared is committed
+     * during prepare, and votes read-only so that the action skips its second phase.
      *
      * @param action the atomic action
      * @param transaction the transaction to register
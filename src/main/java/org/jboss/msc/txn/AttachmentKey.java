@@ -18,29 +18,71 @@
 
 package org.jboss.msc.txn;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A key for a transaction attachment.
+ * <p>
+ * Keys created by the engine itself are given a dense index, so their attachments are stored in an array slot. Keys
+ * created by users through {@link #create()} are stored in a map, so that however many of them are created, they never
+ * take the slots of the engine keys.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 @SuppressWarnings("unused")
 public final class AttachmentKey<T> {
+    static final int MAX_INDEXED_KEYS = 64;
+    private static final AtomicInteger nextIndex = new AtomicInteger();
+
     private final Factory<T> defaultFactory;
+    // the attachment slot index, or -1 if attachments are stored in a map
+    private final int index;
 
-    private AttachmentKey(final Factory<T> factory) {
+    private AttachmentKey(final Factory<T> factory, final boolean indexed) {
         defaultFactory = factory;
+        index = indexed ? newIndex() : -1;
+    }
+
+    private static int newIndex() {
+        int index;
+        do {
+            index = nextIndex.get();
+            if (index == MAX_INDEXED_KEYS) {
+                return -1;
+            }
+        } while (!nextIndex.compareAndSet(index, index + 1));
+        return index;
+    }
+
+    /**
+     * Returns the number of indexed keys created so far.
+     */
+    static int getIndexedKeyCount() {
+        return nextIndex.get();
     }
 
-    private AttachmentKey() {
-        defaultFactory = null;
+    int getIndex() {
+        return index;
     }
 
     public static <T> AttachmentKey<T> create() {
-        return new AttachmentKey<T>();
+        return new AttachmentKey<T>(null, false);
     }
 
     public static <T> AttachmentKey<T> create(Factory<T> factory) {
-        return new AttachmentKey<T>(factory);
+        return new AttachmentKey<T>(factory, false);
+    }
+
+    /**
+     * Creates an engine key, stored in an array slot. Must only be used for keys held by static fields, as the
+     * number of slots is limited to {@link #MAX_INDEXED_KEYS}.
+     */
+    static <T> AttachmentKey<T> createIndexed() {
+        return new AttachmentKey<T>(null, true);
+    }
+
+    static <T> AttachmentKey<T> createIndexed(Factory<T> factory) {
+        return new AttachmentKey<T>(factory, true);
     }
 
     T createValue() {
@@ -0,0 +1,276 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.txn;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.jboss.msc._private.MSCLogger;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.ServiceNameCodec;
+
+/**
+ * A persisted snapshot of the resolved service graph, used to speed up the next boot of a container.
+ * <p>
+ * The cache contains the names of all installed services, stored in the topological order of the
+ * {@link DependencyGraph dependency graph} at the time the container was shut down, each one with a fingerprint of
+ * the names it depends on. When a container is created with a valid cache, a block of orders is reserved and every
+ * registration found in the cache is created with its cached order. Hence, as long as the installed graph does not
+ * change between boots, every dependency edge is inserted in the graph already respecting the topological order, and
+ * no reordering is ever needed to verify it. Every installed service is checked against its cached fingerprint; once
+ * a service is found with different dependencies, the cache is stale and the remaining entries are dropped.
+ * Registrations not found in the cache are appended after the reserved block, so a stale cache only costs a few
+ * reorderings, it never results in a wrong cycle check.
+ * <p>
+ * Only the topological orders are restored from the cache. Service names, dependency edges with their
+ * {@link org.jboss.msc.service.DependencyFlag flags}, service modes and demand counts are still created and computed
+ * by installation, as on a boot without cache.
+ * <p>
+ * The file starts with a header containing a magic number, the format version, the length of the entries and a
+ * checksum of the entries, followed by the service names encoded with {@link ServiceNameCodec} and their
+ * fingerprints. A cache file that cannot be read or whose header does not match its contents is ignored.
+ */
+final class BootCache {
+
+    private static final int MAGIC = 0x4d534342; // MSCB
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 20;
+
+    private final File file;
+    private final DependencyGraph graph;
+    // the cached orders, entries are removed as soon as they are used by a registration
+    private final ConcurrentMap<ServiceName, Long> orders;
+    // the cached fingerprints, entries are removed as soon as they are checked against an installed service
+    private final ConcurrentMap<ServiceName, Integer> fingerprints;
+    private final AtomicBoolean stale = new AtomicBoolean();
+
+    private BootCache(File file, DependencyGraph graph, ConcurrentMap<ServiceName, Long> orders, ConcurrentMap<ServiceName, Integer> fingerprints) {
+        this.file = file;
+        this.graph = graph;
+        this.orders = orders;
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Loads the boot cache stored in {@code file}. If the file does not exist or is invalid, an empty cache is
+     * returned.
+     *
+     * @param file  the boot cache file
+     * @param graph the dependency graph the cached orders are reserved in
+     * @return the boot cache
+     */
+    static BootCache load(File file, DependencyGraph graph) {
+        final ConcurrentMap<ServiceName, Long> orders = new ConcurrentHashMap<ServiceName, Long>();
+        final ConcurrentMap<ServiceName, Integer> fingerprints = new ConcurrentHashMap<ServiceName, Integer>();
+        if (file.isFile()) {
+            try {
+                final DataInputStream entries = read(file);
+                final List<ServiceName> names = ServiceNameCodec.readServiceNames(entries);
+                final long base = graph.reserveOrders(names.size());
+                for (int i = 0; i < names.size(); i++) {
+                    final ServiceName name = names.get(i);
+                    fingerprints.putIfAbsent(name, entries.readInt());
+                    orders.putIfAbsent(name, base + i);
+                }
+            } catch (IOException e) {
+                MSCLogger.SERVICE.invalidBootCache(e, file);
+                orders.clear();
+                fingerprints.clear();
+            }
+        }
+        return new BootCache(file, graph, orders, fingerprints);
+    }
+
+    /**
+     * Returns the topological order of a new registration for {@code serviceName}.
+     *
+     * @param serviceName the name of the registration
+     * @return the cached order, or a new order if {@code serviceName} is not cached or its cached order has already
+     *         been used
+     */
+    long getOrder(ServiceName serviceName) {
+        final Long order = orders.remove(serviceName);
+        return order == null ? graph.newOrder() : order;
+    }
+
+    /**
+     * Checks the dependencies of an installed service against the cached ones. If they do not match, the installed
+     * graph has changed since the cache was stored, and the remaining cached orders are dropped.
+     *
+     * @param service the installed service
+     */
+    void verify(ServiceControllerImpl<?> service) {
+        boolean matches = matches(service, service.getPrimaryRegistration());
+        for (Registration alias: service.getAliasRegistrations()) {
+            matches &= matches(service, alias);
+        }
+        if (!matches && stale.compareAndSet(false, true)) {
+            orders.clear();
+            fingerprints.clear();
+            MSCLogger.SERVICE.staleBootCache(file);
+        }
+    }
+
+    private boolean matches(ServiceControllerImpl<?> service, Registration registration) {
+        final Integer fingerprint = fingerprints.remove(registration.getServiceName());
+        return fingerprint == null || fingerprint == fingerprint(service, registration);
+    }
+
+    /**
+     * Returns the fingerprint of {@code registration}: a hash of the dependency names if it is the primary
+     * registration of {@code service}, the hash of the primary name if it is an alias.
+     */
+    private static int fingerprint(ServiceControllerImpl<?> service, Registration registration) {
+        final Registration primaryRegistration = service.getPrimaryRegistration();
+        if (registration != primaryRegistration) {
+            return primaryRegistration.getServiceName().hashCode();
+        }
+        int fingerprint = 1;
+        for (DependencyImpl<?> dependency: service.getDependencies()) {
+            fingerprint = 31 * fingerprint + dependency.getDependencyRegistration().getServiceName().hashCode();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Creates a committable that stores the current graph in the boot cache file, replacing previous contents. The
+     * graph is captured when this method is invoked, before its services are removed, but the file is written only
+     * when the transaction commits.
+     *
+     * @param registries the registries whose registrations will be stored
+     * @return the committable that writes the cache file
+     */
+    Committable newStoreTask(Collection<ServiceRegistryImpl> registries) {
+        final List<Registration> registrations = new ArrayList<Registration>();
+        for (ServiceRegistryImpl registry: registries) {
+            for (Registration registration: registry.getRegistrations()) {
+                if (registration.getController() != null) {
+                    registrations.add(registration);
+                }
+            }
+        }
+        final Registration[] sorted = graph.sort(registrations);
+        final List<ServiceName> names = new ArrayList<ServiceName>(sorted.length);
+        for (Registration registration: sorted) {
+            names.add(registration.getServiceName());
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.write(new byte[HEADER_SIZE]);
+            ServiceNameCodec.writeServiceNames(out, names);
+            for (Registration registration: sorted) {
+                final ServiceControllerImpl<?> controller = registration.getController();
+                out.writeInt(controller == null ? 0 : fingerprint(controller, registration));
+            }
+            out.flush();
+        } catch (IOException e) {
+            // writing to memory
+            throw new IllegalStateException(e);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, buffer.limit() - HEADER_SIZE);
+        buffer.putLong(12, checksum(buffer));
+        return new StoreTask(buffer.array());
+    }
+
+    private void write(byte[] contents) {
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            final FileOutputStream fos = new FileOutputStream(tmpFile);
+            try {
+                fos.write(contents);
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            MSCLogger.SERVICE.bootCacheWriteFailed(e, file);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Reads the whole file and checks its header. The file is read into memory rather than mapped, so that no mapping
+     * outlives the read and the file can be replaced by {@link #store} on every platform.
+     */
+    private static DataInputStream read(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        final byte[] bytes;
+        try {
+            final long length = raf.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Unrecognized boot cache format");
+            }
+            bytes = new byte[(int) length];
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unrecognized boot cache format");
+        }
+        if (buffer.getInt(8) != buffer.limit() - HEADER_SIZE || buffer.getLong(12) != checksum(buffer)) {
+            throw new IOException("Boot cache checksum mismatch");
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE));
+    }
+
+    private static long checksum(ByteBuffer buffer) {
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, buffer.limit() - HEADER_SIZE);
+        return crc.getValue();
+    }
+
+    private final class StoreTask implements Committable {
+        private final byte[] contents;
+
+        StoreTask(byte[] contents) {
+            this.contents = contents;
+        }
+
+        @Override
+        public void commit(CommitContext context) {
+            try {
+                write(contents);
+            } finally {
+                context.complete();
+            }
+        }
+    }
+}
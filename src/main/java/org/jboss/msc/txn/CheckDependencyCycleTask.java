@@ -17,24 +17,23 @@
  */
 package org.jboss.msc.txn;
 
-import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jboss.msc._private.MSCLogger;
 import org.jboss.msc.service.ServiceName;
 
 /**
- * Task that checks for dependency cycles.
+ * Task that checks for dependency cycles. The check is incremental: only the edges added by the services installed
+ * in the transaction are inserted into the {@link DependencyGraph}, which keeps the topological order of the whole
+ * graph so that edges that respect that order are accepted without any traversal.
  * 
  * @author <a href="mailto:frainone@redhat.com">Flavia Rainone</a>
  *
  */
 final class CheckDependencyCycleTask implements Validatable {
 
-    static final AttachmentKey<CheckDependencyCycleTask> key = AttachmentKey.create();
+    static final AttachmentKey<CheckDependencyCycleTask> key = AttachmentKey.createIndexed();
 
     /**
      * Schedule a check for dependency cycles involving {@code service}. The check is performed during transaction
@@ -44,12 +43,14 @@ final class CheckDependencyCycleTask implements Validatable {
      * @param transaction the active transaction
      */
     static void checkDependencyCycle(ServiceControllerImpl<?> service, Transaction transaction) {
-        final CheckDependencyCycleTask task;
-        if (transaction.hasAttachment(key)) {
-            task = transaction.getAttachment(key);
-        } else {
-            task = new CheckDependencyCycleTask();
-            transaction.getTaskFactory().newTask().setValidatable(task).release();
+        CheckDependencyCycleTask task = transaction.getAttachmentIfPresent(key);
+        if (task == null) {
+            final CheckDependencyCycleTask newTask = new CheckDependencyCycleTask();
+            task = transaction.putAttachmentIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                transaction.getTaskFactory().newTask().setValidatable(task).release();
+            }
         }
         task.checkService(service);
     }
@@ -67,38 +68,13 @@ final class CheckDependencyCycleTask implements Validatable {
     @Override
     public void validate(ValidateContext context) {
         try {
-            final Set<ServiceControllerImpl<?>> checkedServices = new HashSet<ServiceControllerImpl<?>>();
-            final LinkedHashMap<ServiceName, ServiceControllerImpl<?>> pathTrace = new LinkedHashMap<ServiceName, ServiceControllerImpl<?>>();
             for (ServiceControllerImpl<?> service: services) {
-                if (checkedServices.contains(service)) {
-                    continue;
+                for (ServiceName[] cycle: service.getPrimaryRegistration().getGraph().addService(service)) {
+                    context.addProblem(MSCLogger.SERVICE.dependencyCycle(cycle));
                 }
-                final ServiceName serviceName = service.getPrimaryRegistration().getServiceName();
-                pathTrace.put(serviceName, service);
-                verifyCycle(service, pathTrace, checkedServices, context);
-                checkedServices.add(service);
-                pathTrace.remove(serviceName);
             }
         } finally {
             context.complete();
         }
     }
-
-    private void verifyCycle(ServiceControllerImpl<?> service, LinkedHashMap<ServiceName, ServiceControllerImpl<?>> pathTrace, Set<ServiceControllerImpl<?>> checkedServices, ValidateContext context) {
-        for (DependencyImpl<?> dependency: service.getDependencies()) {
-            final ServiceControllerImpl<?> dependencyController = dependency.getDependencyRegistration().getController();
-            if (dependencyController != null && !checkedServices.contains(dependencyController)) {
-                if (pathTrace.containsValue(dependencyController)) {
-                    final ServiceName[] cycle = pathTrace.keySet().toArray(new ServiceName[pathTrace.size()]);
-                    context.addProblem(MSCLogger.SERVICE.dependencyCycle(cycle));
-                    return;
-                }
-                final ServiceName dependencyName = dependency.getDependencyRegistration().getServiceName();
-                pathTrace.put(dependencyName, dependencyController);
-                verifyCycle(dependencyController, pathTrace, checkedServices, context);
-                checkedServices.add(dependencyController);
-                pathTrace.remove(dependencyName);
-            }
-        }
-    }
 }
@@ -17,8 +17,14 @@
  */
 package org.jboss.msc.txn;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
 /**
- * Task for demanding dependencies.
+ * Task for demanding dependencies. Demand is propagated transitively through all {@code ON_DEMAND} and {@code LAZY}
+ * dependencies in a single graph traversal.
  * 
  * @author <a href="mailto:frainone@redhat.com">Flavia Rainone</a>
  */
@@ -70,9 +76,27 @@ class DemandDependenciesTask implements Executable<Void> {
     @Override
     public void execute(ExecuteContext<Void> context) {
         assert context instanceof TaskFactory;
+        final TaskFactory taskFactory = (TaskFactory) context;
         try {
-            for (DependencyImpl<?> dependency: service.getDependencies()) {
-                dependency.demand(transaction, (TaskFactory)context);
+            // demand the whole chain of dependencies in a single traversal, and only then transition the services
+            // whose demand has changed
+            final List<ServiceControllerImpl<?>> demandedServices = new ArrayList<ServiceControllerImpl<?>>();
+            final Deque<ServiceControllerImpl<?>> pendingServices = new ArrayDeque<ServiceControllerImpl<?>>();
+            pendingServices.add(service);
+            ServiceControllerImpl<?> pendingService;
+            while ((pendingService = pendingServices.poll()) != null) {
+                for (DependencyImpl<?> dependency: pendingService.getDependencies()) {
+                    final ServiceControllerImpl<?> dependencyController = dependency.demand(transaction, taskFactory);
+                    if (dependencyController != null && dependencyController.addUpDemand(transaction, taskFactory)) {
+                        demandedServices.add(dependencyController);
+                        if (dependencyController.demandDependencies()) {
+                            pendingServices.add(dependencyController);
+                        }
+                    }
+                }
+            }
+            for (ServiceControllerImpl<?> demandedService: demandedServices) {
+                demandedService.transition(transaction, taskFactory);
             }
         } finally {
             context.complete();
@@ -0,0 +1,411 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.txn;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * Thread-safe structure that maintains a topological order of the service dependency graph of a container across
+ * transactions.
+ * <p>
+ * Graph nodes are {@link Registration registrations}. There is an edge from a dependency registration to the primary
+ * registration of each dependent service, and an edge from the primary registration of a service to each one of its
+ * alias registrations. Every registration keeps its {@link Registration#getTopologicalOrder() topological order},
+ * and the order of the source of every verified edge is lower than the order of its target.
+ * <p>
+ * New edges are verified with the Pearce-Kelly dynamic topological sort algorithm: inserting an edge that already
+ * respects the order costs O(1), otherwise only the nodes whose order lies between the edge endpoints and that are
+ * reachable from them are visited and reordered. Removing edges never invalidates the order, so removals are not
+ * tracked at all. An edge that closes a cycle cannot be ordered; it is left out of the graph for as long as it
+ * exists, so that a transaction committed in spite of the cycle does not break the order of the remaining edges.
+ * <p>
+ * There is one graph per container, shared by all of its registries, as a service may depend on services installed
+ * in another registry of the same container. Edges to registrations of another container are not verified.
+ */
+final class DependencyGraph {
+
+    private static final Comparator<Registration> ORDER_COMPARATOR = new Comparator<Registration>() {
+        @Override
+        public int compare(Registration r1, Registration r2) {
+            final long o1 = r1.getTopologicalOrder(), o2 = r2.getTopologicalOrder();
+            return o1 < o2 ? -1 : o1 == o2 ? 0 : 1;
+        }
+    };
+
+    private static final Comparator<ServiceControllerImpl<?>> SERVICE_ORDER_COMPARATOR = new Comparator<ServiceControllerImpl<?>>() {
+        @Override
+        public int compare(ServiceControllerImpl<?> s1, ServiceControllerImpl<?> s2) {
+            return ORDER_COMPARATOR.compare(s1.getPrimaryRegistration(), s2.getPrimaryRegistration());
+        }
+    };
+
+    private final Lock lock = new ReentrantLock();
+    // orders are never reused, a long counter does not wrap around within the lifetime of a container
+    private final AtomicLong nextOrder = new AtomicLong();
+    // registrations whose edges have been restored by a rollback and must be verified again
+    private final Queue<Registration> restored = new ConcurrentLinkedQueue<Registration>();
+    // dependency edges left out of the graph because they close a cycle, forgotten once the dependency is gone
+    private final Set<DependencyImpl<?>> cyclicDependencies = Collections.newSetFromMap(new WeakHashMap<DependencyImpl<?>, Boolean>());
+    // alias edges left out of the graph because they close a cycle, forgotten once the service is gone
+    private final Map<ServiceControllerImpl<?>, Set<Registration>> cyclicAliases = new WeakHashMap<ServiceControllerImpl<?>, Set<Registration>>();
+
+    /**
+     * Returns the order of a newly created registration. New registrations have no edges, so placing them at the end
+     * of the topological order is always valid.
+     *
+     * @return the topological order
+     */
+    long newOrder() {
+        return nextOrder.getAndIncrement();
+    }
+
+    /**
+     * Reserves a contiguous block of orders, to be assigned to registrations whose relative order is known upfront.
+     *
+     * @param count the number of orders to reserve
+     * @return the first order of the block
+     */
+    long reserveOrders(int count) {
+        return nextOrder.getAndAdd(count);
+    }
+
+    /**
+     * Returns {@code registrations} sorted by their topological order.
+     *
+     * @param registrations the registrations to sort
+     * @return a sorted array containing the registrations
+     */
+    Registration[] sort(Collection<Registration> registrations) {
+        final Registration[] sorted = registrations.toArray(new Registration[registrations.size()]);
+        lock.lock();
+        try {
+            Arrays.sort(sorted, ORDER_COMPARATOR);
+        } finally {
+            lock.unlock();
+        }
+        return sorted;
+    }
+
+    /**
+     * Splits {@code services} in shutdown waves, in reverse topological order. The first wave contains the services
+     * that have no dependents in {@code services}, and each following wave contains the services whose dependents
+     * all belong to previous waves.
+     *
+     * @param services the services to be shut down
+     * @return the shutdown waves
+     */
+    List<List<ServiceControllerImpl<?>>> getShutdownWaves(Collection<ServiceControllerImpl<?>> services) {
+        final ServiceControllerImpl<?>[] sorted = services.toArray(new ServiceControllerImpl<?>[services.size()]);
+        final Map<ServiceControllerImpl<?>, Integer> waveIndexes = new HashMap<ServiceControllerImpl<?>, Integer>(sorted.length);
+        final List<List<ServiceControllerImpl<?>>> waves = new ArrayList<List<ServiceControllerImpl<?>>>();
+        lock.lock();
+        try {
+            Arrays.sort(sorted, SERVICE_ORDER_COMPARATOR);
+            // dependents come after their dependencies in the topological order, visit them first
+            for (int i = sorted.length - 1; i >= 0; i--) {
+                final ServiceControllerImpl<?> service = sorted[i];
+                int waveIndex = getWaveIndex(service.getPrimaryRegistration(), waveIndexes);
+                for (Registration alias: service.getAliasRegistrations()) {
+                    waveIndex = Math.max(waveIndex, getWaveIndex(alias, waveIndexes));
+                }
+                waveIndexes.put(service, waveIndex);
+                if (waveIndex == waves.size()) {
+                    waves.add(new ArrayList<ServiceControllerImpl<?>>());
+                }
+                waves.get(waveIndex).add(service);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return waves;
+    }
+
+    private static int getWaveIndex(Registration registration, Map<ServiceControllerImpl<?>, Integer> waveIndexes) {
+        int waveIndex = 0;
+        for (DependencyImpl<?> incomingDependency: registration.getIncomingDependencies()) {
+            final Integer dependentWaveIndex = waveIndexes.get(incomingDependency.dependent);
+            if (dependentWaveIndex != null && dependentWaveIndex >= waveIndex) {
+                waveIndex = dependentWaveIndex + 1;
+            }
+        }
+        return waveIndex;
+    }
+
+    /**
+     * Inserts the incoming edges of {@code service} into the graph, verifying that they do not create a dependency
+     * cycle. Edges that do create a cycle are left out of the graph.
+     *
+     * @param service the service whose edges will be inserted
+     * @return the dependency cycles found, each one described as the path of service names starting with
+     *         {@code service} and following the dependency chain back to it; an empty list if no cycle was found
+     */
+    List<ServiceName[]> addService(ServiceControllerImpl<?> service) {
+        List<ServiceName[]> cycles = Collections.emptyList();
+        lock.lock();
+        try {
+            verifyRestored();
+            for (DependencyImpl<?> dependency: service.getDependencies()) {
+                final ServiceName[] cycle = addDependencyEdge(dependency);
+                if (cycle != null) {
+                    if (cycles.isEmpty()) {
+                        cycles = new ArrayList<ServiceName[]>();
+                    }
+                    cycles.add(cycle);
+                }
+            }
+            for (Registration alias: service.getAliasRegistrations()) {
+                final ServiceName[] cycle = addAliasEdge(service, alias);
+                if (cycle != null) {
+                    if (cycles.isEmpty()) {
+                        cycles = new ArrayList<ServiceName[]>();
+                    }
+                    cycles.add(cycle);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return cycles;
+    }
+
+    /**
+     * Notifies that the edges of {@code registration} have been restored by a rollback. Those edges may have been
+     * removed when the graph was reordered, so they are verified again before the next insertion.
+     *
+     * @param registration the reverted registration
+     */
+    void edgesRestored(Registration registration) {
+        restored.add(registration);
+    }
+
+    private void verifyRestored() {
+        Registration registration;
+        while ((registration = restored.poll()) != null) {
+            for (DependencyImpl<?> incomingDependency: registration.getIncomingDependencies()) {
+                addDependencyEdge(incomingDependency);
+            }
+            final ServiceControllerImpl<?> controller = registration.getController();
+            if (controller == null) {
+                continue;
+            }
+            if (controller.getPrimaryRegistration() != registration) {
+                addAliasEdge(controller, registration);
+                continue;
+            }
+            for (DependencyImpl<?> dependency: controller.getDependencies()) {
+                addDependencyEdge(dependency);
+            }
+            for (Registration alias: controller.getAliasRegistrations()) {
+                addAliasEdge(controller, alias);
+            }
+        }
+    }
+
+    private ServiceName[] addDependencyEdge(DependencyImpl<?> dependency) {
+        final ServiceControllerImpl<?> dependent = dependency.dependent;
+        final Registration source = dependency.getDependencyRegistration();
+        if (dependent == null || source.getGraph() != this || cyclicDependencies.contains(dependency)) {
+            return null;
+        }
+        final ServiceName[] cycle = addEdge(source, dependent.getPrimaryRegistration());
+        if (cycle != null) {
+            cyclicDependencies.add(dependency);
+        }
+        return cycle;
+    }
+
+    private ServiceName[] addAliasEdge(ServiceControllerImpl<?> service, Registration alias) {
+        if (alias.getGraph() != this || isCyclicAlias(service, alias)) {
+            return null;
+        }
+        final ServiceName[] cycle = addEdge(service.getPrimaryRegistration(), alias);
+        if (cycle != null) {
+            Set<Registration> aliases = cyclicAliases.get(service);
+            if (aliases == null) {
+                aliases = new HashSet<Registration>();
+                cyclicAliases.put(service, aliases);
+            }
+            aliases.add(alias);
+        }
+        return cycle;
+    }
+
+    private boolean isCyclicAlias(ServiceControllerImpl<?> service, Registration alias) {
+        final Set<Registration> aliases = cyclicAliases.get(service);
+        return aliases != null && aliases.contains(alias);
+    }
+
+    /**
+     * Inserts the edge {@code source -> target}, i.e., {@code target} depends on {@code source}.
+     *
+     * @return the cycle created by the edge, or {@code null} if there is none
+     */
+    private ServiceName[] addEdge(Registration source, Registration target) {
+        final long lowerBound = target.getTopologicalOrder();
+        final long upperBound = source.getTopologicalOrder();
+        if (lowerBound > upperBound) {
+            // order is already valid
+            return null;
+        }
+        // search for nodes reachable from target that must be placed after source
+        final Map<Registration, Registration> forward = new HashMap<Registration, Registration>();
+        final Deque<Registration> stack = new ArrayDeque<Registration>();
+        forward.put(target, null);
+        stack.push(target);
+        while (!stack.isEmpty()) {
+            final Registration node = stack.pop();
+            for (Registration successor: successors(node)) {
+                if (successor == source) {
+                    return cycle(source, node, forward);
+                }
+                if (successor.getTopologicalOrder() < upperBound && !forward.containsKey(successor)) {
+                    forward.put(successor, node);
+                    stack.push(successor);
+                }
+            }
+        }
+        // search for nodes that reach source and must be placed before target
+        final Set<Registration> backward = new HashSet<Registration>();
+        backward.add(source);
+        stack.push(source);
+        while (!stack.isEmpty()) {
+            final Registration node = stack.pop();
+            for (Registration predecessor: predecessors(node)) {
+                // edges not verified yet may point backwards, ignore them until they are inserted as well
+                final long order = predecessor.getTopologicalOrder();
+                if (order > lowerBound && order < upperBound && backward.add(predecessor)) {
+                    stack.push(predecessor);
+                }
+            }
+        }
+        reorder(backward, forward.keySet());
+        return null;
+    }
+
+    /**
+     * Reassigns the orders of the affected nodes, placing all {@code backward} nodes before all {@code forward} nodes
+     * while keeping the relative order inside each set.
+     */
+    private static void reorder(Set<Registration> backward, Set<Registration> forward) {
+        final Registration[] backwardNodes = backward.toArray(new Registration[backward.size()]);
+        final Registration[] forwardNodes = forward.toArray(new Registration[forward.size()]);
+        Arrays.sort(backwardNodes, ORDER_COMPARATOR);
+        Arrays.sort(forwardNodes, ORDER_COMPARATOR);
+        final long[] orders = new long[backwardNodes.length + forwardNodes.length];
+        int i = 0;
+        for (Registration node: backwardNodes) {
+            orders[i++] = node.getTopologicalOrder();
+        }
+        for (Registration node: forwardNodes) {
+            orders[i++] = node.getTopologicalOrder();
+        }
+        Arrays.sort(orders);
+        i = 0;
+        for (Registration node: backwardNodes) {
+            node.setTopologicalOrder(orders[i++]);
+        }
+        for (Registration node: forwardNodes) {
+            node.setTopologicalOrder(orders[i++]);
+        }
+    }
+
+    /**
+     * Builds the cycle path in dependency order: the {@code target} of the new edge depends on {@code source}, which
+     * depends on {@code last}, and so on until {@code target} is reached again.
+     */
+    private static ServiceName[] cycle(Registration source, Registration last, Map<Registration, Registration> forward) {
+        final List<ServiceName> path = new ArrayList<ServiceName>();
+        Registration node = last;
+        while (node != null) {
+            path.add(node.getServiceName());
+            node = forward.get(node);
+        }
+        // path is now last, ..., target
+        Collections.rotate(path, 1);
+        path.add(1, source.getServiceName());
+        return path.toArray(new ServiceName[path.size()]);
+    }
+
+    /**
+     * Returns the nodes that depend directly on {@code node}, following only the edges that belong to this graph.
+     */
+    private List<Registration> successors(Registration node) {
+        final List<Registration> successors = new ArrayList<Registration>();
+        for (DependencyImpl<?> incomingDependency: node.getIncomingDependencies()) {
+            final ServiceControllerImpl<?> dependent = incomingDependency.dependent;
+            if (dependent != null && dependent.getPrimaryRegistration().getGraph() == this
+                    && !cyclicDependencies.contains(incomingDependency)) {
+                successors.add(dependent.getPrimaryRegistration());
+            }
+        }
+        final ServiceControllerImpl<?> controller = node.getController();
+        if (controller != null && controller.getPrimaryRegistration() == node) {
+            for (Registration alias: controller.getAliasRegistrations()) {
+                if (alias.getGraph() == this && !isCyclicAlias(controller, alias)) {
+                    successors.add(alias);
+                }
+            }
+        }
+        return successors;
+    }
+
+    /**
+     * Returns the nodes {@code node} depends directly on, following only the edges that belong to this graph.
+     */
+    private List<Registration> predecessors(Registration node) {
+        final ServiceControllerImpl<?> controller = node.getController();
+        if (controller == null) {
+            return Collections.emptyList();
+        }
+        final Registration primaryRegistration = controller.getPrimaryRegistration();
+        if (primaryRegistration != node) {
+            if (primaryRegistration.getGraph() != this || isCyclicAlias(controller, node)) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(primaryRegistration);
+        }
+        final DependencyImpl<?>[] dependencies = controller.getDependencies();
+        final List<Registration> predecessors = new ArrayList<Registration>(dependencies.length);
+        for (DependencyImpl<?> dependency: dependencies) {
+            final Registration dependencyRegistration = dependency.getDependencyRegistration();
+            if (dependencyRegistration.getGraph() == this && !cyclicDependencies.contains(dependency)) {
+                predecessors.add(dependencyRegistration);
+            }
+        }
+        return predecessors;
+    }
+}
@@ -20,6 +20,8 @@ package org.jboss.msc.txn;
 
 import static org.jboss.msc._private.MSCLogger.SERVICE;
 
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 import org.jboss.msc._private.MSCLogger;
 import org.jboss.msc.service.Dependency;
 import org.jboss.msc.service.DependencyFlag;
@@ -40,6 +42,12 @@ class DependencyImpl<T> implements Dependency<T> {
     private static final byte UNREQUIRED_FLAG = (byte)(1 << DependencyFlag.UNREQUIRED.ordinal());
     private static final byte DEMANDED_FLAG   = (byte)(1 << DependencyFlag.DEMANDED.ordinal());
     private static final byte UNDEMANDED_FLAG = (byte)(1 << DependencyFlag.UNDEMANDED.ordinal());
+    private static final byte RESTART_TOLERANT_FLAG = (byte)(1 << DependencyFlag.RESTART_TOLERANT.ordinal());
+    private static final Object UNRESOLVED = new Object();
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<DependencyImpl, Object> cachedValueUpdater = AtomicReferenceFieldUpdater.newUpdater(DependencyImpl.class, Object.class, "cachedValue");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ChangeNotifier, Object> notifiedValueUpdater = AtomicReferenceFieldUpdater.newUpdater(ChangeNotifier.class, Object.class, "notifiedValue");
 
     /**
      * Dependency flags.
@@ -57,6 +65,17 @@ class DependencyImpl<T> implements Dependency<T> {
      * The incoming dependency.
      */
     protected ServiceControllerImpl<?> dependent;
+    /**
+     * The dependency value, cached on first read, or {@link #UNRESOLVED}. Invalidated whenever the value of the
+     * dependency changes, even by a transaction that has not committed yet, so that dependents started by that
+     * transaction see the new value.
+     */
+    private volatile Object cachedValue = UNRESOLVED;
+    /**
+     * The change listener and the value last notified to it, created only when a listener is set, as most
+     * dependencies have none.
+     */
+    private volatile ChangeNotifier<T> changeNotifier;
 
     /**
      * Creates a simple dependency to {@code dependencyRegistration}.
@@ -103,10 +122,72 @@ class DependencyImpl<T> implements Dependency<T> {
         return Bits.allAreSet(flags, UNDEMANDED_FLAG);
     }
 
+    final boolean hasRestartTolerantFlag() {
+        return Bits.allAreSet(flags, RESTART_TOLERANT_FLAG);
+    }
+
+    @SuppressWarnings("unchecked")
     public T get() {
-        @SuppressWarnings("unchecked")
-        ServiceControllerImpl<T> dependencyController = (ServiceControllerImpl<T>) dependencyRegistration.getController();
-        return dependencyController == null? null: dependencyController.getValue();
+        final Object cachedValue = this.cachedValue;
+        if (cachedValue != UNRESOLVED) {
+            return (T) cachedValue;
+        }
+        final ServiceControllerImpl<T> dependencyController = (ServiceControllerImpl<T>) dependencyRegistration.getController();
+        if (dependencyController == null) {
+            return null;
+        }
+        final T value = dependencyController.getValue();
+        // the value is invalidated after it is changed: if it changed after it was read, do not keep it cached
+        if (cachedValueUpdater.compareAndSet(this, UNRESOLVED, value)
+                && (dependencyRegistration.getController() != dependencyController || !dependencyController.hasValue(value))) {
+            cachedValueUpdater.compareAndSet(this, value, UNRESOLVED);
+        }
+        return value;
+    }
+
+    @Override
+    public void setChangeListener(final Listener<? super Dependency<T>> listener) {
+        changeNotifier = listener == null? null: new ChangeNotifier<T>(listener, getCommittedValue());
+    }
+
+    private Object getCommittedValue() {
+        final ServiceControllerImpl<?> dependencyController = dependencyRegistration.getController();
+        final Object value = dependencyController == null? null: dependencyController.getCommittedValue();
+        return value == null? UNRESOLVED: value;
+    }
+
+    /**
+     * Invalidates the cached value. Invoked whenever the dependency value changes, or the dependency registration
+     * switches to another controller.
+     */
+    void invalidateValue() {
+        cachedValue = UNRESOLVED;
+    }
+
+    /**
+     * Notifies the change listener if the committed value of the dependency has changed since the last notification.
+     * Invoked when a transaction that changed the dependency commits, without holding any lock.
+     */
+    void refreshValue() {
+        final ChangeNotifier<T> changeNotifier = this.changeNotifier;
+        if (changeNotifier == null) {
+            return;
+        }
+        // commits of the dependency controller and registrations may refresh concurrently, only the one that changes
+        // the notified value notifies the listener
+        Object oldNotifiedValue, newNotifiedValue;
+        do {
+            oldNotifiedValue = changeNotifier.notifiedValue;
+            newNotifiedValue = getCommittedValue();
+            if (newNotifiedValue == oldNotifiedValue) {
+                return;
+            }
+        } while (!notifiedValueUpdater.compareAndSet(changeNotifier, oldNotifiedValue, newNotifiedValue));
+        try {
+            changeNotifier.listener.handleEvent(this);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, changeNotifier.listener);
+        }
     }
 
     /**
@@ -152,11 +233,10 @@ class DependencyImpl<T> implements Dependency<T> {
      * 
      * @param transaction the active transaction
      * @param taskFactory the task factory
+     * @return the dependency controller, if it must be notified that it is now demanded
      */
-    void demand(Transaction transaction, TaskFactory taskFactory) {
-        if (propagateDemand) {
-            dependencyRegistration.addDemand(transaction, taskFactory);
-        }
+    ServiceControllerImpl<?> demand(Transaction transaction, TaskFactory taskFactory) {
+        return propagateDemand? dependencyRegistration.incrementDemand(transaction, taskFactory): null;
     }
 
     /**
@@ -164,11 +244,10 @@ class DependencyImpl<T> implements Dependency<T> {
      * 
      * @param transaction the active transaction
      * @param taskFactory the task factory
+     * @return the dependency controller, if it must be notified that it is no longer demanded
      */
-    void undemand(Transaction transaction, TaskFactory taskFactory) {
-        if (propagateDemand) {
-            dependencyRegistration.removeDemand(transaction, taskFactory);
-        }
+    ServiceControllerImpl<?> undemand(Transaction transaction, TaskFactory taskFactory) {
+        return propagateDemand? dependencyRegistration.decrementDemand(transaction, taskFactory): null;
     }
 
     /**
@@ -203,4 +282,15 @@ class DependencyImpl<T> implements Dependency<T> {
         }
     }
 
-}
\ No newline at end of file
+    private static final class ChangeNotifier<T> {
+        final Listener<? super Dependency<T>> listener;
+        // the committed dependency value last notified to the listener, or UNRESOLVED; not private, so that the
+        // updater can access it
+        volatile Object notifiedValue;
+
+        ChangeNotifier(Listener<? super Dependency<T>> listener, Object notifiedValue) {
+            this.listener = listener;
+            this.notifiedValue = notifiedValue;
+        }
+    }
+}
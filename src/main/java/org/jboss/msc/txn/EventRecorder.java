@@ -0,0 +1,245 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.txn;
+
+import org.jboss.msc._private.MSCLogger;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * A recorder of transaction and service lifecycle events, that can forward them to a flight recorder or to a
+ * monitoring system. Every event method does nothing by default, so recorders override only the events they are
+ * interested in.
+ * <p>
+ * No recorder is installed by default, in which case emitting an event costs a single volatile read. Events are
+ * emitted by the thread performing the recorded action, often while tasks are waiting on it, so recorders must be fast
+ * and thread safe. An exception thrown by a recorder is logged, and does not affect the recorded action.
+ */
+public abstract class EventRecorder {
+
+    private static final RuntimePermission INSTALL_PERM = new RuntimePermission("canInstallEventRecorder");
+
+    static volatile EventRecorder current;
+
+    protected EventRecorder() {
+    }
+
+    /**
+     * Installs the recorder of all engine events, replacing the current one.
+     *
+     * @param recorder the event recorder, or {@code null} to stop recording events
+     */
+    public static void install(final EventRecorder recorder) {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(INSTALL_PERM);
+        }
+        current = recorder;
+    }
+
+    /**
+     * Gets the start time of an action to be recorded, or {@code 0} if no recorder is installed, so that the time is
+     * read only when events are recorded.
+     */
+    static long startTime() {
+        return current == null ? 0L : System.nanoTime();
+    }
+
+    static void recordTransactionCreated(final Transaction transaction) {
+        final EventRecorder recorder = current;
+        if (recorder != null) try {
+            recorder.transactionCreated(transaction);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, recorder);
+        }
+    }
+
+    // startNanos is the creation time of the transaction, read again only if a recorder is installed
+    static void recordTransactionPrepared(final Transaction transaction, final int taskCount, final long startNanos) {
+        final EventRecorder recorder = current;
+        if (recorder != null) try {
+            recorder.transactionPrepared(transaction, taskCount, System.nanoTime() - startNanos);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, recorder);
+        }
+    }
+
+    static void recordTransactionCommitted(final Transaction transaction, final int taskCount, final long nanos) {
+        final EventRecorder recorder = current;
+        if (recorder != null) try {
+            recorder.transactionCommitted(transaction, taskCount, nanos);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, recorder);
+        }
+    }
+
+    static void recordTransactionRolledBack(final Transaction transaction, final int taskCount, final long nanos) {
+        final EventRecorder recorder = current;
+        if (recorder != null) try {
+            recorder.transactionRolledBack(transaction, taskCount, nanos);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, recorder);
+        }
+    }
+
+    // startNanos is the result of startTime(), the phase is not recorded if no recorder was installed at that time
+    static void recordTaskPhaseExecuted(final TaskController<?> task, final TaskPhase phase, final Object callback, final ClassLoader classLoader, final long startNanos) {
+        final EventRecorder recorder = current;
+        if (recorder != null && startNanos != 0L) try {
+            recorder.taskPhaseExecuted(task, phase, callback, classLoader, System.nanoTime() - startNanos);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, recorder);
+        }
+    }
+
+    // startNanos is the result of startTime(), the wait is not recorded if no recorder was installed at that time
+    static void recordLockWaited(final Transaction transaction, final Transaction holder, final long startNanos) {
+        final EventRecorder recorder = current;
+        if (recorder != null && startNanos != 0L) try {
+            recorder.lockWaited(transaction, holder, System.nanoTime() - startNanos);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, recorder);
+        }
+    }
+
+    static void recordDeadlockDetected(final Transaction transaction, final Transaction other) {
+        final EventRecorder recorder = current;
+        if (recorder != null) try {
+            recorder.deadlockDetected(transaction, other);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, recorder);
+        }
+    }
+
+    static void recordServiceStarted(final ServiceName serviceName, final long waitNanos, final long nanos) {
+        final EventRecorder recorder = current;
+        if (recorder != null) try {
+            recorder.serviceStarted(serviceName, waitNanos, nanos);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, recorder);
+        }
+    }
+
+    static void recordServiceStopped(final ServiceName serviceName, final long waitNanos, final long nanos) {
+        final EventRecorder recorder = current;
+        if (recorder != null) try {
+            recorder.serviceStopped(serviceName, waitNanos, nanos);
+        } catch (Throwable t) {
+            MSCLogger.ROOT.listenerFailed(t, recorder);
+        }
+    }
+
+    /**
+     * A transaction was created.
+     *
+     * @param transaction the transaction
+     */
+    public void transactionCreated(Transaction transaction) {
+    }
+
+    /**
+     * A transaction was prepared.
+     *
+     * @param transaction the transaction
+     * @param taskCount   the number of top level tasks of the transaction
+     * @param nanos       the time elapsed since the transaction was created
+     */
+    public void transactionPrepared(Transaction transaction, int taskCount, long nanos) {
+    }
+
+    /**
+     * A transaction was committed.
+     *
+     * @param transaction the transaction
+     * @param taskCount   the number of top level tasks of the transaction
+     * @param nanos       the duration of the transaction
+     */
+    public void transactionCommitted(Transaction transaction, int taskCount, long nanos) {
+    }
+
+    /**
+     * A transaction was rolled back, or aborted.
+     *
+     * @param transaction the transaction
+     * @param taskCount   the number of top level tasks of the transaction
+     * @param nanos       the duration of the transaction
+     */
+    public void transactionRolledBack(Transaction transaction, int taskCount, long nanos) {
+    }
+
+    /**
+     * A task phase was executed. Only the time spent in the task callback is measured: a task that completes
+     * asynchronously continues its phase after the event.
+     *
+     * @param task        the task
+     * @param phase       the executed phase
+     * @param callback    the object that executed the phase: the executable, validatable, committable or revertible
+     * @param classLoader the class loader of the task, or {@code null} if it has none
+     * @param nanos       the time spent in the callback
+     */
+    public void taskPhaseExecuted(TaskController<?> task, TaskPhase phase, Object callback, ClassLoader classLoader, long nanos) {
+    }
+
+    /**
+     * A transaction waited for another one to release the lock of an object it needed.
+     *
+     * @param transaction the waiting transaction
+     * @param holder      the transaction holding the lock
+     * @param nanos       the time spent waiting
+     */
+    public void lockWaited(Transaction transaction, Transaction holder, long nanos) {
+    }
+
+    /**
+     * A transaction could not wait for another one, as that would cause a deadlock.
+     *
+     * @param transaction the transaction that attempted to wait
+     * @param other       the transaction it attempted to wait for
+     */
+    public void deadlockDetected(Transaction transaction, Transaction other) {
+    }
+
+    /**
+     * A service started.
+     *
+     * @param serviceName the service name
+     * @param waitNanos   the time elapsed from the start being scheduled until it began
+     * @param nanos       the time the service took to start
+     */
+    public void serviceStarted(ServiceName serviceName, long waitNanos, long nanos) {
+    }
+
+    /**
+     * A service stopped.
+     *
+     * @param serviceName the service name
+     * @param waitNanos   the time elapsed from the stop being scheduled until it began
+     * @param nanos       the time the service took to stop
+     */
+    public void serviceStopped(ServiceName serviceName, long waitNanos, long nanos) {
+    }
+
+    /**
+     * The phases of a task.
+     */
+    public enum TaskPhase {
+        EXECUTE,
+        VALIDATE,
+        COMMIT,
+        ROLLBACK,
+    }
+}
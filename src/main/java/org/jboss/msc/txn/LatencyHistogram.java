@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.txn;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jboss.msc.service.LatencyStatistics;
+
+/**
+ * A histogram of service start or stop latencies, in power of two buckets of microseconds. Recording never blocks.
+ *
+ * @see LatencyStatistics
+ */
+final class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+    // bucket counts are 32 bit, two per slot, followed by the totals, so a histogram costs a single small array
+    private static final int BUCKET_SLOTS = BUCKETS / 2;
+    private static final int COUNT = BUCKET_SLOTS;
+    private static final int TOTAL_NANOS = BUCKET_SLOTS + 1;
+    private static final int TOTAL_WAIT_NANOS = BUCKET_SLOTS + 2;
+    private static final int MAX_NANOS = BUCKET_SLOTS + 3;
+    private static final LatencyStatistics EMPTY = new LatencyStatistics(0, 0, 0, 0, new long[BUCKETS]);
+
+    private final AtomicLongArray slots = new AtomicLongArray(BUCKET_SLOTS + 4);
+
+    /**
+     * Records a latency.
+     *
+     * @param waitNanos the time from scheduling until dependencies were satisfied
+     * @param nanos     the time from dependencies satisfied until completion
+     */
+    void record(final long waitNanos, final long nanos) {
+        final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos >>> 10));
+        slots.addAndGet(bucket >> 1, 1L << ((bucket & 1) << 5));
+        slots.addAndGet(TOTAL_NANOS, nanos);
+        slots.addAndGet(TOTAL_WAIT_NANOS, waitNanos);
+        long max;
+        do {
+            max = slots.get(MAX_NANOS);
+        } while (nanos > max && !slots.compareAndSet(MAX_NANOS, max, nanos));
+        slots.incrementAndGet(COUNT);
+    }
+
+    LatencyStatistics getStatistics() {
+        final long[] bucketCounts = new long[BUCKETS];
+        for (int i = 0; i < BUCKET_SLOTS; i++) {
+            final long slot = slots.get(i);
+            bucketCounts[i << 1] = slot & 0xFFFFFFFFL;
+            bucketCounts[(i << 1) + 1] = slot >>> 32;
+        }
+        return new LatencyStatistics(slots.get(COUNT), slots.get(TOTAL_NANOS), slots.get(TOTAL_WAIT_NANOS), slots.get(MAX_NANOS), bucketCounts);
+    }
+
+    static LatencyStatistics getStatistics(LatencyHistogram histogram) {
+        return histogram == null? EMPTY: histogram.getStatistics();
+    }
+}
@@ -18,47 +18,293 @@
 
 package org.jboss.msc.txn;
 
+import static org.jboss.msc._private.MSCLogger.TXN;
+
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
- * A problem report.
+ * A problem report. Problems can be added concurrently without locking, and the number of problems of each severity
+ * can be read at any time without locking either.
+ * <p>
+ * To keep mass failures cheap, a report can {@link #setAggregating(boolean) aggregate} identical problems into a
+ * single entry, and can {@link #setMaxProblems(int) cap} the number of entries it records. Problems beyond the cap
+ * are still counted, and are summarized by a single problem at the end of {@link #getProblems()}.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public final class ProblemReport implements Iterable<Problem> {
-    private Problem.Severity maxSeverity = Problem.Severity.INFO;
-    private final List<Problem> problems = new ArrayList<Problem>();
+
+    private static final Problem.Severity[] SEVERITIES = Problem.Severity.values();
+    private static final AtomicReferenceFieldUpdater<ProblemReport, Entry> headUpdater = AtomicReferenceFieldUpdater.newUpdater(ProblemReport.class, Entry.class, "head");
+    private static final AtomicReferenceFieldUpdater<ProblemReport, Problem> mostSevereDroppedUpdater = AtomicReferenceFieldUpdater.newUpdater(ProblemReport.class, Problem.class, "mostSevereDropped");
+    private static final AtomicIntegerFieldUpdater<ProblemReport> sizeUpdater = AtomicIntegerFieldUpdater.newUpdater(ProblemReport.class, "size");
+    private static final AtomicIntegerFieldUpdater<ProblemReport> droppedUpdater = AtomicIntegerFieldUpdater.newUpdater(ProblemReport.class, "dropped");
+
+    // number of problems added per severity, aggregated and dropped problems included
+    private final AtomicIntegerArray severityCounts = new AtomicIntegerArray(SEVERITIES.length);
+    // the aggregated entries, by message and cause
+    private final ConcurrentMap<Key, Entry> aggregatedEntries = new ConcurrentHashMap<Key, Entry>();
+    // the recorded entries, last recorded first
+    private volatile Entry head;
+    // the number of recorded entries, including entries reserved and not yet linked
+    private volatile int size;
+    // the number of problems not recorded because of the cap
+    private volatile int dropped;
+    // the most severe problem not recorded, described by the overflow summary
+    private volatile Problem mostSevereDropped;
+    private volatile Snapshot snapshot = new Snapshot(null, 0, Collections.<Problem>emptyList());
+    private volatile boolean aggregating;
+    private volatile int maxProblems = Integer.MAX_VALUE;
+    // the transaction notified of added problems, if any
+    private final Transaction transaction;
 
     public ProblemReport() {
+        this(null);
+    }
+
+    ProblemReport(final Transaction transaction) {
+        this.transaction = transaction;
+    }
+
+    /**
+     * Sets whether problems with the same severity, message and cause are aggregated into a single entry. The cause
+     * of a problem is compared by type and message, so identical failures with distinct stack traces are aggregated.
+     * Aggregation applies to problems added from now on.
+     *
+     * @param aggregating {@code true} to aggregate identical problems
+     */
+    public void setAggregating(final boolean aggregating) {
+        this.aggregating = aggregating;
+    }
+
+    /**
+     * Sets the maximum number of entries recorded by this report. Problems added once the cap is reached are counted
+     * but not recorded. The report is not capped by default.
+     *
+     * @param maxProblems the maximum number of entries, at least one
+     */
+    public void setMaxProblems(final int maxProblems) {
+        if (maxProblems < 1) {
+            throw TXN.methodParameterIsInvalid("maxProblems");
+        }
+        this.maxProblems = maxProblems;
+    }
+
+    public void addProblem(final Problem problem) {
+        if (problem == null) {
+            throw TXN.methodParameterIsNull("problem");
+        }
+        record(problem);
+        if (transaction != null) {
+            transaction.problemAdded(problem);
+        }
     }
 
-    public void addProblem(Problem problem) {
-        synchronized (problems) {
-            final Problem.Severity severity = problem.getSeverity();
-            if (maxSeverity == null || severity.compareTo(maxSeverity) > 0) {
-                maxSeverity = severity;
+    private void record(final Problem problem) {
+        severityCounts.incrementAndGet(problem.getSeverity().ordinal());
+        if (aggregating) {
+            final Key key = new Key(problem);
+            Entry entry = aggregatedEntries.get(key);
+            if (entry != null) {
+                entry.occurred();
+                return;
             }
-            problems.add(problem);
+            if (!reserve()) {
+                drop(problem);
+                return;
+            }
+            entry = new Entry(problem);
+            final Entry existing = aggregatedEntries.putIfAbsent(key, entry);
+            if (existing != null) {
+                sizeUpdater.decrementAndGet(this);
+                existing.occurred();
+                return;
+            }
+            link(entry);
+        } else {
+            if (!reserve()) {
+                drop(problem);
+                return;
+            }
+            link(new Entry(problem));
         }
     }
 
+    private boolean reserve() {
+        int size;
+        do {
+            size = this.size;
+            if (size >= maxProblems) {
+                return false;
+            }
+        } while (!sizeUpdater.compareAndSet(this, size, size + 1));
+        return true;
+    }
+
+    private void link(final Entry entry) {
+        Entry head;
+        do {
+            head = this.head;
+            entry.next = head;
+        } while (!headUpdater.compareAndSet(this, head, entry));
+    }
+
+    private void drop(final Problem problem) {
+        Problem mostSevere;
+        do {
+            mostSevere = mostSevereDropped;
+            if (mostSevere != null && mostSevere.getSeverity().compareTo(problem.getSeverity()) >= 0) {
+                break;
+            }
+        } while (!mostSevereDroppedUpdater.compareAndSet(this, mostSevere, problem));
+        droppedUpdater.incrementAndGet(this);
+    }
+
+    /**
+     * Returns the recorded problems, in the order they were recorded. If problems were dropped because of the cap, a
+     * summary problem with the severity of the most severe dropped problem is appended.
+     *
+     * @return the problems
+     */
     public List<Problem> getProblems() {
-        synchronized (problems) {
-            return Collections.<Problem>unmodifiableList(Arrays.asList(problems.toArray(new Problem[problems.size()])));
+        final Entry head = this.head;
+        final int dropped = this.dropped;
+        Snapshot snapshot = this.snapshot;
+        if (snapshot.head == head && snapshot.dropped == dropped) {
+            return snapshot.problems;
         }
+        final ArrayList<Problem> problems = new ArrayList<Problem>();
+        for (Entry entry = head; entry != null; entry = entry.next) {
+            problems.add(entry.problem);
+        }
+        Collections.reverse(problems);
+        final Problem mostSevereDropped = this.mostSevereDropped;
+        if (dropped > 0 && mostSevereDropped != null) {
+            problems.add(new Problem(mostSevereDropped.getTask(), dropped + " more problems were not recorded, the most severe being: "
+                    + mostSevereDropped.getMessage(), mostSevereDropped.getSeverity()));
+        }
+        snapshot = new Snapshot(head, dropped, Collections.unmodifiableList(problems));
+        this.snapshot = snapshot;
+        return snapshot.problems;
+    }
+
+    /**
+     * Returns how many times {@code problem} was added to this report: more than once only if it aggregates identical
+     * problems added later.
+     *
+     * @param problem a problem returned by {@link #getProblems()}
+     * @return the number of occurrences of {@code problem}
+     */
+    public int getOccurrences(final Problem problem) {
+        final Entry entry = aggregatedEntries.get(new Key(problem));
+        return entry != null && entry.problem == problem ? entry.occurrences : 1;
+    }
+
+    /**
+     * Returns the number of problems with {@code severity} added to this report, including aggregated and dropped
+     * problems.
+     *
+     * @param severity the severity
+     * @return the number of problems with {@code severity}
+     */
+    public int getProblemCount(final Problem.Severity severity) {
+        return severityCounts.get(severity.ordinal());
+    }
+
+    /**
+     * Returns the number of problems added to this report, including aggregated and dropped problems.
+     *
+     * @return the number of problems
+     */
+    public int getProblemCount() {
+        int count = 0;
+        for (int i = 0; i < SEVERITIES.length; i++) {
+            count += severityCounts.get(i);
+        }
+        return count;
     }
 
     public Problem.Severity getMaxSeverity() {
-        synchronized (problems) {
-            return maxSeverity;
+        for (int i = SEVERITIES.length - 1; i > 0; i--) {
+            if (severityCounts.get(i) > 0) {
+                return SEVERITIES[i];
+            }
         }
+        return Problem.Severity.INFO;
     }
 
     public Iterator<Problem> iterator() {
         return getProblems().iterator();
     }
+
+    private static final class Entry {
+        private static final AtomicIntegerFieldUpdater<Entry> occurrencesUpdater = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "occurrences");
+
+        private final Problem problem;
+        private volatile int occurrences = 1;
+        // written before the entry is published by the head CAS
+        private Entry next;
+
+        Entry(final Problem problem) {
+            this.problem = problem;
+        }
+
+        void occurred() {
+            occurrencesUpdater.incrementAndGet(this);
+        }
+    }
+
+    private static final class Key {
+        private final Problem.Severity severity;
+        private final String message;
+        private final Class<?> causeType;
+        private final String causeMessage;
+        private final int hashCode;
+
+        Key(final Problem problem) {
+            final Throwable cause = problem.getCause();
+            severity = problem.getSeverity();
+            message = problem.getMessage();
+            causeType = cause == null ? null : cause.getClass();
+            causeMessage = cause == null ? null : cause.getMessage();
+            int hashCode = severity.hashCode() * 31 + message.hashCode();
+            hashCode = hashCode * 31 + (causeType == null ? 0 : causeType.hashCode());
+            this.hashCode = hashCode * 31 + (causeMessage == null ? 0 : causeMessage.hashCode());
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return hashCode == key.hashCode && severity == key.severity && message.equals(key.message) && causeType == key.causeType
+                    && (causeMessage == null ? key.causeMessage == null : causeMessage.equals(key.causeMessage));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Snapshot {
+        private final Entry head;
+        private final int dropped;
+        private final List<Problem> problems;
+
+        Snapshot(final Entry head, final int dropped, final List<Problem> problems) {
+            this.head = head;
+            this.dropped = dropped;
+            this.problems = problems;
+        }
+    }
 }
@@ -18,13 +18,13 @@
 
 package org.jboss.msc.txn;
 
-import static org.jboss.msc.txn.ServiceControllerImpl.STATE_UP;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jboss.msc.service.ServiceName;
 
@@ -36,6 +36,13 @@ import org.jboss.msc.service.ServiceName;
  */
 final class Registration extends TransactionalObject {
 
+    private static final DependencyImpl<?>[] NO_DEPENDENCIES = new DependencyImpl<?>[0];
+    /**
+     * The number of incoming dependencies kept in a copy-on-write array. Registrations with more dependents switch to a
+     * concurrent set, so that adding a dependent does not copy all the others.
+     */
+    private static final int MAX_ARRAY_DEPENDENCIES = 8;
+
     /** The registration name */
     private final ServiceName serviceName;
     /**
@@ -43,17 +50,36 @@ final class Registration extends TransactionalObject {
      */
     private volatile ServiceControllerImpl<?> controller;
     /**
-     * Incoming dependencies, i.e., dependent services.
+     * Incoming dependencies, i.e., dependent services. Either an immutable {@code DependencyImpl<?>[]}, replaced on
+     * every change, or a concurrent {@code Set<DependencyImpl<?>>} once there are too many dependents for copying.
+     * Most registrations have a handful of dependents or none at all, so this saves the cost of an empty set per
+     * registration. Written only while holding this registration.
      */
-    private final Set<DependencyImpl<?>> incomingDependencies = new CopyOnWriteArraySet<DependencyImpl<?>>();
+    private volatile Object incomingDependencies = NO_DEPENDENCIES;
+    /**
+     * The snapshot of the transaction currently holding the write lock, if any. Records the changes made to the
+     * incoming dependencies, so they can be reverted without copying the whole set.
+     */
+    private Snapshot snapshot;
     /**
      * The number of dependent instances which place a demand-to-start on this registration.  If this value is > 0,
      * propagate a demand to the instance, if any.
      */
     private int upDemandedByCount;
+    /**
+     * The dependency graph of the container this registration belongs to.
+     */
+    private final DependencyGraph graph;
+    /**
+     * The position of this registration in the topological order of the dependency graph. Guarded by
+     * {@link #graph}.
+     */
+    private long topologicalOrder;
 
-    Registration(ServiceName serviceName) {
+    Registration(ServiceName serviceName, DependencyGraph graph, long topologicalOrder) {
         this.serviceName = serviceName;
+        this.graph = graph;
+        this.topologicalOrder = topologicalOrder;
     }
 
     ServiceName getServiceName() {
@@ -64,6 +90,27 @@ final class Registration extends TransactionalObject {
         return controller;
     }
 
+    @SuppressWarnings("unchecked")
+    Collection<DependencyImpl<?>> getIncomingDependencies() {
+        final Object incomingDependencies = this.incomingDependencies;
+        if (incomingDependencies instanceof DependencyImpl<?>[]) {
+            return Arrays.asList((DependencyImpl<?>[]) incomingDependencies);
+        }
+        return (Set<DependencyImpl<?>>) incomingDependencies;
+    }
+
+    DependencyGraph getGraph() {
+        return graph;
+    }
+
+    long getTopologicalOrder() {
+        return topologicalOrder;
+    }
+
+    void setTopologicalOrder(long topologicalOrder) {
+        this.topologicalOrder = topologicalOrder;
+    }
+
     boolean setController(final Transaction transaction, final ServiceControllerImpl<?> serviceController) {
         lockWrite(transaction, transaction.getTaskFactory());
         final boolean upDemanded;
@@ -73,6 +120,7 @@ final class Registration extends TransactionalObject {
             }
             this.controller = serviceController;
             upDemanded = upDemandedByCount > 0;
+            invalidateDependentValues();
         }
         if (upDemanded) {
             serviceController.upDemanded(transaction, transaction.getTaskFactory());
@@ -80,88 +128,281 @@ final class Registration extends TransactionalObject {
         return true;
     }
 
-    void clearController(final Transaction transaction, final TaskFactory taskFactory) {
+    void clearController(final Transaction transaction, final TaskFactory taskFactory, final ServiceControllerImpl<?> serviceController) {
         lockWrite(transaction, taskFactory);
         synchronized (this) {
-            this.controller = null;
+            // a replaced controller no longer owns this registration
+            if (this.controller == serviceController) {
+                this.controller = null;
+                invalidateDependentValues();
+            }
         }
     }
 
+    /**
+     * Replaces the controller of this registration. Dependents are not notified, they see the value of
+     * {@code replacement} from now on.
+     *
+     * @return {@code true} if {@code replaced} was the controller of this registration
+     */
+    boolean replaceController(final Transaction transaction, final TaskFactory taskFactory, final ServiceControllerImpl<?> replaced,
+            final ServiceControllerImpl<?> replacement) {
+        lockWrite(transaction, taskFactory);
+        synchronized (this) {
+            if (this.controller != replaced) {
+                return false;
+            }
+            this.controller = replacement;
+            invalidateDependentValues();
+            return true;
+        }
+    }
+
+    synchronized boolean isUpDemanded() {
+        return upDemandedByCount > 0;
+    }
+
     void addIncomingDependency(final Transaction transaction, final DependencyImpl<?> dependency) {
         lockWrite(transaction, transaction.getTaskFactory());
+        final ServiceControllerImpl<?> controller = this.controller;
         final boolean dependencyUp;
-        synchronized (this) {
-            incomingDependencies.add(dependency);
-            dependencyUp = controller != null && controller.getState() == STATE_UP;
+        if (controller == null) {
+            journalIncomingDependency(dependency);
+            dependencyUp = false;
+        } else {
+            dependencyUp = controller.addIncomingDependency(transaction, this, dependency);
         }
         if (dependencyUp) {
             dependency.dependencyUp(transaction, transaction.getTaskFactory());
         }
     }
 
+    /**
+     * Adds {@code dependency} to the incoming dependencies, recording the change in the snapshot.
+     */
+    synchronized void journalIncomingDependency(final DependencyImpl<?> dependency) {
+        if (add(dependency)) {
+            snapshot.journal(dependency, true);
+        }
+    }
+
     void removeIncomingDependency(final Transaction transaction, final TaskFactory taskFactory, final DependencyImpl<?> dependency) {
         lockWrite(transaction, taskFactory);
-        assert incomingDependencies.contains(dependency);
-        incomingDependencies.remove(dependency);
+        synchronized (this) {
+            final boolean removed = remove(dependency);
+            assert removed;
+            snapshot.journal(dependency, false);
+        }
     }
 
-    void serviceUp(final Transaction transaction, final TaskFactory taskFactory) {
-        for (DependencyImpl<?> incomingDependency: incomingDependencies) {
-            incomingDependency.dependencyUp(transaction, taskFactory);
+    /**
+     * Notifies dependents that the service is up.
+     *
+     * @param restarted {@code true} if the service is up after a restart, in which case restart tolerant dependents
+     *                  are not notified, as they were not notified when the service stopped either
+     */
+    void serviceUp(final Transaction transaction, final TaskFactory taskFactory, final boolean restarted) {
+        for (DependencyImpl<?> incomingDependency: getIncomingDependencyArray()) {
+            if (!restarted || !incomingDependency.hasRestartTolerantFlag()) {
+                incomingDependency.dependencyUp(transaction, taskFactory);
+            }
         }
     }
 
-    void serviceDown(final Transaction transaction, final TaskFactory taskFactory, final List<TaskController<?>> tasks) {
-        for (DependencyImpl<?> incomingDependency: incomingDependencies) {
-            final TaskController<?> task = incomingDependency.dependencyDown(transaction, taskFactory);
-            if (task != null) {
-                tasks.add(task);
+    /**
+     * Notifies dependents that the service is stopping.
+     *
+     * @param tasks      the tasks that complete the notified dependents transitions
+     * @param restarting {@code true} if the service is stopping for a restart, in which case restart tolerant
+     *                   dependents are not notified
+     */
+    void serviceDown(final Transaction transaction, final TaskFactory taskFactory, final List<TaskController<?>> tasks, final boolean restarting) {
+        for (DependencyImpl<?> incomingDependency: getIncomingDependencyArray()) {
+            if (!restarting || !incomingDependency.hasRestartTolerantFlag()) {
+                notifyDependencyDown(incomingDependency, transaction, taskFactory, tasks);
             }
         }
     }
 
-    void addDemand(Transaction transaction, TaskFactory taskFactory) {
-        assert ! Thread.holdsLock(this);
-        lockWrite(transaction, taskFactory);
-        final ServiceControllerImpl<?> controller;
-        synchronized (this) {
-            controller = this.controller;
-            if (++ upDemandedByCount > 1) {
-                return;
+    /**
+     * Notifies restart tolerant dependents that the service will not be up after the restart, either because it
+     * failed to start or because it was stopped while restarting.
+     *
+     * @param tasks the tasks that complete the notified dependents transitions
+     */
+    void serviceRestartAborted(final Transaction transaction, final TaskFactory taskFactory, final List<TaskController<?>> tasks) {
+        for (DependencyImpl<?> incomingDependency: getIncomingDependencyArray()) {
+            if (incomingDependency.hasRestartTolerantFlag()) {
+                notifyDependencyDown(incomingDependency, transaction, taskFactory, tasks);
             }
         }
+    }
+
+    /**
+     * Invalidates the value cached by dependents. Invoked whenever the value seen through this registration changes.
+     */
+    void invalidateDependentValues() {
+        for (DependencyImpl<?> incomingDependency: getIncomingDependencies()) {
+            incomingDependency.invalidateValue();
+        }
+    }
+
+    /**
+     * Notifies dependents whose committed dependency value has changed. Invoked when the controller state is
+     * committed, without holding any lock.
+     */
+    void refreshDependentValues() {
+        for (DependencyImpl<?> incomingDependency: getIncomingDependencies()) {
+            incomingDependency.refreshValue();
+        }
+    }
+
+    private static void notifyDependencyDown(final DependencyImpl<?> incomingDependency, final Transaction transaction, final TaskFactory taskFactory, final List<TaskController<?>> tasks) {
+        final TaskController<?> task = incomingDependency.dependencyDown(transaction, taskFactory);
+        if (task != null) {
+            tasks.add(task);
+        }
+    }
+
+    void addDemand(Transaction transaction, TaskFactory taskFactory) {
+        final ServiceControllerImpl<?> controller = incrementDemand(transaction, taskFactory);
         if (controller != null) {
             controller.upDemanded(transaction, taskFactory);
         }
     }
 
     void removeDemand(Transaction transaction, TaskFactory taskFactory) {
+        final ServiceControllerImpl<?> controller = decrementDemand(transaction, taskFactory);
+        if (controller != null) {
+            controller.upUndemanded(transaction, taskFactory);
+        }
+    }
+
+    /**
+     * Increments the demand count of this registration, without notifying the controller.
+     *
+     * @return the controller that must be notified of the new demand, if any
+     */
+    ServiceControllerImpl<?> incrementDemand(Transaction transaction, TaskFactory taskFactory) {
         assert ! Thread.holdsLock(this);
         lockWrite(transaction, taskFactory);
         synchronized (this) {
-            controller = this.controller;
-            if (--upDemandedByCount > 0) {
-                return;
+            return ++ upDemandedByCount == 1? controller: null;
+        }
+    }
+
+    /**
+     * Decrements the demand count of this registration, without notifying the controller.
+     *
+     * @return the controller that must be notified that it is no longer demanded, if any
+     */
+    ServiceControllerImpl<?> decrementDemand(Transaction transaction, TaskFactory taskFactory) {
+        assert ! Thread.holdsLock(this);
+        lockWrite(transaction, taskFactory);
+        synchronized (this) {
+            return -- upDemandedByCount == 0? controller: null;
+        }
+    }
+
+    /**
+     * Returns the incoming dependencies at this moment. A dependency added concurrently is either part of the result,
+     * or is added after the result is returned, never both.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized DependencyImpl<?>[] getIncomingDependencyArray() {
+        final Object incomingDependencies = this.incomingDependencies;
+        if (incomingDependencies instanceof DependencyImpl<?>[]) {
+            // never modified, can be shared
+            return (DependencyImpl<?>[]) incomingDependencies;
+        }
+        final Set<DependencyImpl<?>> set = (Set<DependencyImpl<?>>) incomingDependencies;
+        return set.toArray(new DependencyImpl<?>[set.size()]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean add(final DependencyImpl<?> dependency) {
+        assert Thread.holdsLock(this);
+        final Object incomingDependencies = this.incomingDependencies;
+        if (incomingDependencies instanceof DependencyImpl<?>[]) {
+            final DependencyImpl<?>[] array = (DependencyImpl<?>[]) incomingDependencies;
+            for (DependencyImpl<?> incomingDependency: array) {
+                if (incomingDependency == dependency) {
+                    return false;
+                }
+            }
+            if (array.length < MAX_ARRAY_DEPENDENCIES) {
+                final DependencyImpl<?>[] newArray = Arrays.copyOf(array, array.length + 1);
+                newArray[array.length] = dependency;
+                this.incomingDependencies = newArray;
+            } else {
+                final Set<DependencyImpl<?>> set = Collections.newSetFromMap(new ConcurrentHashMap<DependencyImpl<?>, Boolean>());
+                set.addAll(Arrays.asList(array));
+                set.add(dependency);
+                this.incomingDependencies = set;
             }
+            return true;
         }
-        if (controller != null) {
-            controller.upUndemanded(transaction, taskFactory);
+        return ((Set<DependencyImpl<?>>) incomingDependencies).add(dependency);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean remove(final DependencyImpl<?> dependency) {
+        assert Thread.holdsLock(this);
+        final Object incomingDependencies = this.incomingDependencies;
+        if (incomingDependencies instanceof DependencyImpl<?>[]) {
+            final DependencyImpl<?>[] array = (DependencyImpl<?>[]) incomingDependencies;
+            for (int i = 0; i < array.length; i++) {
+                if (array[i] == dependency) {
+                    if (array.length == 1) {
+                        this.incomingDependencies = NO_DEPENDENCIES;
+                    } else {
+                        final DependencyImpl<?>[] newArray = new DependencyImpl<?>[array.length - 1];
+                        System.arraycopy(array, 0, newArray, 0, i);
+                        System.arraycopy(array, i + 1, newArray, i, newArray.length - i);
+                        this.incomingDependencies = newArray;
+                    }
+                    return true;
+                }
+            }
+            return false;
         }
+        return ((Set<DependencyImpl<?>>) incomingDependencies).remove(dependency);
     }
 
     @Override
     Object takeSnapshot() {
-        return new Snapshot();
+        return snapshot = new Snapshot();
+    }
+
+    @Override
+    void writeUnlocked(boolean committed) {
+        snapshot = null;
+    }
+
+    @Override
+    void committed(final Object snapshot) {
+        final Snapshot committedSnapshot = (Snapshot) snapshot;
+        // dependents see a new value if the controller has been replaced, new dependents need their first value
+        if (committedSnapshot.controller != controller) {
+            refreshDependentValues();
+        } else {
+            for (int i = 0; i < committedSnapshot.journaledDependencies.size(); i++) {
+                if (committedSnapshot.journaledAdditions.get(i)) {
+                    committedSnapshot.journaledDependencies.get(i).refreshValue();
+                }
+            }
+        }
     }
 
     @Override
     void revert(final Object snapshot) {
         ((Snapshot)snapshot).apply();
+        graph.edgesRestored(this);
     }
 
     @Override
     protected synchronized void validate(ReportableContext context) {
-        for (DependencyImpl<?> incomingDependency: incomingDependencies) {
+        for (DependencyImpl<?> incomingDependency: getIncomingDependencies()) {
             incomingDependency.validate(controller, context);
         }
     }
@@ -169,23 +410,34 @@ final class Registration extends TransactionalObject {
     private final class Snapshot {
 
         private final ServiceControllerImpl<?> controller;
-        private final Collection<DependencyImpl<?>> incomingDependencies;
         private final int upDemandedByCount;
+        // incoming dependencies added (true) or removed (false) since the snapshot was taken, in order
+        private final List<DependencyImpl<?>> journaledDependencies = new ArrayList<DependencyImpl<?>>();
+        private final List<Boolean> journaledAdditions = new ArrayList<Boolean>();
 
         // take snapshot
         public Snapshot() {
             controller = Registration.this.controller;
-            incomingDependencies = new ArrayList<DependencyImpl<?>>(Registration.this.incomingDependencies.size());
-            incomingDependencies.addAll(Registration.this.incomingDependencies);
             upDemandedByCount = Registration.this.upDemandedByCount;
         }
 
+        void journal(DependencyImpl<?> dependency, boolean added) {
+            journaledDependencies.add(dependency);
+            journaledAdditions.add(added);
+        }
+
         // revert ServiceController state to what it was when snapshot was taken; invoked on rollback or abort
         public void apply() {
             Registration.this.controller = controller;
             Registration.this.upDemandedByCount = upDemandedByCount;
-            Registration.this.incomingDependencies.clear();
-            Registration.this.incomingDependencies.addAll(incomingDependencies);
+            for (int i = journaledDependencies.size() - 1; i >= 0; i--) {
+                if (journaledAdditions.get(i)) {
+                    Registration.this.remove(journaledDependencies.get(i));
+                } else {
+                    Registration.this.add(journaledDependencies.get(i));
+                }
+            }
+            invalidateDependentValues();
         }
     }
 }
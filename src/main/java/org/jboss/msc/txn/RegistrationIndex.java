@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.txn;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * A concurrent trie of registrations, indexed by the segments of their {@link ServiceName service names}. Allows
+ * retrieving all registrations under a common service name prefix in time proportional to the size of the subtree.
+ */
+final class RegistrationIndex {
+
+    private volatile Node root = new Node();
+
+    /**
+     * Adds a registration to the index.
+     *
+     * @param registration the registration
+     */
+    void add(Registration registration) {
+        Node root;
+        do {
+            root = this.root;
+            getOrCreateNode(root, registration.getServiceName()).registration = registration;
+            // retry if the index has been reset meanwhile
+        } while (root != this.root);
+    }
+
+    /**
+     * Replaces the contents of this index by {@code registrations}. The new trie is built aside and published at
+     * once, so readers see either the old contents or the new ones, never an empty index.
+     *
+     * @param registrations the registrations
+     */
+    void reset(Collection<Registration> registrations) {
+        final Node newRoot = new Node();
+        for (Registration registration: registrations) {
+            getOrCreateNode(newRoot, registration.getServiceName()).registration = registration;
+        }
+        root = newRoot;
+    }
+
+    /**
+     * Returns all registrations whose name is {@code name} or a descendant of {@code name}. The subtree is traversed
+     * lazily, as the returned iterable is iterated.
+     *
+     * @param name the subtree root name
+     * @return the registrations in the subtree
+     */
+    Iterable<Registration> getSubtree(final ServiceName name) {
+        return new Iterable<Registration>() {
+            @Override
+            public Iterator<Registration> iterator() {
+                return new SubtreeIterator(getNode(root, name));
+            }
+        };
+    }
+
+    private static Node getNode(Node root, ServiceName name) {
+        if (name == null) {
+            return root;
+        }
+        final Node parent = getNode(root, name.getParent());
+        if (parent == null) {
+            return null;
+        }
+        final ConcurrentMap<String, Node> children = parent.children;
+        return children == null ? null : children.get(name.getSimpleName());
+    }
+
+    private static Node getOrCreateNode(Node root, ServiceName name) {
+        if (name == null) {
+            return root;
+        }
+        return getOrCreateNode(root, name.getParent()).getOrCreateChild(name.getSimpleName());
+    }
+
+    private static final class SubtreeIterator implements Iterator<Registration> {
+        private final Deque<Node> nodes = new ArrayDeque<Node>();
+        private Registration next;
+
+        SubtreeIterator(Node subtreeRoot) {
+            if (subtreeRoot != null) {
+                nodes.push(subtreeRoot);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !nodes.isEmpty()) {
+                final Node node = nodes.pop();
+                final ConcurrentMap<String, Node> children = node.children;
+                if (children != null) {
+                    for (Node child: children.values()) {
+                        nodes.push(child);
+                    }
+                }
+                next = node.registration;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Registration next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Registration registration = next;
+            next = null;
+            return registration;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class Node {
+        private volatile ConcurrentMap<String, Node> children;
+        private volatile Registration registration;
+
+        Node getOrCreateChild(String segment) {
+            ConcurrentMap<String, Node> children = this.children;
+            if (children == null) {
+                synchronized (this) {
+                    children = this.children;
+                    if (children == null) {
+                        this.children = children = new ConcurrentHashMap<String, Node>(4);
+                    }
+                }
+            }
+            Node child = children.get(segment);
+            if (child == null) {
+                final Node newChild = new Node();
+                child = children.putIfAbsent(segment, newChild);
+                if (child == null) {
+                    child = newChild;
+                }
+            }
+            return child;
+        }
+    }
+}
@@ -42,6 +42,9 @@ import org.jboss.msc.service.ServiceRegistry;
 final class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
 
     static final DependencyFlag[] noFlags = new DependencyFlag[0];
+    // shared by the many services without aliases or dependencies
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+    private static final DependencyImpl<?>[] NO_DEPENDENCIES = new DependencyImpl<?>[0];
 
     // the transaction controller
     private final TransactionController transactionController;
@@ -61,6 +64,8 @@ final class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     private ServiceMode mode;
     // is service builder installed?
     private boolean installed;
+    // the service replaced by this service, if any
+    private final ServiceControllerImpl<?> replacedService;
 
     /**
      * Creates service builder.
@@ -69,10 +74,25 @@ final class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
      * @param transaction  active transaction
      */
     ServiceBuilderImpl(final TransactionController transactionController, final ServiceRegistryImpl registry, final ServiceName name, final Transaction transaction) {
+        this(transactionController, registry, name, null, transaction);
+    }
+
+    /**
+     * Creates service builder for a service that replaces {@code replacedService}.
+     * @param registry         the service registry
+     * @param replacedService  the replaced service
+     * @param transaction      active transaction
+     */
+    ServiceBuilderImpl(final TransactionController transactionController, final ServiceRegistryImpl registry, final ServiceControllerImpl<?> replacedService, final Transaction transaction) {
+        this(transactionController, registry, replacedService.getServiceName(), replacedService, transaction);
+    }
+
+    private ServiceBuilderImpl(final TransactionController transactionController, final ServiceRegistryImpl registry, final ServiceName name, final ServiceControllerImpl<?> replacedService, final Transaction transaction) {
         this.transactionController = transactionController;
         this.transaction = transaction;
         this.registry = (ServiceRegistryImpl) registry;
         this.name = name;
+        this.replacedService = replacedService;
         this.mode = ServiceMode.ACTIVE;
     }
 
@@ -113,6 +133,9 @@ final class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
     @Override
     public ServiceBuilderImpl<T> addAliases(final ServiceName... aliases) {
         checkAlreadyInstalled();
+        if (replacedService != null) {
+            throw new IllegalStateException("A replacement service has the aliases of the replaced service.");
+        }
         if (aliases != null) for (final ServiceName alias : aliases) {
             if (alias != null && !alias.equals(name)) {
                 this.aliases.add(alias);
@@ -203,23 +226,33 @@ final class ServiceBuilderImpl<T> implements ServiceBuilder<T> {
         if (installed) {
             return null;
         }
-        // create primary registration
-        final Registration registration = registry.getOrCreateRegistration(transaction, name);
-
-        // create alias registrations
-        final ServiceName[] aliasArray = aliases.toArray(new ServiceName[aliases.size()]);
-        final Registration[] aliasRegistrations = new Registration[aliasArray.length];
-        int i = 0; 
-        for (ServiceName alias: aliases) {
-            aliasRegistrations[i++] = registry.getOrCreateRegistration(transaction, alias);
+        final Registration registration;
+        final Registration[] aliasRegistrations;
+        if (replacedService != null) {
+            // share the registrations of the replaced service
+            registration = replacedService.getPrimaryRegistration();
+            aliasRegistrations = replacedService.getAliasRegistrations();
+        } else {
+            // create primary registration
+            registration = registry.getOrCreateRegistration(transaction, name);
+
+            // create alias registrations
+            aliasRegistrations = aliases.isEmpty()? NO_REGISTRATIONS: new Registration[aliases.size()];
+            int i = 0; 
+            for (ServiceName alias: aliases) {
+                aliasRegistrations[i++] = registry.getOrCreateRegistration(transaction, alias);
+            }
         }
 
         // create dependencies
-        final DependencyImpl<?>[] dependenciesArray = new DependencyImpl<?>[dependencies.size()];
-        dependencies.values().toArray(dependenciesArray);
+        final DependencyImpl<?>[] dependenciesArray = dependencies.isEmpty()? NO_DEPENDENCIES: dependencies.values().toArray(new DependencyImpl<?>[dependencies.size()]);
         // create and install service controller
         final ServiceControllerImpl<T> serviceController =  new ServiceControllerImpl<T>(registration, aliasRegistrations, service, mode, dependenciesArray, transaction);
-        serviceController.install(registry, transaction);
+        if (replacedService != null) {
+            serviceController.installReplacement(registry, replacedService, transaction);
+        } else {
+            serviceController.install(registry, transaction);
+        }
         CheckDependencyCycleTask.checkDependencyCycle(serviceController, transaction);
         return serviceController;
     }
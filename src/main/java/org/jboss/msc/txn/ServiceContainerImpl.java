@@ -18,13 +18,17 @@
 
 package org.jboss.msc.txn;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.jboss.msc._private.MSCLogger;
 import org.jboss.msc.service.ServiceContainer;
 import org.jboss.msc.service.ServiceRegistry;
+import org.jboss.msc.service.ShutdownProgress;
 
 /**
  * A transactional service container.
@@ -35,24 +39,123 @@ import org.jboss.msc.service.ServiceRegistry;
  */
 public // << TODO Remove this
 final class ServiceContainerImpl implements ServiceContainer {
+    private final Set<ServiceRegistryImpl> registries = Collections.synchronizedSet(new HashSet<ServiceRegistryImpl>());
+    private final DependencyGraph graph = new DependencyGraph();
+    private final BootCache bootCache;
 
+    public ServiceContainerImpl() {
+        bootCache = null;
+    }
 
-    private final Set<ServiceRegistryImpl> registries = Collections.synchronizedSet(new HashSet<ServiceRegistryImpl>());
+    public ServiceContainerImpl(final File bootCacheFile) {
+        bootCache = BootCache.load(bootCacheFile, graph);
+    }
 
     public ServiceRegistry newRegistry() {
-        final ServiceRegistryImpl returnValue = new ServiceRegistryImpl();
+        final ServiceRegistryImpl returnValue = new ServiceRegistryImpl(graph, bootCache);
         registries.add(returnValue);
         return returnValue;
     }
 
     @Override
     public void shutdown(final Transaction txn) {
+        shutdown(txn, null);
+    }
+
+    @Override
+    public void shutdown(final Transaction txn, final Listener<ShutdownProgress> progressListener) {
         if (txn == null) {
             throw MSCLogger.SERVICE.methodParameterIsNull("txn");
         }
+        final List<ServiceRegistryImpl> allRegistries;
+        final List<ServiceControllerImpl<?>> services = new ArrayList<ServiceControllerImpl<?>>();
         synchronized(registries) {
+            allRegistries = new ArrayList<ServiceRegistryImpl>(registries);
             for (final ServiceRegistryImpl registry : registries) {
-                registry.remove(txn);
+                if (registry.setRemoved()) {
+                    services.addAll(registry.getControllers());
+                }
+            }
+        }
+        final TaskFactory taskFactory = txn.getTaskFactory();
+        if (bootCache != null) {
+            // the graph is captured before any service is removed, the cache file is written on commit
+            taskFactory.newTask().setCommittable(bootCache.newStoreTask(allRegistries)).release();
+        }
+        if (services.isEmpty()) {
+            return;
+        }
+        // prepare all services before creating any wave task, as a wave task may run right away and notify services
+        // of later waves that their dependents stopped
+        final Set<ServiceControllerImpl<?>> shutdownServices = new HashSet<ServiceControllerImpl<?>>(services);
+        final List<List<ServiceControllerImpl<?>>> waves = graph.getShutdownWaves(services);
+        final List<List<ServiceControllerImpl<?>>> preparedWaves = new ArrayList<List<ServiceControllerImpl<?>>>(waves.size());
+        final List<List<ServiceControllerImpl<?>>> unpreparedWaves = new ArrayList<List<ServiceControllerImpl<?>>>(waves.size());
+        for (List<ServiceControllerImpl<?>> wave: waves) {
+            final List<ServiceControllerImpl<?>> preparedWave = new ArrayList<ServiceControllerImpl<?>>(wave.size());
+            final List<ServiceControllerImpl<?>> unpreparedWave = new ArrayList<ServiceControllerImpl<?>>();
+            for (ServiceControllerImpl<?> service: wave) {
+                if (service.prepareShutdown(txn, taskFactory, shutdownServices)) {
+                    preparedWave.add(service);
+                } else {
+                    unpreparedWave.add(service);
+                }
+            }
+            preparedWaves.add(preparedWave);
+            unpreparedWaves.add(unpreparedWave);
+        }
+        // each wave is removed by one task, that runs once the previous wave is removed; services that could not be
+        // prepared are removed by their own tasks, that the next wave waits for
+        List<TaskController<?>> previousWaveTasks = new ArrayList<TaskController<?>>();
+        previousWaveTasks.add(services.get(0).getUnlockTask());
+        TaskController<Void> previousProgressTask = null;
+        int removedServices = 0;
+        for (int i = 0; i < waves.size(); i++) {
+            final List<ServiceControllerImpl<?>> preparedWave = preparedWaves.get(i);
+            final List<TaskController<?>> waveTasks = new ArrayList<TaskController<?>>();
+            final TaskController<Void> waveTask = taskFactory.newTask(new ShutdownWaveTask(preparedWave, txn))
+                    .addDependencies(previousWaveTasks).release();
+            waveTasks.add(waveTask);
+            for (ServiceControllerImpl<?> service: preparedWave) {
+                service.setShutdownTask(waveTask);
+            }
+            for (ServiceControllerImpl<?> service: unpreparedWaves.get(i)) {
+                final TaskController<Void> removeTask = service.remove(txn, taskFactory);
+                if (removeTask != null) {
+                    waveTasks.add(removeTask);
+                }
+            }
+            if (progressListener != null) {
+                removedServices += waves.get(i).size();
+                final TaskBuilder<Void> progressTaskBuilder = taskFactory.newTask(
+                        new ShutdownProgressTask(progressListener, new ShutdownProgress(i + 1, waves.size(), removedServices, services.size())));
+                progressTaskBuilder.addDependencies(waveTasks);
+                if (previousProgressTask != null) {
+                    progressTaskBuilder.addDependency(previousProgressTask);
+                }
+                previousProgressTask = progressTaskBuilder.release();
+            }
+            previousWaveTasks = waveTasks;
+        }
+    }
+
+    private static final class ShutdownProgressTask implements Executable<Void> {
+        private final Listener<ShutdownProgress> listener;
+        private final ShutdownProgress progress;
+
+        ShutdownProgressTask(Listener<ShutdownProgress> listener, ShutdownProgress progress) {
+            this.listener = listener;
+            this.progress = progress;
+        }
+
+        @Override
+        public void execute(ExecuteContext<Void> context) {
+            try {
+                listener.handleEvent(progress);
+            } catch (Throwable t) {
+                MSCLogger.ROOT.listenerFailed(t, listener);
+            } finally {
+                context.complete();
             }
         }
     }
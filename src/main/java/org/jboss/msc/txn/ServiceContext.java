@@ -66,7 +66,13 @@ public interface ServiceContext {
     void removeService(ServiceRegistry registry, ServiceName name, Transaction transaction);
 
     /**
-     * Replaces {@code service} by a new service.
+     * Replaces {@code service} by a new service, installed under the same name and aliases.
+     * <p>
+     * The new service starts while {@code service} keeps running and serving its dependents. Once the new service is
+     * up, the dependents are switched to it without being stopped, the value they get from their dependencies being
+     * the new service value from then on, and {@code service} is removed. If the new service fails to start,
+     * {@code service} is kept and the new service is removed. If the transaction is rolled back, {@code service} is
+     * restored.
      * 
      * @param valueType   the type of the service value to be added
      * @param service     the service to be replaced
@@ -76,8 +82,10 @@ public interface ServiceContext {
     <T> ServiceBuilder<T> replaceService(Class<T> valueType, ServiceController service, Transaction transaction);
 
     /**
-     * Replaces {@code service} by a new service.
+     * Replaces {@code service} by a new service, installed under the same name and aliases. See
+     * {@link #replaceService(Class, ServiceController, Transaction)}.
      *
+     * @param registry    the service registry used by default for the new service dependencies
      * @param service     the service to be replaced
      * @param transaction the transaction
      * @return the builder for the service
@@ -80,14 +80,17 @@ class ServiceContextImpl implements ServiceContext {
 
     @Override
     public <T> ServiceBuilder<T> replaceService(Class<T> valueType, ServiceController service, Transaction transaction) {
-        // TODO implement
-        throw new RuntimeException("not implemented");
+        validateTransaction(transaction);
+        final ServiceControllerImpl<?> replacedService = validateReplacedService(service);
+        return new ServiceBuilderImpl<T>(transactionController, replacedService.getRegistry(), replacedService, transaction);
     }
 
     @Override
     public ServiceBuilder<Void> replaceService(ServiceRegistry registry, ServiceController service, Transaction transaction) {
-        // TODO implement
-        throw new RuntimeException("not implemented");
+        validateTransaction(transaction);
+        validateRegistry(registry);
+        final ServiceControllerImpl<?> replacedService = validateReplacedService(service);
+        return new ServiceBuilderImpl<Void>(transactionController, (ServiceRegistryImpl) registry, replacedService, transaction);
     }
 
 
@@ -153,6 +156,16 @@ class ServiceContextImpl implements ServiceContext {
         }
     }
 
+    private ServiceControllerImpl<?> validateReplacedService(ServiceController service) {
+        if (service == null) {
+            throw TXN.methodParameterIsNull("service");
+        }
+        if (!(service instanceof ServiceControllerImpl) || ((ServiceControllerImpl<?>) service).getRegistry() == null) {
+            throw TXN.methodParameterIsInvalid("service");
+        }
+        return (ServiceControllerImpl<?>) service;
+    }
+
     private void validateRegistry(ServiceRegistry registry) {
         if (registry == null) {
             throw TXN.methodParameterIsNull("registry");
@@ -19,6 +19,7 @@
 package org.jboss.msc.txn;
 
 import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceStateSubscription;
 
 /**
  * A controller for a single service instance.
@@ -51,7 +52,10 @@ public interface ServiceController {
     public void remove(Transaction transaction);
 
     /**
-     * Restarts this service.
+     * Restarts this service, stopping and starting it again in the same transaction.<p>
+     * Dependents that depend on this service with the {@link org.jboss.msc.service.DependencyFlag#RESTART_TOLERANT
+     * RESTART_TOLERANT} flag are not affected by the restart, unless the service fails to start again. All other
+     * dependents are stopped and started again along with this service. Does nothing if the service is not {@code UP}.
      * 
      * @param transaction the transaction
      */
@@ -64,6 +68,15 @@ public interface ServiceController {
      */
     public void retry(Transaction transaction);
     
+    /**
+     * Subscribes to the state changes of this service. See
+     * {@link org.jboss.msc.service.ServiceRegistry#subscribe(int)}.
+     *
+     * @param capacity the maximum number of events buffered by the subscription
+     * @return the subscription
+     */
+    public ServiceStateSubscription subscribe(int capacity);
+
     /**
      * Gets associated service.
      * @return service
@@ -20,16 +20,21 @@ package org.jboss.msc.txn;
 
 import static java.lang.Thread.holdsLock;
 import static org.jboss.msc._private.MSCLogger.TXN;
+import static org.jboss.msc.txn.ServiceStateSubscriptionImpl.NO_SUBSCRIPTIONS;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.jboss.msc._private.MSCLogger;
 import org.jboss.msc.service.DuplicateServiceException;
 import org.jboss.msc.service.Service;
 import org.jboss.msc.service.ServiceMode;
+import org.jboss.msc.service.ServiceLatency;
 import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.ServiceStateSubscription;
 import org.jboss.msc.service.StartContext;
 import org.jboss.msc.service.StopContext;
 import org.jboss.msc.txn.Problem.Severity;
@@ -62,7 +67,13 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
     static final byte STATE_MASK       = (byte)0b00011100;
     // controller disposal flags
     static final byte SERVICE_ENABLED  = (byte)0b00100000;
-    static final byte REGISTRY_ENABLED = (byte)0b01000000;
+    // controller has demanded its dependencies
+    static final byte DEPENDENCIES_DEMANDED = (byte)0b01000000;
+    // controller is not the controller of its registrations: a replacement not yet switched, or a replaced controller
+    static final byte DETACHED         = (byte)0b10000000;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ServiceControllerImpl, ServiceStateSubscriptionImpl[]> subscriptionsUpdater = AtomicReferenceFieldUpdater.newUpdater(ServiceControllerImpl.class, ServiceStateSubscriptionImpl[].class, "subscriptions");
     
     /**
      * The service itself.
@@ -81,21 +92,28 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
      */
     private final DependencyImpl<?>[] dependencies;
     /**
-     * The service value, resulting of service start.
+     * The registry this service is installed in.
+     */
+    private ServiceRegistryImpl registry;
+    /**
+     * The service value, resulting of service start. Volatile so that dependents can read it without acquiring the
+     * controller lock.
      */
-    private T value;
+    private volatile T value;
     /**
-     * The controller state.
+     * The controller state: mode, committed state and enablement flags packed in a single word. Only written while
+     * holding the controller lock, but read without it.
      */
-    private byte state = (byte)(STATE_NEW | MODE_ACTIVE);
+    private volatile byte state = (byte)(STATE_NEW | MODE_ACTIVE);
     /**
      * The number of dependencies that are not satisfied.
      */
     private int unsatisfiedDependencies;
     /**
-     * Indicates if this service is demanded to start. Has precedence over {@link downDemanded}.
+     * Indicates if this service is demanded to start. Has precedence over {@link downDemanded}. Only written while
+     * holding the controller lock, but read without it.
      */
-    private int upDemandedByCount;
+    private volatile int upDemandedByCount;
     /**
      * The number of dependents that are currently running. The deployment will
      * not execute the {@code stop()} method (and subsequently leave the
@@ -108,6 +126,15 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
      */
     // will be non null iff write locked
     private volatile TransactionalInfo transactionalInfo = null;
+    /**
+     * Start and stop latencies, created on first start and stop. Transitions of a service never overlap, so there is a
+     * single writer at a time.
+     */
+    private volatile LatencyHistogram startLatency, stopLatency;
+    /**
+     * Subscriptions to the state changes of this service only, copied on write.
+     */
+    private volatile ServiceStateSubscriptionImpl[] subscriptions = NO_SUBSCRIPTIONS;
 
     /**
      * Creates the service controller, thus beginning installation.
@@ -149,7 +176,8 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
     void install(ServiceRegistryImpl registry, Transaction transaction) {
         assert isWriteLocked(transaction);
         // if registry is removed, get an exception right away
-        registry.newServiceInstalled(this, transaction);
+        registry.newServiceInstalled(this);
+        this.registry = registry;
         if (!primaryRegistration.setController(transaction, this)) {
             throw new DuplicateServiceException("Service " + primaryRegistration.getServiceName() + " is already installed");
         }
@@ -158,26 +186,97 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
             // attempt to install controller at alias
             if (!alias.setController(transaction, this)) {
                 // first of all, uninstall controller from installed aliases
-                primaryRegistration.clearController(transaction, transaction.getTaskFactory());
+                primaryRegistration.clearController(transaction, transaction.getTaskFactory(), this);
                 for (int j = 0; j < installedAliases; j++) {
-                    aliasRegistrations[j].clearController(transaction, transaction.getTaskFactory());
+                    aliasRegistrations[j].clearController(transaction, transaction.getTaskFactory(), this);
                 }
                 throw new DuplicateServiceException("Service " + alias.getServiceName() + " is already installed");
             }
             installedAliases ++;
         }
-        boolean demandDependencies;
         synchronized (this) {
             state |= SERVICE_ENABLED;
             transactionalInfo.setState(STATE_DOWN);
-            demandDependencies = isMode(MODE_ACTIVE);
-        }
-        if (demandDependencies) {
-            DemandDependenciesTask.create(this, transaction, transaction.getTaskFactory());
         }
+        updateDependencyDemand(transaction, transaction.getTaskFactory());
         transactionalInfo.transition(transaction, transaction.getTaskFactory());
     }
 
+    /**
+     * Completes the installation of a service that replaces {@code replaced}, sharing its registrations. The service
+     * is started detached from the registrations, while {@code replaced} keeps serving the dependents. Once the
+     * service transition completes, the {@link ServiceReplaceTask replace task} switches the registrations to this
+     * service and removes {@code replaced}.
+     *
+     * @param registry    the registry
+     * @param replaced    the replaced service
+     * @param transaction the active transaction
+     */
+    void installReplacement(ServiceRegistryImpl registry, ServiceControllerImpl<?> replaced, Transaction transaction) {
+        assert isWriteLocked(transaction);
+        final TaskFactory taskFactory = transaction.getTaskFactory();
+        registry.newServiceInstalled(this);
+        this.registry = registry;
+        synchronized (this) {
+            state |= SERVICE_ENABLED | DETACHED;
+            transactionalInfo.setState(STATE_DOWN);
+        }
+        // the replacement inherits the demand of the dependents
+        if (primaryRegistration.isUpDemanded()) {
+            addUpDemand(transaction, taskFactory);
+        }
+        updateDependencyDemand(transaction, taskFactory);
+        final TaskController<?> transitionTask = transactionalInfo.transition(transaction, taskFactory);
+        final TaskBuilder<Void> replaceTaskBuilder = taskFactory.newTask(new ServiceReplaceTask(replaced, this, transaction));
+        if (transitionTask != null) {
+            replaceTaskBuilder.addDependency(transitionTask);
+        }
+        replaceTaskBuilder.addDependency(getUnlockTask()).release();
+    }
+
+    /**
+     * Attaches this replacement service to its registrations, detaching {@code replaced}. The dependents of the
+     * registrations, that were counted as running dependents of {@code replaced}, are transferred to this service. If
+     * {@code replaced} was not up but this service is, dependents are notified.
+     *
+     * @param replaced    the replaced service
+     * @param transaction the active transaction
+     * @param taskFactory the task factory
+     */
+    void attach(ServiceControllerImpl<?> replaced, Transaction transaction, TaskFactory taskFactory) {
+        lockWrite(transaction, taskFactory);
+        final boolean replacedUp = replaced.getState(transaction) == STATE_UP;
+        final int replacedRunningDependents = replaced.detach(transaction, taskFactory);
+        synchronized (this) {
+            state &= ~DETACHED;
+            runningDependents += replacedRunningDependents;
+        }
+        if (!replacedUp && getState(transaction) == STATE_UP) {
+            transactionalInfo.notifyServiceUp(transaction, taskFactory);
+        }
+    }
+
+    private int detach(Transaction transaction, TaskFactory taskFactory) {
+        lockWrite(transaction, taskFactory);
+        synchronized (this) {
+            state |= DETACHED;
+            final int detachedRunningDependents = runningDependents;
+            runningDependents = 0;
+            return detachedRunningDependents;
+        }
+    }
+
+    private boolean isDetached() {
+        return Bits.allAreSet(state, DETACHED);
+    }
+
+    /**
+     * Gets the registry this service is installed in.
+     */
+    ServiceRegistryImpl getRegistry() {
+        return registry;
+    }
+
     /**
      * Gets the primary registration.
      */
@@ -207,20 +306,86 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
     }
 
     T getValue() {
+        final T value = this.value;
         if (value == null) {
             throw MSCLogger.SERVICE.serviceNotStarted();
         }
         return value;
     }
 
+    /**
+     * Gets the service value if this service is committed {@code UP}, {@code null} otherwise.
+     */
+    T getCommittedValue() {
+        return getState(state) == STATE_UP? value: null;
+    }
+
     void setValue(T value) {
         this.value = value;
+        invalidateDependentValues(primaryRegistration);
+        for (Registration aliasRegistration: aliasRegistrations) {
+            invalidateDependentValues(aliasRegistration);
+        }
+    }
+
+    /**
+     * Indicates if {@code value} is the current value of this service, committed or not.
+     */
+    boolean hasValue(Object value) {
+        return this.value == value;
+    }
+
+    private void invalidateDependentValues(Registration registration) {
+        if (registration.getController() == this) {
+            registration.invalidateDependentValues();
+        }
+    }
+
+    /**
+     * Records a start latency.
+     *
+     * @param waitNanos the time from start scheduling until the service dependencies were satisfied
+     * @param nanos     the time from dependencies satisfied until the service completed its start
+     */
+    void recordStartLatency(long waitNanos, long nanos) {
+        LatencyHistogram startLatency = this.startLatency;
+        if (startLatency == null) {
+            this.startLatency = startLatency = new LatencyHistogram();
+        }
+        startLatency.record(waitNanos, nanos);
+        EventRecorder.recordServiceStarted(getServiceName(), waitNanos, nanos);
+    }
+
+    /**
+     * Records a stop latency.
+     *
+     * @param waitNanos the time from stop scheduling until the service dependents were stopped
+     * @param nanos     the time from dependents stopped until the service completed its stop
+     */
+    void recordStopLatency(long waitNanos, long nanos) {
+        LatencyHistogram stopLatency = this.stopLatency;
+        if (stopLatency == null) {
+            this.stopLatency = stopLatency = new LatencyHistogram();
+        }
+        stopLatency.record(waitNanos, nanos);
+        EventRecorder.recordServiceStopped(getServiceName(), waitNanos, nanos);
+    }
+
+    /**
+     * Gets the start and stop latencies of this service, or {@code null} if it has never started nor stopped.
+     */
+    ServiceLatency getLatency() {
+        final LatencyHistogram startLatency = this.startLatency, stopLatency = this.stopLatency;
+        if (startLatency == null && stopLatency == null) {
+            return null;
+        }
+        return new ServiceLatency(getServiceName(), LatencyHistogram.getStatistics(startLatency), LatencyHistogram.getStatistics(stopLatency));
     }
 
     /**
      * Gets the current service controller state.
      */
-    synchronized int getState() {
+    int getState() {
         return getState(state);
     }
 
@@ -236,6 +401,28 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
         return getState(state);
     }
 
+    /**
+     * Adds {@code dependency} to the incoming dependencies of {@code registration}. The addition is ordered with the
+     * notification that this service is up: either the dependency is notified along with the other incoming
+     * dependencies, or this service is already up in {@code transaction} context and the caller must notify it.
+     *
+     * @param transaction  the active transaction
+     * @param registration a registration of this service
+     * @param dependency   the incoming dependency
+     * @return {@code true} if the caller must notify {@code dependency} that this service is up
+     */
+    boolean addIncomingDependency(Transaction transaction, Registration registration, DependencyImpl<?> dependency) {
+        final TransactionalInfo transactionalInfo;
+        synchronized (this) {
+            transactionalInfo = super.isWriteLocked(transaction) ? this.transactionalInfo : null;
+        }
+        if (transactionalInfo == null) {
+            registration.journalIncomingDependency(dependency);
+            return getState() == STATE_UP;
+        }
+        return transactionalInfo.addIncomingDependency(registration, dependency);
+    }
+
     private static int getState(byte state) {
         return (state & STATE_MASK);
     }
@@ -253,6 +440,7 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
             state &= ~SERVICE_ENABLED;
             if (!isRegistryEnabled()) return;
         }
+        updateDependencyDemand(transaction, transaction.getTaskFactory());
         transactionalInfo.transition(transaction, transaction.getTaskFactory());
     }
 
@@ -271,6 +459,7 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
             state |= SERVICE_ENABLED;
             if (!isRegistryEnabled()) return;
         }
+        updateDependencyDemand(transaction, transaction.getTaskFactory());
         transactionalInfo.transition(transaction, transaction.getTaskFactory());
     }
 
@@ -279,29 +468,36 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
         return Bits.allAreSet(state, SERVICE_ENABLED);
     }
 
-    void disableRegistry(Transaction transaction) {
-        lockWrite(transaction, transaction.getTaskFactory());
-        synchronized (this) {
-            if (!isRegistryEnabled()) return;
-            state &= ~REGISTRY_ENABLED;
-            if (!isServiceEnabled()) return;
+    /**
+     * Notifies that the registry has been disabled or enabled. The registry state is consulted by services whenever
+     * they transition, so only services that may have to stop or start, or to demand or undemand their dependencies,
+     * as a result are locked and transitioned. This includes services locked by other transactions, as those may have
+     * decided to transition before the registry state changed.
+     *
+     * @param enabled     the new registry state
+     * @param transaction the active transaction
+     */
+    void registryStateChanged(boolean enabled, Transaction transaction) {
+        if (transactionalInfo == null) {
+            final byte state = this.state;
+            if (!Bits.allAreSet(state, SERVICE_ENABLED)) {
+                return;
+            }
+            if (enabled) {
+                if (getState(state) != STATE_DOWN || (!isMode(state, MODE_ACTIVE) && upDemandedByCount == 0)) {
+                    return;
+                }
+            } else if ((getState(state) == STATE_DOWN || getState(state) == STATE_NEW) && !Bits.allAreSet(state, DEPENDENCIES_DEMANDED)) {
+                return;
+            }
         }
-        transactionalInfo.transition(transaction, transaction.getTaskFactory());
-    }
-
-    void enableRegistry(Transaction transaction) {
         lockWrite(transaction, transaction.getTaskFactory());
-        synchronized (this) {
-            if (isRegistryEnabled()) return;
-            state |= REGISTRY_ENABLED;
-            if (!isServiceEnabled()) return;
-        }
+        updateDependencyDemand(transaction, transaction.getTaskFactory());
         transactionalInfo.transition(transaction, transaction.getTaskFactory());
     }
 
     private boolean isRegistryEnabled() {
-        assert holdsLock(this);
-        return Bits.allAreSet(state, REGISTRY_ENABLED);
+        return registry.isEnabled();
     }
 
     @Override
@@ -315,9 +511,41 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
         this.remove(transaction, transaction.getTaskFactory());
     }
 
+    @Override
+    public ServiceStateSubscription subscribe(int capacity) {
+        if (registry == null) {
+            throw new IllegalStateException("Service " + getServiceName() + " is not installed");
+        }
+        final ServiceStateSubscriptionImpl subscription = registry.newSubscription(this, capacity);
+        ServiceStateSubscriptionImpl[] current;
+        do {
+            current = subscriptions;
+        } while (!subscriptionsUpdater.compareAndSet(this, current, ServiceStateSubscriptionImpl.add(current, subscription)));
+        return subscription;
+    }
+
+    void unsubscribe(ServiceStateSubscriptionImpl subscription) {
+        ServiceStateSubscriptionImpl[] current, updated;
+        do {
+            current = subscriptions;
+            updated = ServiceStateSubscriptionImpl.remove(current, subscription);
+            if (updated == null) {
+                return;
+            }
+        } while (!subscriptionsUpdater.compareAndSet(this, current, updated));
+    }
+
+    ServiceStateSubscriptionImpl[] getSubscriptions() {
+        return subscriptions;
+    }
+
     @Override
     public void restart(Transaction transaction) {
-        // TODO
+        if (transaction == null) {
+            throw TXN.methodParameterIsNull("transaction");
+        }
+        lockWrite(transaction, transaction.getTaskFactory());
+        transactionalInfo.restart(transaction, transaction.getTaskFactory());
     }
 
     /**
@@ -334,6 +562,84 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
         return transactionalInfo.scheduleRemoval(transaction, taskFactory);
     }
 
+    /**
+     * Prepares this service to be removed by a {@link ShutdownWaveTask shutdown wave task}, with no task of its own.
+     * The service is disabled, and it no longer transitions until the wave task removes it. Its demand on its
+     * dependencies is dropped without being withdrawn, as they are removed by the same shutdown.
+     * <p>
+     * A service that is under transition, that is detached, or that has dependents or dependencies outside of
+     * {@code shutdownServices} is not prepared, and must be removed with {@link #remove(Transaction, TaskFactory)}.
+     *
+     * @param transaction      the active transaction
+     * @param taskFactory      the task factory
+     * @param shutdownServices all the services removed by the shutdown
+     * @return {@code true} if this service is prepared to be removed by a shutdown wave task
+     */
+    boolean prepareShutdown(Transaction transaction, TaskFactory taskFactory, Set<ServiceControllerImpl<?>> shutdownServices) {
+        lockWrite(transaction, taskFactory);
+        if (isDetached() || !hasDependentsIn(primaryRegistration, shutdownServices)) {
+            return false;
+        }
+        for (Registration aliasRegistration: aliasRegistrations) {
+            if (!hasDependentsIn(aliasRegistration, shutdownServices)) {
+                return false;
+            }
+        }
+        for (DependencyImpl<?> dependency: dependencies) {
+            if (!shutdownServices.contains(dependency.getDependencyRegistration().getController())) {
+                return false;
+            }
+        }
+        if (!transactionalInfo.prepareShutdown()) {
+            return false;
+        }
+        synchronized (this) {
+            state &= ~(SERVICE_ENABLED | DEPENDENCIES_DEMANDED);
+        }
+        return true;
+    }
+
+    private static boolean hasDependentsIn(Registration registration, Set<ServiceControllerImpl<?>> services) {
+        for (DependencyImpl<?> incomingDependency: registration.getIncomingDependencyArray()) {
+            if (!services.contains(incomingDependency.dependent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the shutdown wave task that removes this service, prepared with {@link #prepareShutdown}.
+     */
+    void setShutdownTask(TaskController<Void> shutdownTask) {
+        transactionalInfo.setShutdownTask(shutdownTask);
+    }
+
+    /**
+     * Removes this service, prepared with {@link #prepareShutdown}, once it is stopped. Invoked by the shutdown wave
+     * task.
+     *
+     * @param transaction the active transaction
+     * @param taskFactory the task factory
+     */
+    void completeShutdown(Transaction transaction, TaskFactory taskFactory) {
+        final int state = getState(transaction);
+        if (state == STATE_UP || state == STATE_FAILED) {
+            setValue(null);
+            for (DependencyImpl<?> dependency: dependencies) {
+                final ServiceControllerImpl<?> dependencyController = dependency.getDependencyRegistration().getController();
+                if (dependencyController != null) {
+                    dependencyController.dependentStopped(transaction, taskFactory);
+                }
+            }
+        }
+        primaryRegistration.clearController(transaction, taskFactory, this);
+        for (Registration aliasRegistration: aliasRegistrations) {
+            aliasRegistration.clearController(transaction, taskFactory, this);
+        }
+        transactionalInfo.setTransition(STATE_REMOVED, transaction, taskFactory);
+    }
+
     /**
      * Notifies this service that it is up demanded (demanded to be UP) by one of its incoming dependencies.
      * 
@@ -341,17 +647,10 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
      * @param taskFactory the task factory
      */
     void upDemanded(Transaction transaction, TaskFactory taskFactory) {
-        lockWrite(transaction, taskFactory);
-        final boolean propagate;
-        synchronized (this) {
-            if (upDemandedByCount ++ > 0) {
-                return;
-            }
-            propagate = !isMode(MODE_ACTIVE);
-        }
-        if (propagate) {
-            DemandDependenciesTask.create(this, transaction, taskFactory);
+        if (!addUpDemand(transaction, taskFactory)) {
+            return;
         }
+        updateDependencyDemand(transaction, taskFactory);
         transition(transaction, taskFactory);
     }
 
@@ -363,25 +662,108 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
      * @param taskFactory the task factory
      */
     void upUndemanded(Transaction transaction, TaskFactory taskFactory) {
+        if (!removeUpDemand(transaction, taskFactory)) {
+            return;
+        }
+        updateDependencyDemand(transaction, taskFactory);
+        transition(transaction, taskFactory);
+    }
+
+    /**
+     * Increments the up demand count of this service, without propagating the demand or transitioning the service.
+     *
+     * @param transaction the active transaction
+     * @param taskFactory the task factory
+     * @return {@code true} if this service was not up demanded before
+     */
+    boolean addUpDemand(Transaction transaction, TaskFactory taskFactory) {
+        lockWrite(transaction, taskFactory);
+        synchronized (this) {
+            return upDemandedByCount ++ == 0;
+        }
+    }
+
+    /**
+     * Decrements the up demand count of this service, without propagating the undemand or transitioning the service.
+     *
+     * @param transaction the active transaction
+     * @param taskFactory the task factory
+     * @return {@code true} if this service is no longer up demanded
+     */
+    boolean removeUpDemand(Transaction transaction, TaskFactory taskFactory) {
         lockWrite(transaction, taskFactory);
-        final boolean propagate;
         synchronized (this) {
-            if (-- upDemandedByCount > 0) {
+            return -- upDemandedByCount == 0;
+        }
+    }
+
+    /**
+     * Demands or undemands the dependencies of this service if it has started or ceased to need them, according to
+     * {@link #demandsDependencies()}.
+     *
+     * @param transaction the active transaction
+     * @param taskFactory the task factory
+     */
+    void updateDependencyDemand(Transaction transaction, TaskFactory taskFactory) {
+        final boolean demand;
+        synchronized (this) {
+            demand = demandsDependencies();
+            if (demand == Bits.allAreSet(state, DEPENDENCIES_DEMANDED)) {
                 return;
             }
-            propagate = !isMode(MODE_ACTIVE);
+            state ^= DEPENDENCIES_DEMANDED;
         }
-        if (propagate) {
+        if (demand) {
+            DemandDependenciesTask.create(this, transaction, taskFactory);
+        } else {
             UndemandDependenciesTask.create(this, transaction, taskFactory);
         }
-        transition(transaction, taskFactory);
+    }
+
+    /**
+     * Records that this service demands its dependencies, if it needs them and has not demanded them yet. Invoked
+     * while propagating demand, after the up demand count of this service has changed.
+     *
+     * @return {@code true} if the caller must demand the dependencies of this service
+     */
+    synchronized boolean demandDependencies() {
+        if (!demandsDependencies() || Bits.allAreSet(state, DEPENDENCIES_DEMANDED)) {
+            return false;
+        }
+        state |= DEPENDENCIES_DEMANDED;
+        return true;
+    }
+
+    /**
+     * Records that this service no longer demands its dependencies, if it no longer needs them and has demanded them.
+     * Invoked while propagating undemand, after the up demand count of this service has changed.
+     *
+     * @return {@code true} if the caller must undemand the dependencies of this service
+     */
+    synchronized boolean undemandDependencies() {
+        if (demandsDependencies() || !Bits.allAreSet(state, DEPENDENCIES_DEMANDED)) {
+            return false;
+        }
+        state &= ~DEPENDENCIES_DEMANDED;
+        return true;
+    }
+
+    /**
+     * Indicates if this service needs its dependencies: it is enabled, in an enabled registry, and it is either
+     * {@code ACTIVE} or demanded to start. Demand on dependencies is placed and removed as this condition changes, so
+     * that each service demands its dependencies at most once, regardless of how often it starts and stops.
+     */
+    private boolean demandsDependencies() {
+        assert holdsLock(this);
+        final byte state = this.state;
+        return (isMode(state, MODE_ACTIVE) || upDemandedByCount > 0) && Bits.allAreSet(state, SERVICE_ENABLED) && isRegistryEnabled();
     }
 
     /**
      * Indicates if this service is demanded to start by one or more of its incoming dependencies.
      * @return
      */
-    synchronized boolean isUpDemanded() {
+    boolean isUpDemanded() {
         return upDemandedByCount > 0;
     }
 
@@ -449,7 +831,7 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
         transactionalInfo.setTransition(transactionalState, transaction, taskFactory);
     }
 
-    private TaskController<?> transition(Transaction transaction, TaskFactory taskFactory) {
+    TaskController<?> transition(Transaction transaction, TaskFactory taskFactory) {
         assert isWriteLocked();
         return transactionalInfo.transition(transaction, taskFactory);
     }
@@ -460,9 +842,30 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
     }
 
     @Override
-    protected synchronized void writeUnlocked() {
+    protected synchronized void writeUnlocked(boolean committed) {
+        final int previousState = getState(state);
         state = (byte) (transactionalInfo.getState() & STATE_MASK | state & ~STATE_MASK);
         transactionalInfo = null;
+        if (committed && registry != null && previousState != getState(state)) {
+            registry.serviceStateChanged(this, previousState, getState(state));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    void committed(final Object snapshot) {
+        if (getState(((Snapshot) snapshot).state) == STATE_UP || getState(state) == STATE_UP) {
+            refreshDependentValues(primaryRegistration);
+            for (Registration aliasRegistration: aliasRegistrations) {
+                refreshDependentValues(aliasRegistration);
+            }
+        }
+    }
+
+    private void refreshDependentValues(Registration registration) {
+        if (registration.getController() == this) {
+            registration.refreshDependentValues();
+        }
     }
 
     @Override
@@ -487,6 +890,8 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
         private byte completeTransitionState = 0;
         // the total number of setTransition calls expected until completeTransitionTask is finished
         private int transitionCount;
+        // indicates if this service is restarting, i.e., if restart tolerant dependents still consider it UP
+        private boolean restarting;
 
         synchronized void setTransition(byte transactionalState, Transaction transaction, TaskFactory taskFactory) {
             this.transactionalState = transactionalState;
@@ -497,25 +902,45 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
                     case STATE_UP:
                         notifyServiceUp(transaction, taskFactory);
                         break;
+                    case STATE_FAILED:
+                        if (restarting) {
+                            notifyRestartAborted(transaction, taskFactory);
+                        }
+                        break;
                     case STATE_REMOVED:
                         for (DependencyImpl<?> dependency: dependencies) {
                             dependency.clearDependent(transaction, taskFactory);
                         }
                         break;
                     case STATE_DOWN:
-                        // fall thru!
-                    case STATE_FAILED:
                         break;
                     default:
                         throw new IllegalStateException("Illegal state for finishing transition: " + transactionalState);
                 }
                 completeTransitionTask = null;
                 completeTransitionState = 0;
+                restarting = false;
+            }
+        }
+
+        private synchronized void restart(Transaction transaction, TaskFactory taskFactory) {
+            // only a service that is UP and not under transition can be restarted
+            if (transactionalState != STATE_UP || completeTransitionTask != null || isStopping()) {
+                return;
             }
+            restarting = true;
+            final Collection<TaskController<?>> dependentTasks = notifyServiceDown(transaction, taskFactory);
+            transactionalState = STATE_STOPPING;
+            final TaskController<Void> stopTask = StoppingServiceTasks.create(ServiceControllerImpl.this, dependentTasks, transaction, taskFactory);
+            final TaskController<?> setStartingState = taskFactory.newTask(new SetTransactionalStateTask(ServiceControllerImpl.this, STATE_STARTING, transaction))
+                    .addDependency(stopTask).release();
+            completeTransitionTask = StartingServiceTasks.create(ServiceControllerImpl.this, setStartingState, transaction, taskFactory);
+            completeTransitionState = STATE_UP;
+            transitionCount += 3;
         }
 
         private synchronized void retry(Transaction transaction) {
-            if (transactionalState != STATE_FAILED) {
+            if (transactionalState != STATE_FAILED || isStopping()) {
                 return;
             }
             assert completeTransitionTask == null;
@@ -565,7 +990,15 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
                         // ongoing transition from DOWN to UP, transition to DOWN just once service is UP
                         TaskController<?> setStoppingState = transaction.getTaskFactory().newTask(new SetTransactionalStateTask(ServiceControllerImpl.this, STATE_STOPPING, transaction))
                                 .addDependency(completeTransitionTask).release();
-                        completeTransitionTask = StoppingServiceTasks.create(ServiceControllerImpl.this, setStoppingState, transaction, taskFactory);
+                        if (restarting) {
+                            // restart tolerant dependents are still running, they must stop before this service does
+                            final List<TaskController<?>> taskDependencies = notifyRestartAborted(transaction, taskFactory);
+                            taskDependencies.add(setStoppingState);
+                            restarting = false;
+                            completeTransitionTask = StoppingServiceTasks.create(ServiceControllerImpl.this, taskDependencies, transaction, taskFactory);
+                        } else {
+                            completeTransitionTask = StoppingServiceTasks.create(ServiceControllerImpl.this, setStoppingState, transaction, taskFactory);
+                        }
                         completeTransitionState = STATE_DOWN;
                         transitionCount +=2;
                     }
@@ -577,18 +1010,42 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
             return completeTransitionTask;
         }
 
+        private synchronized boolean addIncomingDependency(Registration registration, DependencyImpl<?> dependency) {
+            registration.journalIncomingDependency(dependency);
+            // a service up with a transition in progress notifies the new dependency once the transition completes
+            return transactionalState == STATE_UP && completeTransitionTask == null;
+        }
+
         private void notifyServiceUp(Transaction transaction, TaskFactory taskFactory) {
-            primaryRegistration.serviceUp(transaction, taskFactory);
+            if (isDetached()) {
+                return;
+            }
+            primaryRegistration.serviceUp(transaction, taskFactory, restarting);
             for (Registration registration: aliasRegistrations) {
-                registration.serviceUp(transaction, taskFactory);
+                registration.serviceUp(transaction, taskFactory, restarting);
             }
         }
 
         private Collection<TaskController<?>> notifyServiceDown(Transaction transaction, TaskFactory taskFactory) {
             final List<TaskController<?>> tasks = new ArrayList<TaskController<?>>();
-            primaryRegistration.serviceDown(transaction, taskFactory, tasks);
+            if (isDetached()) {
+                return tasks;
+            }
+            primaryRegistration.serviceDown(transaction, taskFactory, tasks, restarting);
+            for (Registration registration: aliasRegistrations) {
+                registration.serviceDown(transaction, taskFactory, tasks, restarting);
+            }
+            return tasks;
+        }
+
+        private List<TaskController<?>> notifyRestartAborted(Transaction transaction, TaskFactory taskFactory) {
+            final List<TaskController<?>> tasks = new ArrayList<TaskController<?>>();
+            if (isDetached()) {
+                return tasks;
+            }
+            primaryRegistration.serviceRestartAborted(transaction, taskFactory, tasks);
             for (Registration registration: aliasRegistrations) {
-                registration.serviceDown(transaction, taskFactory, tasks);
+                registration.serviceRestartAborted(transaction, taskFactory, tasks);
             }
             return tasks;
         }
@@ -598,10 +1055,14 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
             if (getState() == STATE_REMOVED) {
                 return null;
             }
+            if (completeTransitionState == STATE_REMOVED) {
+                return completeTransitionTask;
+            }
             // disable service
             synchronized (ServiceControllerImpl.this) {
                 state &= ~SERVICE_ENABLED;
             }
+            updateDependencyDemand(transaction, taskFactory);
             // transition disabled service, guaranteeing that it is either at DOWN state or it will get to this state
             // after complete transition task completes
             transition(transaction, taskFactory);
@@ -618,6 +1079,23 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
             return completeTransitionTask;
         }
 
+        private synchronized boolean prepareShutdown() {
+            if (completeTransitionTask != null || (transactionalState != STATE_UP && transactionalState != STATE_DOWN && transactionalState != STATE_FAILED)) {
+                return false;
+            }
+            // the shutdown wave task completes the transition to REMOVED
+            completeTransitionState = STATE_REMOVED;
+            transitionCount ++;
+            return true;
+        }
+
+        private synchronized void setShutdownTask(TaskController<Void> shutdownTask) {
+            // the wave task may have removed the service already
+            if (transitionCount > 0) {
+                completeTransitionTask = shutdownTask;
+            }
+        }
+
         private void setState(final byte sid) {
             transactionalState = sid;
         }
@@ -640,11 +1118,13 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
         private final int upDemandedByCount;
         private final int unsatisfiedDependencies;
         private final int runningDependents;
+        private final T value;
 
         // take snapshot
         public Snapshot() {
             assert holdsLock(ServiceControllerImpl.this);
             state = ServiceControllerImpl.this.state;
+            value = ServiceControllerImpl.this.value;
             upDemandedByCount = ServiceControllerImpl.this.upDemandedByCount;
             unsatisfiedDependencies = ServiceControllerImpl.this.unsatisfiedDependencies;
             runningDependents = ServiceControllerImpl.this.runningDependents;
@@ -789,23 +1269,25 @@ final class ServiceControllerImpl<T> extends TransactionalObject implements Serv
             ServiceControllerImpl.this.upDemandedByCount = upDemandedByCount;
             ServiceControllerImpl.this.unsatisfiedDependencies = unsatisfiedDependencies;
             ServiceControllerImpl.this.runningDependents = runningDependents;
+            setValue(value);
         }
     }
 
-    private synchronized boolean shouldStart() {
-        return (isMode(MODE_ACTIVE) || upDemandedByCount > 0) && Bits.allAreSet(state, SERVICE_ENABLED | REGISTRY_ENABLED);
+    private boolean shouldStart() {
+        final byte state = this.state;
+        return (isMode(state, MODE_ACTIVE) || upDemandedByCount > 0) && Bits.allAreSet(state, SERVICE_ENABLED) && isRegistryEnabled();
     }
 
-    private synchronized boolean shouldStop() {
-        return (isMode(MODE_ON_DEMAND) && upDemandedByCount == 0) || !Bits.allAreSet(state, SERVICE_ENABLED | REGISTRY_ENABLED);
+    private boolean shouldStop() {
+        final byte state = this.state;
+        return (isMode(state, MODE_ON_DEMAND) && upDemandedByCount == 0) || !Bits.allAreSet(state, SERVICE_ENABLED) || !isRegistryEnabled();
     }
 
     private void setMode(final byte mid) {
         state = (byte) (mid & MODE_MASK | state & ~MODE_MASK);
     }
 
-    private boolean isMode(final byte mode) {
-        assert holdsLock(this);
+    private static boolean isMode(final byte state, final byte mode) {
         return (state & MODE_MASK) == mode;
     }
 
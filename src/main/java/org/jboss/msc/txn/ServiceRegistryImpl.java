@@ -20,16 +20,29 @@ package org.jboss.msc.txn;
 
 import static java.lang.Thread.holdsLock;
 import static org.jboss.msc._private.MSCLogger.TXN;
+import static org.jboss.msc.txn.ServiceStateSubscriptionImpl.NO_SUBSCRIPTIONS;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.jboss.msc.service.ServiceLatency;
+import org.jboss.msc.service.ServiceLatencyReport;
 import org.jboss.msc.service.ServiceName;
 import org.jboss.msc.service.ServiceNotFoundException;
 import org.jboss.msc.service.ServiceRegistry;
+import org.jboss.msc.service.ServiceState;
+import org.jboss.msc.service.ServiceStateEvent;
+import org.jboss.msc.service.ServiceStateSubscription;
 
 /**
  * A service registry.  Registries can return services by name, or get a collection of service names.
@@ -39,15 +52,40 @@ import org.jboss.msc.service.ServiceRegistry;
  */
 final class ServiceRegistryImpl extends TransactionalObject implements ServiceRegistry {
 
-    private static final byte ENABLED = 1 << 0x00;
-    private static final byte REMOVED  = 1 << 0x01;
+    private static final byte REMOVED  = 1 << 0x00;
+    private static final ServiceState[] SERVICE_STATES = ServiceState.values();
+    private static final int MAX_SUBSCRIPTION_CAPACITY = 1 << 30;
+    private static final Comparator<ServiceLatency> SLOWEST_FIRST = new Comparator<ServiceLatency>() {
+        @Override
+        public int compare(ServiceLatency latency1, ServiceLatency latency2) {
+            final long start1 = latency1.getStartLatency().getTotalNanos(), start2 = latency2.getStartLatency().getTotalNanos();
+            if (start1 != start2) {
+                return start1 > start2? -1: 1;
+            }
+            final long stop1 = latency1.getStopLatency().getTotalNanos(), stop2 = latency2.getStopLatency().getTotalNanos();
+            return stop1 > stop2? -1: stop1 == stop2? 0: 1;
+        }
+    };
 
     // map of service registrations
     private final ConcurrentMap<ServiceName, Registration> registry = new ConcurrentHashMap<ServiceName, Registration>();
-    // service registry state, which could be: enabled, disabled, or removed
-    private byte state = ENABLED;
-
+    // the same service registrations, indexed by service name prefix
+    private final RegistrationIndex index = new RegistrationIndex();
+    // service registry state, which could be: active or removed
+    private volatile byte state;
+    // enabled flag, locked on its own so that enabling or disabling the registry does not lock the registrations map
+    private final EnabledState enabledState = new EnabledState();
+    // dependency graph shared by all registries of the container
+    private final DependencyGraph graph;
+    // boot cache providing the initial topological order of registrations, may be null
+    private final BootCache bootCache;
+    // registry-wide service state subscriptions, copied on write as subscribing is rare compared to publishing
+    private final AtomicReference<ServiceStateSubscriptionImpl[]> subscriptions = new AtomicReference<ServiceStateSubscriptionImpl[]>(NO_SUBSCRIPTIONS);
 
+    ServiceRegistryImpl(DependencyGraph graph, BootCache bootCache) {
+        this.graph = graph;
+        this.bootCache = bootCache;
+    }
 
     /**
      * Gets a service, throwing an exception if it is not found.
@@ -80,15 +118,162 @@ final class ServiceRegistryImpl extends TransactionalObject implements ServiceRe
         return registration.getController();
     }
 
+    @Override
+    public Collection<ServiceController> getServices(final ServiceName serviceName) {
+        if (serviceName == null) {
+            throw TXN.methodParameterIsNull("serviceName");
+        }
+        final Set<ServiceController> controllers = new LinkedHashSet<ServiceController>();
+        for (Registration registration: index.getSubtree(serviceName)) {
+            final ServiceControllerImpl<?> controller = registration.getController();
+            if (controller != null) {
+                controllers.add(controller);
+            }
+        }
+        return controllers;
+    }
+
+    @Override
+    public int countServices(final ServiceName serviceName) {
+        if (serviceName == null) {
+            throw TXN.methodParameterIsNull("serviceName");
+        }
+        int count = 0;
+        for (Registration registration: index.getSubtree(serviceName)) {
+            final ServiceControllerImpl<?> controller = registration.getController();
+            if (controller != null && isFirstInSubtree(serviceName, controller, registration)) {
+                count ++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Indicates if {@code registration} is the first registration of {@code controller} under {@code serviceName}:
+     * the primary registration if it is in the subtree, otherwise the first alias registration in the subtree.
+     */
+    private static boolean isFirstInSubtree(ServiceName serviceName, ServiceControllerImpl<?> controller, Registration registration) {
+        final Registration primaryRegistration = controller.getPrimaryRegistration();
+        if (registration == primaryRegistration) {
+            return true;
+        }
+        if (serviceName.isParentOf(primaryRegistration.getServiceName())) {
+            return false;
+        }
+        for (Registration alias: controller.getAliasRegistrations()) {
+            if (serviceName.isParentOf(alias.getServiceName())) {
+                return alias == registration;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void removeServices(final ServiceName serviceName, final Transaction transaction) {
+        if (serviceName == null) {
+            throw TXN.methodParameterIsNull("serviceName");
+        }
+        if (transaction == null) {
+            throw TXN.methodParameterIsNull("transaction");
+        }
+        checkRemoved();
+        for (Registration registration : index.getSubtree(serviceName)) {
+            final ServiceControllerImpl<?> serviceInstance = registration.getController();
+            // services only aliased under serviceName are not removed, they are named elsewhere
+            if (serviceInstance != null && serviceInstance.getPrimaryRegistration() == registration) {
+                serviceInstance.remove(transaction, transaction.getTaskFactory());
+            }
+        }
+    }
+
+    @Override
+    public ServiceStateSubscription subscribe(final int capacity) {
+        final ServiceStateSubscriptionImpl subscription = newSubscription(null, capacity);
+        ServiceStateSubscriptionImpl[] current;
+        do {
+            current = subscriptions.get();
+        } while (!subscriptions.compareAndSet(current, ServiceStateSubscriptionImpl.add(current, subscription)));
+        return subscription;
+    }
+
+    /**
+     * Creates a subscription to the state changes of {@code service}, or of all services of this registry if
+     * {@code service} is {@code null}. The subscription is not yet registered with its publisher.
+     *
+     * @param service  the service, may be {@code null}
+     * @param capacity the subscription capacity
+     * @return the new subscription
+     */
+    ServiceStateSubscriptionImpl newSubscription(final ServiceControllerImpl<?> service, final int capacity) {
+        if (capacity <= 0 || capacity > MAX_SUBSCRIPTION_CAPACITY) {
+            throw TXN.methodParameterIsInvalid("capacity");
+        }
+        return new ServiceStateSubscriptionImpl(this, service, capacity);
+    }
+
+    void unsubscribe(final ServiceStateSubscriptionImpl subscription) {
+        ServiceStateSubscriptionImpl[] current, updated;
+        do {
+            current = subscriptions.get();
+            updated = ServiceStateSubscriptionImpl.remove(current, subscription);
+            if (updated == null) {
+                return;
+            }
+        } while (!subscriptions.compareAndSet(current, updated));
+    }
+
+    /**
+     * Publishes a committed service state change to the registry-wide subscriptions and to the subscriptions of
+     * {@code service}. Never blocks.
+     *
+     * @param service       the service
+     * @param previousState the service state before the transaction
+     * @param state         the service state after the transaction
+     */
+    void serviceStateChanged(final ServiceControllerImpl<?> service, final int previousState, final int state) {
+        final ServiceStateSubscriptionImpl[] subscriptions = this.subscriptions.get();
+        final ServiceStateSubscriptionImpl[] serviceSubscriptions = service.getSubscriptions();
+        if (subscriptions.length == 0 && serviceSubscriptions.length == 0) {
+            return;
+        }
+        final ServiceStateEvent event = new ServiceStateEvent(service.getServiceName(), SERVICE_STATES[previousState >> 2], SERVICE_STATES[state >> 2]);
+        for (ServiceStateSubscriptionImpl subscription: subscriptions) {
+            subscription.publish(event);
+        }
+        for (ServiceStateSubscriptionImpl subscription: serviceSubscriptions) {
+            subscription.publish(event);
+        }
+    }
+
+    @Override
+    public ServiceLatencyReport getSlowestServices(final int count) {
+        if (count <= 0) {
+            throw TXN.methodParameterIsInvalid("count");
+        }
+        final List<ServiceLatency> latencies = new ArrayList<ServiceLatency>();
+        for (ServiceControllerImpl<?> controller: getControllers()) {
+            final ServiceLatency latency = controller.getLatency();
+            if (latency != null) {
+                latencies.add(latency);
+            }
+        }
+        Collections.sort(latencies, SLOWEST_FIRST);
+        return new ServiceLatencyReport(latencies.size() > count? new ArrayList<ServiceLatency>(latencies.subList(0, count)): latencies);
+    }
+
     Registration getOrCreateRegistration(Transaction transaction, ServiceName name) {
         Registration registration = registry.get(name);
         if (registration == null) {
             checkRemoved();
             lockWrite(transaction, transaction.getTaskFactory());
-            registration = new Registration(name);
-            Registration appearing = registry.putIfAbsent(name, registration);
+            // registrations live as long as the registry, share a single instance of each name
+            final ServiceName internedName = name.intern();
+            registration = new Registration(internedName, graph, bootCache == null? graph.newOrder(): bootCache.getOrder(internedName));
+            Registration appearing = registry.putIfAbsent(internedName, registration);
             if (appearing != null) {
                 registration = appearing;
+            } else {
+                index.add(registration);
             }
         }
         return registration;
@@ -98,6 +283,10 @@ final class ServiceRegistryImpl extends TransactionalObject implements ServiceRe
         return registry.get(name);
     }
 
+    Collection<Registration> getRegistrations() {
+        return registry.values();
+    }
+
     ServiceControllerImpl<?> getRequiredServiceController(ServiceName serviceName) throws ServiceNotFoundException {
         final ServiceControllerImpl<?> controller = registry.containsKey(serviceName)? registry.get(serviceName).getController(): null;
         if (controller == null) {
@@ -111,64 +300,84 @@ final class ServiceRegistryImpl extends TransactionalObject implements ServiceRe
         if (transaction == null) {
             throw TXN.methodParameterIsNull("transaction");
         }
-        synchronized(this) {
-            if (Bits.anyAreSet(state, REMOVED)) {
-                return;
-            }
-            state = (byte) (state | REMOVED);
+        if (!setRemoved()) {
+            return;
         }
-        final HashSet<ServiceControllerImpl<?>> done = new HashSet<ServiceControllerImpl<?>>();
+        for (ServiceControllerImpl<?> serviceInstance : getControllers()) {
+            serviceInstance.remove(transaction, transaction.getTaskFactory());
+        }
+    }
+
+    /**
+     * Marks this registry as removed.
+     *
+     * @return {@code false} if the registry was already removed
+     */
+    synchronized boolean setRemoved() {
+        if (Bits.anyAreSet(state, REMOVED)) {
+            return false;
+        }
+        state = (byte) (state | REMOVED);
+        return true;
+    }
+
+    /**
+     * Returns the service controllers installed in this registry, each controller included only once.
+     */
+    Set<ServiceControllerImpl<?>> getControllers() {
+        final Set<ServiceControllerImpl<?>> controllers = new LinkedHashSet<ServiceControllerImpl<?>>();
         for (Registration registration : registry.values()) {
-            ServiceControllerImpl<?> serviceInstance = registration.getController();
-            if (serviceInstance != null && done.add(serviceInstance)) {
-                serviceInstance.remove(transaction, transaction.getTaskFactory());
+            final ServiceControllerImpl<?> controller = registration.getController();
+            if (controller != null) {
+                controllers.add(controller);
             }
         }
+        return controllers;
     }
 
-    synchronized void newServiceInstalled(ServiceControllerImpl<?> service, Transaction transaction) {
+    void newServiceInstalled(ServiceControllerImpl<?> service) {
+        // if registry is removed, get an exception right away
         checkRemoved();
-        if (Bits.anyAreSet(state, ENABLED)) {
-            service.enableRegistry(transaction);
-        } else {
-            service.disableRegistry(transaction);
+        if (bootCache != null) {
+            bootCache.verify(service);
         }
     }
 
+    /**
+     * Indicates if this registry is enabled. Services consult this state when they transition.
+     */
+    boolean isEnabled() {
+        return enabledState.enabled;
+    }
+
     @Override
-    public synchronized void disable(Transaction transaction) {
+    public void disable(Transaction transaction) {
         if (transaction == null) {
             throw TXN.methodParameterIsNull("transaction");
         }
-        checkRemoved();
-        // idempotent
-        if (!Bits.anyAreSet(state, ENABLED)) {
-            return;
-        }
-        state = (byte) (state & ~ENABLED);
-        for (Registration registration: registry.values()) {
-            final ServiceControllerImpl<?> controller = registration.getController();
-            if (controller != null) {
-                controller.disableRegistry(transaction);
-            }
-        }
+        setEnabled(false, transaction);
     }
 
     @Override
-    public synchronized void enable(Transaction transaction) {
+    public void enable(Transaction transaction) {
         if (transaction == null) {
             throw TXN.methodParameterIsNull("transaction");
         }
+        setEnabled(true, transaction);
+    }
+
+    private void setEnabled(boolean enabled, Transaction transaction) {
         checkRemoved();
-        // idempotent
-        if (Bits.anyAreSet(state, ENABLED)) {
+        if (!enabledState.set(enabled, transaction)) {
             return;
         }
-        state = (byte) (state | ENABLED);
+        // the new state is visible before services are inspected, so services transitioned concurrently by other
+        // transactions either see it, or are locked by them and therefore transitioned here as well
         for (Registration registration: registry.values()) {
             final ServiceControllerImpl<?> controller = registration.getController();
-            if (controller != null) {
-                controller.enableRegistry(transaction);
+            // visit aliased services only once, through their primary registration
+            if (controller != null && controller.getPrimaryRegistration() == registration) {
+                controller.registryStateChanged(enabled, transaction);
             }
         }
     }
@@ -204,6 +413,42 @@ final class ServiceRegistryImpl extends TransactionalObject implements ServiceRe
             ServiceRegistryImpl.this.state = state;
             ServiceRegistryImpl.this.registry.clear();
             ServiceRegistryImpl.this.registry.putAll(registry);
+            index.reset(registry.values());
+        }
+    }
+
+    /**
+     * The registry enabled flag. Write locked by the transactions that enable or disable the registry, and reverted if
+     * they are rolled back.
+     */
+    private static final class EnabledState extends TransactionalObject {
+        private volatile boolean enabled = true;
+
+        /**
+         * Sets the enabled flag under {@code transaction}.
+         *
+         * @return {@code false} if the flag already had the requested value
+         */
+        boolean set(boolean enabled, Transaction transaction) {
+            lockWrite(transaction, transaction.getTaskFactory());
+            synchronized (this) {
+                // idempotent
+                if (this.enabled == enabled) {
+                    return false;
+                }
+                this.enabled = enabled;
+                return true;
+            }
+        }
+
+        @Override
+        Object takeSnapshot() {
+            return enabled;
+        }
+
+        @Override
+        void revert(Object snapshot) {
+            enabled = (Boolean) snapshot;
         }
     }
 }
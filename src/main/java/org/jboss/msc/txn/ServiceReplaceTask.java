@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.txn;
+
+import static org.jboss.msc.txn.ServiceControllerImpl.STATE_UP;
+
+/**
+ * Service replacement task. Executed once the replacement service transition is complete, it either switches the
+ * registrations from the replaced service to the replacement and removes the replaced service or, if the replacement
+ * did not come up while the replaced service is up, keeps the replaced service and removes the replacement.
+ */
+final class ServiceReplaceTask implements Executable<Void> {
+    private final Transaction transaction;
+    private final ServiceControllerImpl<?> replaced;
+    private final ServiceControllerImpl<?> replacement;
+
+    ServiceReplaceTask(ServiceControllerImpl<?> replaced, ServiceControllerImpl<?> replacement, Transaction transaction) {
+        this.transaction = transaction;
+        this.replaced = replaced;
+        this.replacement = replacement;
+    }
+
+    @Override
+    public void execute(ExecuteContext<Void> context) {
+        assert context instanceof TaskFactory;
+        final TaskFactory taskFactory = (TaskFactory) context;
+        try {
+            if (replacement.getState(transaction) == STATE_UP || replaced.getState(transaction) != STATE_UP) {
+                replaced.getPrimaryRegistration().replaceController(transaction, taskFactory, replaced, replacement);
+                for (Registration registration: replaced.getAliasRegistrations()) {
+                    registration.replaceController(transaction, taskFactory, replaced, replacement);
+                }
+                replacement.attach(replaced, transaction, taskFactory);
+                replaced.remove(transaction, taskFactory);
+            } else {
+                replacement.remove(transaction, taskFactory);
+            }
+        } finally {
+            context.complete();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.txn;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.msc.service.ServiceStateEvent;
+import org.jboss.msc.service.ServiceStateSubscription;
+
+/**
+ * A service state subscription, backed by a bounded lock-free ring buffer.
+ * <p>
+ * Every slot of the ring has a sequence number, which tells producers and consumers whether the slot is free to be
+ * written or ready to be read for their current position. Positions are claimed with a compare and set, so neither
+ * publishing nor polling ever blocks, and multiple threads can do both concurrently.
+ * <p>
+ * Registry-wide subscriptions are kept by the registry, and subscriptions to a single service by the service itself,
+ * so publishing a state change only visits the subscriptions interested in it. Both keep them in arrays copied on
+ * write, as subscribing is rare compared to publishing.
+ */
+final class ServiceStateSubscriptionImpl implements ServiceStateSubscription {
+
+    static final ServiceStateSubscriptionImpl[] NO_SUBSCRIPTIONS = new ServiceStateSubscriptionImpl[0];
+
+    private final ServiceRegistryImpl registry;
+    // if not null, this subscription is kept by the service and only receives its events
+    private final ServiceControllerImpl<?> service;
+    private final int mask;
+    private final AtomicReferenceArray<ServiceStateEvent> events;
+    private final AtomicLongArray sequences;
+    private final AtomicLong publishPosition = new AtomicLong();
+    private final AtomicLong pollPosition = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    ServiceStateSubscriptionImpl(ServiceRegistryImpl registry, ServiceControllerImpl<?> service, int capacity) {
+        this.registry = registry;
+        this.service = service;
+        // a single slot cannot tell a written slot from a read one, hence at least two slots
+        final int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        events = new AtomicReferenceArray<ServiceStateEvent>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Returns a copy of {@code subscriptions} with {@code subscription} appended.
+     */
+    static ServiceStateSubscriptionImpl[] add(ServiceStateSubscriptionImpl[] subscriptions, ServiceStateSubscriptionImpl subscription) {
+        final ServiceStateSubscriptionImpl[] updated = new ServiceStateSubscriptionImpl[subscriptions.length + 1];
+        System.arraycopy(subscriptions, 0, updated, 0, subscriptions.length);
+        updated[subscriptions.length] = subscription;
+        return updated;
+    }
+
+    /**
+     * Returns a copy of {@code subscriptions} without {@code subscription}, or {@code null} if it is not found.
+     */
+    static ServiceStateSubscriptionImpl[] remove(ServiceStateSubscriptionImpl[] subscriptions, ServiceStateSubscriptionImpl subscription) {
+        for (int i = 0; i < subscriptions.length; i++) {
+            if (subscriptions[i] == subscription) {
+                if (subscriptions.length == 1) {
+                    return NO_SUBSCRIPTIONS;
+                }
+                final ServiceStateSubscriptionImpl[] updated = new ServiceStateSubscriptionImpl[subscriptions.length - 1];
+                System.arraycopy(subscriptions, 0, updated, 0, i);
+                System.arraycopy(subscriptions, i + 1, updated, i, updated.length - i);
+                return updated;
+            }
+        }
+        return null;
+    }
+
+    void publish(ServiceStateEvent event) {
+        long position = publishPosition.get();
+        int index;
+        while (true) {
+            index = (int) position & mask;
+            final long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (publishPosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = publishPosition.get();
+            } else if (available < 0) {
+                // full, slot still holds an event from the previous lap
+                droppedEvents.incrementAndGet();
+                return;
+            } else {
+                position = publishPosition.get();
+            }
+        }
+        events.set(index, event);
+        sequences.set(index, position + 1);
+    }
+
+    @Override
+    public ServiceStateEvent poll() {
+        long position = pollPosition.get();
+        int index;
+        while (true) {
+            index = (int) position & mask;
+            final long ready = sequences.get(index) - (position + 1);
+            if (ready == 0) {
+                if (pollPosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = pollPosition.get();
+            } else if (ready < 0) {
+                // empty
+                return null;
+            } else {
+                position = pollPosition.get();
+            }
+        }
+        final ServiceStateEvent event = events.get(index);
+        events.set(index, null);
+        sequences.set(index, position + mask + 1);
+        return event;
+    }
+
+    @Override
+    public int drainTo(Collection<? super ServiceStateEvent> events, int maxEvents) {
+        int drained = 0;
+        ServiceStateEvent event;
+        while (drained < maxEvents && (event = poll()) != null) {
+            events.add(event);
+            drained ++;
+        }
+        return drained;
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    @Override
+    public void close() {
+        if (service == null) {
+            registry.unsubscribe(this);
+        } else {
+            service.unsubscribe(this);
+        }
+    }
+}
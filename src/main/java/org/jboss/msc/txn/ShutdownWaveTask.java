@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.txn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.msc._private.MSCLogger;
+import org.jboss.msc.txn.Problem.Severity;
+import org.jboss.msc.txn.StoppingServiceTasks.StopServiceTask;
+
+/**
+ * Shutdown wave task. Removes all services of a shutdown wave prepared with
+ * {@link ServiceControllerImpl#prepareShutdown}: the services that are up are stopped at once, their stops fanned out
+ * on the transaction executor, and every service of the wave is removed once they are all down. The dependents of the
+ * wave services belong to previous waves, so they are already removed when this task executes.
+ */
+final class ShutdownWaveTask implements Executable<Void> {
+    private final Transaction transaction;
+    private final List<ServiceControllerImpl<?>> services;
+    private final List<StopServiceTask> stopTasks = new ArrayList<StopServiceTask>();
+
+    ShutdownWaveTask(List<ServiceControllerImpl<?>> services, Transaction transaction) {
+        this.transaction = transaction;
+        this.services = services;
+        // prepared services do not transition until they are removed, their state is the state to stop from
+        for (ServiceControllerImpl<?> service: services) {
+            if (service.getState(transaction) == ServiceControllerImpl.STATE_UP) {
+                stopTasks.add(new StopServiceTask(service));
+            }
+        }
+    }
+
+    @Override
+    public void execute(final ExecuteContext<Void> context) {
+        if (stopTasks.isEmpty()) {
+            removeServices(context);
+            return;
+        }
+        final StopContext stopContext = new StopContext(context, stopTasks.size());
+        // the last stop is run by the current thread
+        final int lastIndex = stopTasks.size() - 1;
+        for (int i = 0; i < lastIndex; i++) {
+            final StopServiceTask stopTask = stopTasks.get(i);
+            final Runnable stop = new Runnable() {
+                public void run() {
+                    stopContext.stop(stopTask);
+                }
+            };
+            try {
+                transaction.getExecutor().execute(stop);
+            } catch (RejectedExecutionException e) {
+                stop.run();
+            }
+        }
+        stopContext.stop(stopTasks.get(lastIndex));
+    }
+
+    private void removeServices(ExecuteContext<Void> context) {
+        assert context instanceof TaskFactory;
+        try {
+            for (ServiceControllerImpl<?> service: services) {
+                service.completeShutdown(transaction, (TaskFactory) context);
+            }
+        } finally {
+            context.complete();
+        }
+    }
+
+    /**
+     * The context of the wave service stops. Every stop completes this context once, and the wave services are removed
+     * when the last one does.
+     */
+    private final class StopContext implements ExecuteContext<Void> {
+        private final ExecuteContext<Void> context;
+        private final AtomicInteger pendingStops;
+
+        StopContext(ExecuteContext<Void> context, int stopCount) {
+            this.context = context;
+            this.pendingStops = new AtomicInteger(stopCount);
+        }
+
+        void stop(StopServiceTask stopTask) {
+            try {
+                stopTask.execute(this);
+            } catch (Throwable t) {
+                MSCLogger.TASK.taskExecutionFailed(t, stopTask);
+                context.addProblem(Severity.CRITICAL, "Task failed due to exception", t);
+                complete();
+            }
+        }
+
+        @Override
+        public void complete(Void result) {
+            complete();
+        }
+
+        @Override
+        public void complete() {
+            if (pendingStops.decrementAndGet() == 0) {
+                removeServices(context);
+            }
+        }
+
+        @Override
+        public boolean isCancelRequested() {
+            return context.isCancelRequested();
+        }
+
+        @Override
+        public void cancelled() {
+            // the service did not stop, the wave services are removed regardless
+            complete();
+        }
+
+        @Override
+        public void addProblem(Problem reason) {
+            context.addProblem(reason);
+        }
+
+        @Override
+        public void addProblem(Severity severity, String message) {
+            context.addProblem(severity, message);
+        }
+
+        @Override
+        public void addProblem(Severity severity, String message, Throwable cause) {
+            context.addProblem(severity, message, cause);
+        }
+
+        @Override
+        public void addProblem(String message, Throwable cause) {
+            context.addProblem(message, cause);
+        }
+
+        @Override
+        public void addProblem(String message) {
+            context.addProblem(message);
+        }
+
+        @Override
+        public void addProblem(Throwable cause) {
+            context.addProblem(cause);
+        }
+
+        @Override
+        public <T> TaskBuilder<T> newTask(Executable<T> task) throws IllegalStateException {
+            return context.newTask(task);
+        }
+
+        @Override
+        public TaskBuilder<Void> newTask() throws IllegalStateException {
+            return context.newTask();
+        }
+    }
+}
@@ -20,31 +20,69 @@ package org.jboss.msc.txn;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
+ * An attachable that stores the attachments of indexed keys in an array, grown on demand, and the attachments of the
+ * remaining keys in a map, created on demand.
+ *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 @SuppressWarnings("unchecked")
 class SimpleAttachable implements Attachable {
-    private final ConcurrentMap<AttachmentKey<?>, Object> attachments = new ConcurrentHashMap<AttachmentKey<?>, Object>();
+    // replaces the values of a slot array that was grown
+    private static final Object MOVED = new Object();
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SimpleAttachable, AtomicReferenceArray> slotsUpdater = AtomicReferenceFieldUpdater.newUpdater(SimpleAttachable.class, AtomicReferenceArray.class, "slots");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SimpleAttachable, ConcurrentMap> attachmentsUpdater = AtomicReferenceFieldUpdater.newUpdater(SimpleAttachable.class, ConcurrentMap.class, "attachments");
+
+    private volatile AtomicReferenceArray<Object> slots;
+    private volatile ConcurrentMap<AttachmentKey<?>, Object> attachments;
 
     public <T> T getAttachment(final AttachmentKey<T> key) {
         if (key == null) {
             throw new IllegalArgumentException("key is null");
         }
-        Object value;
-        final ConcurrentMap<AttachmentKey<?>, Object> map = attachments;
-        value = map.get(key);
-        if (value != null) {
-            return (T) value;
+        final int index = key.getIndex();
+        if (index < 0) {
+            final ConcurrentMap<AttachmentKey<?>, Object> map = getAttachments();
+            final Object value = map.get(key);
+            if (value != null) {
+                return (T) value;
+            }
+            final T newValue = key.createValue();
+            if (newValue == null) {
+                return null;
+            }
+            final Object appearing = map.putIfAbsent(key, newValue);
+            return appearing != null ? (T) appearing : newValue;
+        }
+        AtomicReferenceArray<Object> slots = getSlots(index);
+        T newValue = null;
+        for (;;) {
+            final Object value = slots.get(index);
+            if (value == MOVED) {
+                slots = getMovedSlots(slots);
+            } else if (value != null) {
+                return (T) value;
+            } else {
+                if (newValue == null) {
+                    newValue = key.createValue();
+                    if (newValue == null) {
+                        return null;
+                    }
+                }
+                if (slots.compareAndSet(index, null, newValue)) {
+                    return newValue;
+                }
+            }
         }
-        final T newValue = key.createValue();
-        final Object appearing = map.putIfAbsent(key, newValue);
-        return appearing != null ? (T) appearing : newValue;
     }
 
     public boolean hasAttachment(final AttachmentKey<?> key) {
-        return key != null && attachments.containsKey(key);
+        return getAttachmentIfPresent(key) != null;
     }
 
     public <T> boolean ensureAttachmentValue(final AttachmentKey<T> key, T expectedValue) {
@@ -54,18 +92,30 @@ class SimpleAttachable implements Attachable {
         if (expectedValue == null) {
             throw new IllegalArgumentException("expectedValue is null");
         }
-        T val;
-        val = (T) attachments.get(key);
-        if (val == null) {
-            val = (T) attachments.putIfAbsent(key, expectedValue);
-            return val == null || val.equals(expectedValue);
-        } else {
-            return val.equals(expectedValue);
-        }
+        final T val = putAttachmentIfAbsent(key, expectedValue);
+        return val == null || val.equals(expectedValue);
     }
 
     public <T> T getAttachmentIfPresent(final AttachmentKey<T> key) {
-        return key == null ? null : (T) attachments.get(key);
+        if (key == null) {
+            return null;
+        }
+        final int index = key.getIndex();
+        if (index < 0) {
+            final ConcurrentMap<AttachmentKey<?>, Object> map = attachments;
+            return map == null ? null : (T) map.get(key);
+        }
+        AtomicReferenceArray<Object> slots = this.slots;
+        if (slots == null || index >= slots.length()) {
+            return null;
+        }
+        for (;;) {
+            final Object value = slots.get(index);
+            if (value != MOVED) {
+                return (T) value;
+            }
+            slots = getMovedSlots(slots);
+        }
     }
 
     public <T> T putAttachment(final AttachmentKey<T> key, final T newValue) {
@@ -75,7 +125,19 @@ class SimpleAttachable implements Attachable {
         if (newValue == null) {
             throw new IllegalArgumentException("newValue is null");
         }
-        return (T) attachments.put(key, newValue);
+        final int index = key.getIndex();
+        if (index < 0) {
+            return (T) getAttachments().put(key, newValue);
+        }
+        AtomicReferenceArray<Object> slots = getSlots(index);
+        for (;;) {
+            final Object value = slots.get(index);
+            if (value == MOVED) {
+                slots = getMovedSlots(slots);
+            } else if (slots.compareAndSet(index, value, newValue)) {
+                return (T) value;
+            }
+        }
     }
 
     public <T> T putAttachmentIfAbsent(final AttachmentKey<T> key, final T newValue) {
@@ -85,15 +147,56 @@ class SimpleAttachable implements Attachable {
         if (newValue == null) {
             throw new IllegalArgumentException("newValue is null");
         }
-        return (T) attachments.putIfAbsent(key, newValue);
+        final int index = key.getIndex();
+        if (index < 0) {
+            return (T) getAttachments().putIfAbsent(key, newValue);
+        }
+        AtomicReferenceArray<Object> slots = getSlots(index);
+        for (;;) {
+            final Object value = slots.get(index);
+            if (value == MOVED) {
+                slots = getMovedSlots(slots);
+            } else if (value != null) {
+                return (T) value;
+            } else if (slots.compareAndSet(index, null, newValue)) {
+                return null;
+            }
+        }
     }
 
     public <T> T removeAttachment(final AttachmentKey<T> key) {
-        return key == null ? null : (T) attachments.remove(key);
+        if (key == null) {
+            return null;
+        }
+        final int index = key.getIndex();
+        if (index < 0) {
+            final ConcurrentMap<AttachmentKey<?>, Object> map = attachments;
+            return map == null ? null : (T) map.remove(key);
+        }
+        AtomicReferenceArray<Object> slots = this.slots;
+        if (slots == null || index >= slots.length()) {
+            return null;
+        }
+        for (;;) {
+            final Object value = slots.get(index);
+            if (value == MOVED) {
+                slots = getMovedSlots(slots);
+            } else if (value == null || slots.compareAndSet(index, value, null)) {
+                return (T) value;
+            }
+        }
     }
 
     public <T> boolean removeAttachment(final AttachmentKey<T> key, final T expectedValue) {
-        return key != null && expectedValue != null && attachments.remove(key, expectedValue);
+        if (key == null || expectedValue == null) {
+            return false;
+        }
+        final int index = key.getIndex();
+        if (index < 0) {
+            final ConcurrentMap<AttachmentKey<?>, Object> map = attachments;
+            return map != null && map.remove(key, expectedValue);
+        }
+        return replaceSlot(index, expectedValue, null);
     }
 
     public <T> T replaceAttachment(final AttachmentKey<T> key, final T newValue) {
@@ -103,7 +206,19 @@ class SimpleAttachable implements Attachable {
         if (newValue == null) {
             throw new IllegalArgumentException("newValue is null");
         }
-        return (T) attachments.replace(key, newValue);
+        final int index = key.getIndex();
+        if (index < 0) {
+            return (T) getAttachments().replace(key, newValue);
+        }
+        AtomicReferenceArray<Object> slots = getSlots(index);
+        for (;;) {
+            final Object value = slots.get(index);
+            if (value == MOVED) {
+                slots = getMovedSlots(slots);
+            } else if (value == null || slots.compareAndSet(index, value, newValue)) {
+                return (T) value;
+            }
+        }
     }
 
     public <T> boolean replaceAttachment(final AttachmentKey<T> key, final T expectedValue, final T newValue) {
@@ -116,6 +231,75 @@ class SimpleAttachable implements Attachable {
         if (newValue == null) {
             throw new IllegalArgumentException("newValue is null");
         }
-        return attachments.replace(key, expectedValue, newValue);
+        final int index = key.getIndex();
+        if (index < 0) {
+            return getAttachments().replace(key, expectedValue, newValue);
+        }
+        return replaceSlot(index, expectedValue, newValue);
+    }
+
+    /**
+     * Replaces the value of a slot if it equals {@code expectedValue}.
+     */
+    private boolean replaceSlot(final int index, final Object expectedValue, final Object newValue) {
+        AtomicReferenceArray<Object> slots = this.slots;
+        if (slots == null || index >= slots.length()) {
+            return false;
+        }
+        for (;;) {
+            final Object value = slots.get(index);
+            if (value == MOVED) {
+                slots = getMovedSlots(slots);
+            } else if (value == null || !value.equals(expectedValue)) {
+                return false;
+            } else if (slots.compareAndSet(index, value, newValue)) {
+                return true;
+            }
+        }
+    }
+
+    private ConcurrentMap<AttachmentKey<?>, Object> getAttachments() {
+        final ConcurrentMap<AttachmentKey<?>, Object> attachments = this.attachments;
+        if (attachments != null) {
+            return attachments;
+        }
+        attachmentsUpdater.compareAndSet(this, null, new ConcurrentHashMap<AttachmentKey<?>, Object>());
+        return this.attachments;
+    }
+
+    /**
+     * Returns a slot array with room for {@code index}, creating or growing it if needed.
+     */
+    private AtomicReferenceArray<Object> getSlots(final int index) {
+        AtomicReferenceArray<Object> slots = this.slots;
+        if (slots == null) {
+            slotsUpdater.compareAndSet(this, null, new AtomicReferenceArray<Object>(Math.max(AttachmentKey.getIndexedKeyCount(), index + 1)));
+            slots = this.slots;
+        }
+        return index < slots.length() ? slots : growSlots(slots, index);
+    }
+
+    private AtomicReferenceArray<Object> growSlots(final AtomicReferenceArray<Object> oldSlots, final int index) {
+        synchronized (oldSlots) {
+            final AtomicReferenceArray<Object> slots = this.slots;
+            if (slots != oldSlots) {
+                return index < slots.length() ? slots : growSlots(slots, index);
+            }
+            final AtomicReferenceArray<Object> newSlots = new AtomicReferenceArray<Object>(Math.max(AttachmentKey.getIndexedKeyCount(), index + 1));
+            for (int i = 0; i < oldSlots.length(); i++) {
+                newSlots.set(i, oldSlots.getAndSet(i, MOVED));
+            }
+            this.slots = newSlots;
+            return newSlots;
+        }
+    }
+
+    /**
+     * Returns the slot array that replaced {@code oldSlots}, waiting for the growth in progress to finish.
+     */
+    private AtomicReferenceArray<Object> getMovedSlots(final AtomicReferenceArray<Object> oldSlots) {
+        synchronized (oldSlots) {
+            return slots;
+        }
     }
 }
@@ -34,7 +34,7 @@ import org.jboss.msc.txn.Problem.Severity;
 final class StartingServiceTasks {
 
     // keep track of services that have failed to start at current transaction
-    static final AttachmentKey<Set<Service<?>>> FAILED_SERVICES = AttachmentKey.<Set<Service<?>>>create(new Factory<Set<Service<?>>>() {
+    static final AttachmentKey<Set<Service<?>>> FAILED_SERVICES = AttachmentKey.<Set<Service<?>>>createIndexed(new Factory<Set<Service<?>>>() {
         @Override
         public Set<Service<?>> create() {
             return new HashSet<Service<?>>();
@@ -58,7 +58,7 @@ final class StartingServiceTasks {
         final Service<T> serviceValue = serviceController.getService();
 
         // start service task builder
-        final TaskBuilder<T> startBuilder = taskFactory.newTask(new StartServiceTask<T>(serviceValue, transaction)).setTraits(serviceValue);
+        final TaskBuilder<T> startBuilder = taskFactory.newTask(new StartServiceTask<T>(serviceController, transaction)).setTraits(serviceValue);
 
         if (hasDependencies(serviceController)) {
             // notify dependent is starting to dependencies
@@ -134,28 +134,41 @@ final class StartingServiceTasks {
      */
     static class StartServiceTask<T> implements Executable<T> {
 
+        private final ServiceControllerImpl<T> serviceController;
         private final Service<T> service;
         private final Transaction transaction;
+        // when the start was scheduled
+        private final long scheduledNanos = System.nanoTime();
+        // when the dependencies were satisfied and the start began
+        private volatile long executedNanos;
 
-        StartServiceTask(final Service<T> service, final Transaction transaction) {
-            this.service = service;
+        StartServiceTask(final ServiceControllerImpl<T> serviceController, final Transaction transaction) {
+            this.serviceController = serviceController;
+            this.service = serviceController.getService();
             this.transaction = transaction;
         }
 
+        private void recordLatency() {
+            serviceController.recordStartLatency(executedNanos - scheduledNanos, System.nanoTime() - executedNanos);
+        }
+
         /**
          * Perform the task.
          *
          * @param context
          */
         public void execute(final ExecuteContext<T> context) {
+            executedNanos = System.nanoTime();
             service.start(new StartContext<T>() {
                 @Override
                 public void complete(T result) {
+                    recordLatency();
                     context.complete(result);
                 }
 
                 @Override
                 public void complete() {
+                    recordLatency();
                     context.complete();
                 }
 
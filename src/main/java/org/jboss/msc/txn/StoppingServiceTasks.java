@@ -47,10 +47,8 @@ final class StoppingServiceTasks {
     static <T> TaskController<Void> create(ServiceControllerImpl<T> service, Collection<TaskController<?>> taskDependencies,
             Transaction transaction, TaskFactory taskFactory) {
 
-        final Service<T> serviceValue = service.getService();
-
         // stop service
-        final TaskBuilder<Void> stopTaskBuilder = taskFactory.newTask(new StopServiceTask(serviceValue));
+        final TaskBuilder<Void> stopTaskBuilder = taskFactory.newTask(new StopServiceTask(service));
         stopTaskBuilder.addDependencies(taskDependencies);
         if (taskDependencies.isEmpty()) {
             stopTaskBuilder.addDependency(service.getUnlockTask());
@@ -58,15 +56,7 @@ final class StoppingServiceTasks {
         final TaskController<Void> stop = stopTaskBuilder.release();
 
         // post stop task
-        final TaskBuilder<Void> setServiceDownBuilder =  taskFactory.newTask(new SetServiceDownTask(service, transaction)).addDependency(stop);
-
-        // undemand dependencies if needed
-        if (service.getDependencies().length > 0) {
-            TaskController<Void> undemandDependenciesTask = UndemandDependenciesTask.create(service, stop, transaction, transaction.getTaskFactory());
-            setServiceDownBuilder.addDependency(undemandDependenciesTask);
-        }
-
-        return setServiceDownBuilder.release();
+        return taskFactory.newTask(new SetServiceDownTask(service, transaction)).addDependency(stop).release();
     }
 
     /**
@@ -112,17 +102,7 @@ final class StoppingServiceTasks {
     static <T> TaskController<Void> createForFailedService(ServiceControllerImpl<T> service, Transaction transaction, TaskFactory taskFactory) {
 
         // post stop task
-        final TaskBuilder<Void> setServiceDownBuilder = taskFactory.newTask(new SetServiceDownTask(service, transaction));
-
-        // undemand dependencies if needed
-        if (service.getDependencies().length > 0) {
-            TaskController<Void> undemandDependenciesTask = UndemandDependenciesTask.create(service, transaction, transaction.getTaskFactory());
-            setServiceDownBuilder.addDependency(undemandDependenciesTask);
-        } else {
-            setServiceDownBuilder.addDependency(service.getUnlockTask());
-        }
-
-        return setServiceDownBuilder.release();
+        return taskFactory.newTask(new SetServiceDownTask(service, transaction)).addDependency(service.getUnlockTask()).release();
     }
 
     /**
@@ -132,22 +112,35 @@ final class StoppingServiceTasks {
      */
     static class StopServiceTask implements Executable<Void> {
 
+        private final ServiceControllerImpl<?> serviceController;
         private final Service<?> service;
+        // when the stop was scheduled
+        private final long scheduledNanos = System.nanoTime();
+        // when the dependents were stopped and the stop began
+        private volatile long executedNanos;
+
+        StopServiceTask(final ServiceControllerImpl<?> serviceController) {
+            this.serviceController = serviceController;
+            this.service = serviceController.getService();
+        }
 
-        StopServiceTask(final Service<?> service) {
-            this.service = service;
+        private void recordLatency() {
+            serviceController.recordStopLatency(executedNanos - scheduledNanos, System.nanoTime() - executedNanos);
         }
 
         public void execute(final ExecuteContext<Void> context) {
+            executedNanos = System.nanoTime();
             service.stop(new StopContext(){
 
                 @Override
                 public void complete(Void result) {
+                    recordLatency();
                     context.complete(result);
                 }
 
                 @Override
                 public void complete() {
+                    recordLatency();
                     context.complete();
                 }
 
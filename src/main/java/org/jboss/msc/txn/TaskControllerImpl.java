@@ -126,13 +126,15 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
 
     private final TaskParent parent;
     private final TaskControllerImpl<?>[] dependencies;
-    private final Executable<T> executable;
-    private final Revertible revertible;
-    private final Validatable validatable;
-    private final Committable committable;
+    // released as soon as the phase that uses them is over, a long transaction would retain them otherwise
+    private Executable<T> executable;
+    private Revertible revertible;
+    private Validatable validatable;
+    private Committable committable;
     private final ClassLoader classLoader;
-    private final ArrayList<TaskControllerImpl<?>> dependents = new ArrayList<TaskControllerImpl<?>>();
-    private final ArrayList<TaskChild> children = new ArrayList<TaskChild>();
+    // created on first addition, released once this task is terminated
+    private ArrayList<TaskControllerImpl<?>> dependents;
+    private ArrayList<TaskChild> children;
 
     private int state;
     private int unfinishedDependencies;
@@ -408,6 +410,11 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
                     continue;
                 }
                 case T_EXECUTE_WAIT_to_EXECUTE: {
+                    if (executable != null && getTransaction().isFailedFast()) {
+                        // the transaction is failing fast, cancel instead of executing
+                        state |= FLAG_CANCEL_REQ;
+                        continue;
+                    }
                     if (executable == null) {
                         state = newState(STATE_EXECUTE, state | FLAG_EXECUTE_DONE);
                         continue;
@@ -416,7 +423,8 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
                     return newState(STATE_EXECUTE, state | FLAG_DO_EXECUTE);
                 }
                 case T_EXECUTE_to_EXECUTE_CHILDREN_WAIT: {
-                    if (! dependents.isEmpty()) {
+                    executable = null;
+                    if (dependents != null) {
                         cachedDependents = dependents.toArray(new TaskControllerImpl[dependents.size()]);
                         state = newState(STATE_EXECUTE_CHILDREN_WAIT, state | FLAG_SEND_DEPENDENCY_DONE);
                     } else {
@@ -429,6 +437,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
                     continue;
                 }
                 case T_VALIDATE_to_VALIDATE_CHILDREN_WAIT: {
+                    validatable = null;
                     state = newState(STATE_VALIDATE_CHILDREN_WAIT, state | FLAG_SEND_VALIDATE_REQ);
                     continue;
                 }
@@ -445,6 +454,8 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
                     continue;
                 }
                 case T_VALIDATE_DONE_to_COMMIT_WAIT: {
+                    // can no longer be rolled back
+                    revertible = null;
                     state = newState(STATE_COMMIT_WAIT, state);
                     continue;
                 }
@@ -457,10 +468,12 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
                     return newState(STATE_COMMIT, state | FLAG_DO_COMMIT);
                 }
                 case T_COMMIT_to_TERMINATE_WAIT: {
+                    committable = null;
                     state = newState(STATE_TERMINATE_WAIT, state | FLAG_SEND_COMMIT_DONE | FLAG_SEND_COMMIT_REQ);
                     continue;
                 }
                 case T_TERMINATE_WAIT_to_TERMINATED: {
+                    releaseCallbacks();
                     state = newState(STATE_TERMINATED, state | FLAG_SEND_CHILD_TERMINATED | FLAG_SEND_TERMINATED);
                     continue;
                 }
@@ -468,11 +481,13 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
                 // exceptional cases
 
                 case T_NEW_to_TERMINATED: {
+                    releaseCallbacks();
                     // not possible to go any farther
                     return newState(STATE_TERMINATED, state);
                 }
                 case T_EXECUTE_WAIT_to_TERMINATE_WAIT: {
-                    if (! dependents.isEmpty()) {
+                    releaseCallbacks();
+                    if (dependents != null) {
                         cachedDependents = dependents.toArray(new TaskControllerImpl[dependents.size()]);
                         state = newState(STATE_TERMINATE_WAIT, state | FLAG_SEND_CANCEL_DEPENDENTS);
                     } else {
@@ -481,7 +496,8 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
                     continue;
                 }
                 case T_EXECUTE_to_TERMINATE_WAIT: {
-                    if (! dependents.isEmpty()) {
+                    releaseCallbacks();
+                    if (dependents != null) {
                         cachedDependents = dependents.toArray(new TaskControllerImpl[dependents.size()]);
                         state = newState(STATE_TERMINATE_WAIT, state | FLAG_SEND_CANCEL_DEPENDENTS | FLAG_SEND_CANCEL_REQ);
                     } else {
@@ -498,6 +514,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
                     continue;
                 }
                 case T_VALIDATE_to_ROLLBACK_WAIT: {
+                    validatable = null;
                     state = newState(STATE_ROLLBACK_WAIT, state | FLAG_SEND_ROLLBACK_REQ);
                     continue;
                 }
@@ -514,6 +531,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
                     return newState(STATE_ROLLBACK, state | FLAG_DO_ROLLBACK);
                 }
                 case T_ROLLBACK_to_TERMINATE_WAIT: {
+                    releaseCallbacks();
                     state = newState(STATE_TERMINATE_WAIT, state);
                     continue;
                 }
@@ -522,8 +540,23 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
         }
     }
 
+    /**
+     * Releases the phase callbacks, which are not invoked anymore. Only the counters are needed to complete the
+     * remaining transitions.
+     */
+    private void releaseCallbacks() {
+        assert holdsLock(this);
+        executable = null;
+        validatable = null;
+        revertible = null;
+        committable = null;
+    }
+
     private void executeTasks(final int state) {
         final boolean userThread = Bits.allAreSet(state, FLAG_USER_THREAD);
+        // read before notifying anyone, as this task cannot terminate before that; the lists are released on termination
+        final ArrayList<TaskChild> children = this.children;
+        final ArrayList<TaskControllerImpl<?>> dependents = this.dependents;
         if (Bits.allAreSet(state, FLAG_SEND_DEPENDENCY_DONE)) {
             for (TaskControllerImpl<?> dependent : cachedDependents) {
                 dependent.dependencyExecutionComplete(userThread);
@@ -533,22 +566,22 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
         if (Bits.allAreSet(state, FLAG_SEND_CHILD_DONE)) {
             parent.childExecutionFinished(userThread);
         }
-        if (Bits.allAreSet(state, FLAG_SEND_VALIDATE_REQ)) {
+        if (Bits.allAreSet(state, FLAG_SEND_VALIDATE_REQ) && children != null) {
             for (TaskChild child : children) {
                 child.childInitiateValidate(userThread);
             }
         }
-        if (Bits.allAreSet(state, FLAG_SEND_CANCEL_REQ)) {
+        if (Bits.allAreSet(state, FLAG_SEND_CANCEL_REQ) && children != null) {
             for (TaskChild child : children) {
                 child.forceCancel(userThread);
             }
         }
-        if (Bits.allAreSet(state, FLAG_SEND_ROLLBACK_REQ)) {
+        if (Bits.allAreSet(state, FLAG_SEND_ROLLBACK_REQ) && children != null) {
             for (TaskChild child : children) {
                 child.childInitiateRollback(userThread);
             }
         }
-        if (Bits.allAreSet(state, FLAG_SEND_COMMIT_REQ)) {
+        if (Bits.allAreSet(state, FLAG_SEND_COMMIT_REQ) && children != null) {
             for (TaskChild child : children) {
                 child.childInitiateCommit(userThread);
             }
@@ -556,7 +589,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
         if (Bits.allAreSet(state, FLAG_SEND_CHILD_VALIDATE_DONE)) {
             parent.childValidationFinished(userThread);
         }
-        if (Bits.allAreSet(state, FLAG_SEND_COMMIT_DONE)) {
+        if (Bits.allAreSet(state, FLAG_SEND_COMMIT_DONE) && dependents != null) {
             for (TaskControllerImpl<?> dependent : dependents) {
                 dependent.dependencyCommitComplete(userThread);
             }
@@ -575,6 +608,13 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
             }
             cachedDependents = null;
         }
+        if (Bits.allAreSet(state, FLAG_SEND_TERMINATED)) {
+            // nothing is sent to children nor dependents anymore, release the subgraph
+            synchronized (this) {
+                this.children = null;
+                this.dependents = null;
+            }
+        }
 
         assert Bits.allAreClear(state, DO_FLAGS) || Bits.oneIsSet(state, DO_FLAGS);
 
@@ -687,7 +727,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
     private void execCancelled() {
         assert ! holdsLock(this);
         int state;
-        final boolean canCancel = getTransaction().isRollbackRequested();
+        final boolean canCancel = getTransaction().isCancelRequested();
         synchronized (this) {
             state = this.state | FLAG_USER_THREAD | FLAG_CANCEL_REQ;
             if (!canCancel || stateOf(state) != STATE_EXECUTE) {
@@ -716,6 +756,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
     void validate() {
         final ProblemReport problemReport = getTransaction().getProblemReport();
         final Validatable validatable = this.validatable;
+        final long startNanos = EventRecorder.startTime();
         if (validatable != null) try {
             setClassLoader();
             validatable.validate(new ValidateContext() {
@@ -751,6 +792,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
             MSCLogger.TASK.taskValidationFailed(t, validatable);
         } finally {
             unsetClassLoader();
+            EventRecorder.recordTaskPhaseExecuted(this, EventRecorder.TaskPhase.VALIDATE, validatable, classLoader, startNanos);
         }
     }
 
@@ -787,6 +829,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
 
     void rollback() {
         final Revertible rev = revertible;
+        final long startNanos = EventRecorder.startTime();
         if (rev != null) try {
             setClassLoader();
             rev.rollback(new RollbackContext() {
@@ -798,12 +841,14 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
             MSCLogger.TASK.taskRollbackFailed(t, rev);
         } finally {
             unsetClassLoader();
+            EventRecorder.recordTaskPhaseExecuted(this, EventRecorder.TaskPhase.ROLLBACK, rev, classLoader, startNanos);
         }
     }
 
     void execute() {
         final ProblemReport problemReport = getTransaction().getProblemReport();
         final Executable<T> exec = executable;
+        final long startNanos = EventRecorder.startTime();
         if (exec != null) try {
             setClassLoader();
             final class ExecuteContextImpl implements ExecuteContext<T>, TaskFactory {
@@ -819,7 +864,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
 
                 @Override
                 public boolean isCancelRequested() {
-                    return getTransaction().isRollbackRequested();
+                    return getTransaction().isCancelRequested();
                 }
 
                 @Override
@@ -873,11 +918,13 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
             problemReport.addProblem(new Problem(this, t, Problem.Severity.CRITICAL));
         } finally {
             unsetClassLoader();
+            EventRecorder.recordTaskPhaseExecuted(this, EventRecorder.TaskPhase.EXECUTE, exec, classLoader, startNanos);
         }
     }
 
     void commit() {
         final Committable committable = this.committable;
+        final long startNanos = EventRecorder.startTime();
         if (committable != null) try {
             setClassLoader();
             committable.commit(new CommitContext() {
@@ -889,6 +936,7 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
             MSCLogger.TASK.taskCommitFailed(t, committable);
         } finally {
             unsetClassLoader();
+            EventRecorder.recordTaskPhaseExecuted(this, EventRecorder.TaskPhase.COMMIT, committable, classLoader, startNanos);
         }
     }
 
@@ -953,6 +1001,9 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
         synchronized (this) {
             state = this.state;
             if (stateIsIn(state, STATE_EXECUTE)) {
+                if (children == null) {
+                    children = new ArrayList<TaskChild>();
+                }
                 children.add(child);
                 unfinishedChildren++;
                 unvalidatedChildren++;
@@ -1045,6 +1096,9 @@ final class TaskControllerImpl<T> implements TaskController<T>, TaskParent, Task
             state = this.state;
             if (userThread) state |= FLAG_USER_THREAD;
             if (stateIsIn(state, STATE_EXECUTE_WAIT, STATE_EXECUTE, STATE_EXECUTE_DONE, STATE_TERMINATE_WAIT, STATE_TERMINATED)) {
+                if (dependents == null) {
+                    dependents = new ArrayList<TaskControllerImpl<?>>();
+                }
                 dependents.add(dependent);
                 unterminatedDependents++;
                 state = transition(state);
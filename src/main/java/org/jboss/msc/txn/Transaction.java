@@ -19,9 +19,12 @@
 package org.jboss.msc.txn;
 
 import static java.lang.Thread.holdsLock;
+import static org.jboss.msc._private.MSCLogger.TXN;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
@@ -76,8 +79,11 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
     final Executor taskExecutor;
     final Problem.Severity maxSeverity;
     private final long startTime = System.nanoTime();
-    private final List<TaskControllerImpl<?>> topLevelTasks = new ArrayList<TaskControllerImpl<?>>();
-    private final ProblemReport problemReport = new ProblemReport();
+    // released once this transaction is terminated, so that a transaction still referenced does not retain its tasks
+    private List<TaskControllerImpl<?>> topLevelTasks = new ArrayList<TaskControllerImpl<?>>();
+    private int topLevelTaskCount;
+    private final ProblemReport problemReport = new ProblemReport(this);
+    private final List<Listener<? super Problem>> problemListeners = new CopyOnWriteArrayList<Listener<? super Problem>>();
     private final TaskParent topParent = new TaskParent() {
         public void childExecutionFinished(final boolean userThread) {
             doChildExecutionFinished(userThread);
@@ -119,6 +125,10 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
     private Listener<? super RollbackResult<? extends Transaction>> rollbackListener;
     private volatile boolean isRollbackRequested;
     private volatile boolean isPrepareRequested;
+    // cleared when a task with commit or rollback behavior is added, including the unlock task of transactional objects
+    private volatile boolean isReadOnly = true;
+    private volatile Problem.Severity failFastSeverity;
+    private volatile boolean isFailedFast;
 
     Transaction(final TransactionController controller, final Executor taskExecutor, final Problem.Severity maxSeverity) {
         this.controller = controller;
@@ -180,6 +190,77 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
         return problemReport;
     }
 
+    /**
+     * Adds a listener notified of every problem added to this transaction, as soon as it is added, by the thread
+     * adding it. Problems added before the listener are not notified.
+     *
+     * @param listener the problem listener
+     */
+    public final void addProblemListener(final Listener<? super Problem> listener) {
+        if (listener == null) {
+            throw TXN.methodParameterIsNull("listener");
+        }
+        problemListeners.add(listener);
+    }
+
+    /**
+     * Removes a problem listener.
+     *
+     * @param listener the problem listener
+     */
+    public final void removeProblemListener(final Listener<? super Problem> listener) {
+        problemListeners.remove(listener);
+    }
+
+    /**
+     * Makes this transaction fail fast: once a problem with {@code severity} or above is added, tasks that have not
+     * started executing are cancelled instead, along with their dependents, and executing tasks are asked to cancel.
+     * As {@code severity} must be above the maximum severity of this transaction, the transaction can only be
+     * rolled back or aborted afterwards.
+     *
+     * @param severity the severity that triggers cancellation, or {@code null} to disable fail fast
+     */
+    public final void setFailFast(final Problem.Severity severity) {
+        if (severity != null && severity.compareTo(maxSeverity) <= 0) {
+            throw TXN.methodParameterIsInvalid("severity");
+        }
+        failFastSeverity = severity;
+        if (severity != null && problemReport.getMaxSeverity().compareTo(severity) >= 0) {
+            isFailedFast = true;
+        }
+    }
+
+    /**
+     * Indicates if a problem triggered the fail fast of this transaction.
+     */
+    final boolean isFailedFast() {
+        return isFailedFast;
+    }
+
+    /**
+     * Indicates if executing tasks should cancel, either because of a rollback or of a fail fast.
+     */
+    final boolean isCancelRequested() {
+        return isRollbackRequested || isFailedFast;
+    }
+
+    /**
+     * Invoked by the problem report after {@code problem} is added.
+     */
+    final void problemAdded(final Problem problem) {
+        final Problem.Severity failFastSeverity = this.failFastSeverity;
+        if (failFastSeverity != null && problem.getSeverity().compareTo(failFastSeverity) >= 0) {
+            isFailedFast = true;
+        }
+        for (Listener<? super Problem> listener : problemListeners) {
+            try {
+                listener.handleEvent(problem);
+            } catch (final Throwable ignored) {
+                MSCLogger.ROOT.listenerFailed(ignored, listener);
+            }
+        }
+    }
+
     /**
      * Calculate the transition to take from the current state.
      *
@@ -212,7 +293,8 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
                 if (Bits.allAreSet(state, FLAG_ROLLBACK_REQ)) {
                     return T_PREPARED_to_ROLLBACK;
                 } else if (Bits.allAreSet(state, FLAG_COMMIT_REQ)) {
-                    return T_PREPARED_to_COMMITTING;
+                    // a one phase commit is requested before validation, and rolls back if validation failed
+                    return reportIsCommittable() ? T_PREPARED_to_COMMITTING : T_PREPARED_to_ROLLBACK;
                 } else {
                      return T_NONE;
                 }
@@ -280,10 +362,12 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
                     continue;
                 }
                 case T_COMMITTING_to_COMMITTED: {
+                    topLevelTasks = Collections.emptyList();
                     state = newState(STATE_COMMITTED, state | FLAG_DO_COMMIT_LISTENER | FLAG_CLEAN_UP);
                     continue;
                 }
                 case T_ROLLBACK_to_ROLLED_BACK: {
+                    topLevelTasks = Collections.emptyList();
                     state = newState(STATE_ROLLED_BACK, state | FLAG_DO_ROLLBACK_LISTENER | FLAG_CLEAN_UP);
                     continue;
                 }
@@ -294,6 +378,8 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
 
     private void executeTasks(final int state) {
         final boolean userThread = Bits.allAreSet(state, FLAG_USER_THREAD);
+        // tasks are released on termination, which cannot happen before they are notified
+        final List<TaskControllerImpl<?>> topLevelTasks = this.topLevelTasks;
         if (Bits.allAreSet(state, FLAG_SEND_VALIDATE_REQ)) {
             for (TaskControllerImpl<?> task : topLevelTasks) {
                 task.childInitiateValidate(userThread);
@@ -416,6 +502,46 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
         executeTasks(state);
     }
 
+    /**
+     * Prepares and commits this transaction in a single pass: once all tasks are validated, the transaction commits if
+     * validation reported no problem above the maximum severity, and rolls back otherwise.
+     *
+     * @param commitListener the listener notified if the transaction commits
+     * @param abortListener  the listener notified if the transaction rolls back
+     * @throws InvalidTransactionStateException if the transaction is not active, or if prepare was already requested
+     */
+    final void commitOnePhase(final Listener<? super CommitResult<? extends Transaction>> commitListener,
+            final Listener<? super AbortResult<? extends Transaction>> abortListener) throws InvalidTransactionStateException {
+        assert ! holdsLock(this);
+        int state;
+        synchronized (this) {
+            state = this.state | FLAG_USER_THREAD;
+            if (isRollbackRequested || isPrepareRequested || stateOf(state) != STATE_ACTIVE) {
+                throw new InvalidTransactionStateException("Transaction must be in active state to commit in one phase");
+            }
+            state |= FLAG_PREPARE_REQ | FLAG_COMMIT_REQ;
+            isPrepareRequested = true;
+            this.commitListener = commitListener;
+            this.abortListener = abortListener;
+            state = transition(state);
+            this.state = state & PERSISTENT_STATE;
+        }
+        executeTasks(state);
+    }
+
+    /**
+     * Indicates if this transaction is read-only, i.e., if none of its tasks has commit or rollback behavior. As every
+     * {@link TransactionalObject} locked by the transaction is unlocked by such a task, a read-only transaction
+     * changed nothing.
+     */
+    final boolean isReadOnly() {
+        return isReadOnly;
+    }
+
+    final void taskWithTerminationBehaviorAdded() {
+        isReadOnly = false;
+    }
+
     final boolean isRollbackRequested() {
         return isRollbackRequested;
     }
@@ -435,7 +561,12 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
     }
 
     final void waitFor(final Transaction other) throws InterruptedException, DeadlockException {
-        Transactions.waitFor(this,  other);
+        try {
+            Transactions.waitFor(this,  other);
+        } catch (DeadlockException e) {
+            EventRecorder.recordDeadlockDetected(this, other);
+            throw e;
+        }
     }
 
     protected void finalize() {
@@ -513,6 +644,7 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
             }
             if (userThread) state |= FLAG_USER_THREAD;
             topLevelTasks.add((TaskControllerImpl<?>) child);
+            topLevelTaskCount++;
             unfinishedChildren++;
             unvalidatedChildren++;
             unterminatedChildren++;
@@ -524,40 +656,48 @@ public abstract class Transaction extends SimpleAttachable implements Attachable
 
     private void callPrepareListener(final int state) {
         final Listener<? super PrepareResult<? extends Transaction>> prepareListener;
+        final int taskCount;
         synchronized (this) {
             prepareListener = this.prepareListener;
             this.prepareListener = null;
+            taskCount = topLevelTaskCount;
         }
+        EventRecorder.recordTransactionPrepared(this, taskCount, startTime);
         callListeners(state, prepareListener, null, null, null);
     }
 
     private void callCommitListener(final int state) {
         final Listener<? super CommitResult<? extends Transaction>> commitListener;
+        final int taskCount;
         synchronized (this) {
             endTime = System.nanoTime();
             commitListener = this.commitListener;
             this.commitListener = null;
+            taskCount = topLevelTaskCount;
         }
+        EventRecorder.recordTransactionCommitted(this, taskCount, endTime - startTime);
         callListeners(state, null, commitListener, null, null);
     }
 
     private void callTerminateListeners(final int state) {
         final Listener<? super PrepareResult<? extends Transaction>> prepareListener;
-        final Listener<? super CommitResult<? extends Transaction>> commitListener;
         final Listener<? super AbortResult<? extends Transaction>> abortListener;
         final Listener<? super RollbackResult<? extends Transaction>> rollbackListener;
+        final int taskCount;
         synchronized (this) {
             endTime = System.nanoTime();
             prepareListener = this.prepareListener;
             this.prepareListener = null;
-            commitListener = this.commitListener;
             this.commitListener = null;
             abortListener = this.abortListener;
             this.abortListener = null;
             rollbackListener = this.rollbackListener;
             this.rollbackListener = null;
+            taskCount = topLevelTaskCount;
         }
-        callListeners(state, prepareListener, commitListener, abortListener, rollbackListener);
+        EventRecorder.recordTransactionRolledBack(this, taskCount, endTime - startTime);
+        // a commit listener is left only by a one phase commit that rolled back, hence it is not notified
+        callListeners(state, prepareListener, null, abortListener, rollbackListener);
     }
 
     private void callListeners(final int state, final Listener<? super PrepareResult<? extends Transaction>> prepareListener,
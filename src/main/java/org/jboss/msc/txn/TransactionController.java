@@ -74,8 +74,6 @@ public final class TransactionController extends SimpleAttachable {
         return registerTransaction(new BasicTransaction(this, executor, maxSeverity));
     }
 
-
-
     BasicTransaction registerTransaction(final BasicTransaction transaction) {
         try {
             Transactions.register(transaction);
@@ -83,6 +81,7 @@ public final class TransactionController extends SimpleAttachable {
             transaction.forceStateRolledBack();
             throw e;
         }
+        EventRecorder.recordTransactionCreated(transaction);
         return transaction;
     }
 
@@ -18,6 +18,7 @@
 
 package org.jboss.msc.txn;
 
+import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
@@ -137,6 +138,7 @@ final class TransactionXAResource extends TransactionManagementScheme<XATransact
             transaction.forceStateRolledBack();
             throw e;
         }
+        EventRecorder.recordTransactionCreated(transaction);
         return transaction;
     }
 
@@ -191,7 +193,22 @@ final class TransactionXAResource extends TransactionManagementScheme<XATransact
             transaction.prepare(listener);
             final PrepareResult<? extends Transaction> prepareResult = listener.awaitCompletionUninterruptibly();
             if (prepareResult.isPrepared()) {
-                // todo - a way to establish whether changes were made?
+                if (transaction.isReadOnly() && transaction.canCommit()) {
+                    // nothing to commit nor roll back, the transaction manager skips the second phase
+                    resourceManager.unregisterTransaction(xid, transaction);
+                    transaction.commit(null);
+                    return XA_RDONLY;
+                }
+                try {
+                    resourceManager.prepared(xid);
+                } catch (final IOException e) {
+                    // the prepare decision would not survive a crash
+                    resourceManager.unregisterTransaction(xid, transaction);
+                    transaction.abort(null);
+                    final XAException e2 = new XAException(XAException.XAER_RMERR);
+                    e2.initCause(e);
+                    throw e2;
+                }
                 return XA_OK;
             } else {
                 throw new XAException(XAException.XA_RBROLLBACK);
@@ -210,7 +227,8 @@ final class TransactionXAResource extends TransactionManagementScheme<XATransact
         // this method deals directly with the resource manager.
         final XATransaction transaction = resourceManager.removeTransaction(xid);
         if (transaction == null) {
-            // transaction is gone
+            // transaction is gone, or was prepared before a restart
+            resourceManager.forgetRecovered(xid);
             return;
         }
         try {
@@ -234,33 +252,64 @@ final class TransactionXAResource extends TransactionManagementScheme<XATransact
         if (xid == null) {
             throw new XAException(XAException.XAER_INVAL);
         }
-        final Transaction transaction = resourceManager.getTransaction(xid);
+        final XATransaction transaction = resourceManager.getTransaction(xid);
         if (transaction == null) {
+            if (resourceManager.completeRecovered(xid, true)) {
+                return;
+            }
             throw new XAException(XAException.XAER_NOTA);
         }
+        if (onePhase) {
+            commitOnePhase(xid, transaction);
+            return;
+        }
         try {
             final CompletionListener<CommitResult<? extends Transaction>> listener = new CompletionListener<>();
             transaction.commit(listener);
             listener.awaitCompletionUninterruptibly();
+            resourceManager.completed(xid, true);
+            resourceManager.unregisterTransaction(xid, transaction);
+        } catch (final InvalidTransactionStateException e) {
+            final XAException e2 = new XAException(XAException.XAER_PROTO);
+            e2.initCause(e);
+            throw e2;
+        }
+    }
+
+    private void commitOnePhase(final Xid xid, final XATransaction transaction) throws XAException {
+        final Object result;
+        try {
+            final CompletionListener<Object> listener = new CompletionListener<>();
+            transaction.commitOnePhase(listener, listener);
+            result = listener.awaitCompletionUninterruptibly();
         } catch (final InvalidTransactionStateException e) {
             final XAException e2 = new XAException(XAException.XAER_PROTO);
             e2.initCause(e);
             throw e2;
         }
+        resourceManager.unregisterTransaction(xid, transaction);
+        if (!(result instanceof CommitResult)) {
+            throw new XAException(XAException.XA_RBROLLBACK);
+        }
     }
 
     public void rollback(final Xid xid) throws XAException {
         if (xid == null) {
             throw new XAException(XAException.XAER_INVAL);
         }
-        final Transaction transaction = resourceManager.getTransaction(xid);
+        final XATransaction transaction = resourceManager.getTransaction(xid);
         if (transaction == null) {
+            if (resourceManager.completeRecovered(xid, false)) {
+                return;
+            }
             throw new XAException(XAException.XAER_NOTA);
         }
         try {
             final CompletionListener<AbortResult<? extends Transaction>> listener = new CompletionListener<>();
             transaction.abort(listener);
             listener.awaitCompletionUninterruptibly();
+            resourceManager.completed(xid, false);
+            resourceManager.unregisterTransaction(xid, transaction);
         } catch (final InvalidTransactionStateException e) {
             final XAException e2 = new XAException(XAException.XAER_PROTO);
             e2.initCause(e);
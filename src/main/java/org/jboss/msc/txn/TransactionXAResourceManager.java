@@ -20,6 +20,8 @@ package org.jboss.msc.txn;
 
 import static org.jboss.msc._private.MSCLogger.TXN;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,16 +34,21 @@ import java.util.concurrent.Executor;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
+import org.jboss.msc._private.MSCLogger;
+
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public final class TransactionXAResourceManager {
 
-    private static final AttachmentKey<TransactionXAResourceManager> KEY = AttachmentKey.create();
+    private static final AttachmentKey<TransactionXAResourceManager> KEY = AttachmentKey.createIndexed();
     private static final ConcurrentMap<UUID, TransactionXAResourceManager> RM_MAP = new ConcurrentHashMap<>();
     private final ConcurrentMap<XidKey, XATransaction> incompleteTransactions = new ConcurrentHashMap<>();
     private final TransactionController transactionController;
     private final UUID uuid = UUID.randomUUID();
+    // the recovery journal, if any
+    private volatile XAJournal journal;
+    private File journalFile;
 
     private TransactionXAResourceManager(final TransactionController transactionController) {
         this.transactionController = transactionController;
@@ -68,6 +75,110 @@ public final class TransactionXAResourceManager {
     public void destroy() {
         transactionController.removeAttachment(KEY, this);
         RM_MAP.remove(uuid, this);
+        final XAJournal journal = this.journal;
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                MSCLogger.TXN.journalWriteFailed(e, journalFile);
+            }
+        }
+    }
+
+    /**
+     * Open a recovery journal for this resource manager.  Prepared transactions are durably recorded in the journal,
+     * so that a transaction prepared before a crash is reported by {@link XAResource#recover(int) recovery} after
+     * restart, and can be completed by the transaction manager.  Must be invoked before any transaction is started.
+     * <p>
+     * Only the XIDs and the decisions made for them are journaled, not the work of the transactions.  Completing a
+     * recovered transaction records the decision of the transaction manager and nothing else: no MSC work is replayed
+     * on commit nor reverted on rollback, as the service state of the transaction was lost with the restart.  It is
+     * up to the application to install its services again after the restart.
+     *
+     * @param file the journal file, created if it does not exist
+     * @throws IOException if the journal cannot be read or written
+     */
+    public synchronized void openJournal(final File file) throws IOException {
+        if (file == null) {
+            throw TXN.methodParameterIsNull("file");
+        }
+        if (journal != null) {
+            throw new IllegalStateException("Journal is already open");
+        }
+        journal = XAJournal.open(file);
+        journalFile = file;
+    }
+
+    /**
+     * Durably record that the transaction with the given XID is prepared, if there is a journal.
+     *
+     * @param xid the XID
+     * @throws IOException if the journal cannot be written
+     */
+    void prepared(final Xid xid) throws IOException {
+        final XAJournal journal = this.journal;
+        if (journal != null) {
+            journal.prepared(xid);
+        }
+    }
+
+    /**
+     * Record that the transaction with the given XID is completed, if there is a journal.  Completion records are not
+     * synced, nor is a failure to write them reported: a lost record only makes the transaction manager complete the
+     * transaction again.
+     *
+     * @param xid the XID
+     * @param committed {@code true} if the transaction committed, {@code false} if it rolled back
+     */
+    void completed(final Xid xid, final boolean committed) {
+        final XAJournal journal = this.journal;
+        if (journal != null) {
+            try {
+                if (committed) {
+                    journal.committed(xid);
+                } else {
+                    journal.rolledBack(xid);
+                }
+            } catch (IOException e) {
+                MSCLogger.TXN.journalWriteFailed(e, journalFile);
+            }
+        }
+    }
+
+    /**
+     * Complete a transaction recovered from the journal, i.e., prepared before the resource manager was restarted.
+     * The transaction state was lost with the restart, so only the decision is recorded.
+     *
+     * @param xid the XID
+     * @param committed {@code true} to commit, {@code false} to roll back
+     * @return {@code true} if the transaction was recovered from the journal, {@code false} if it is unknown
+     */
+    boolean completeRecovered(final Xid xid, final boolean committed) {
+        final XAJournal journal = this.journal;
+        if (journal == null || !journal.isPrepared(xid) || incompleteTransactions.containsKey(new XidKey(xid))) {
+            return false;
+        }
+        completed(xid, committed);
+        return true;
+    }
+
+    /**
+     * Forget a transaction recovered from the journal.
+     *
+     * @param xid the XID
+     * @return {@code true} if the transaction was recovered from the journal, {@code false} if it is unknown
+     */
+    boolean forgetRecovered(final Xid xid) {
+        final XAJournal journal = this.journal;
+        if (journal == null || !journal.isPrepared(xid) || incompleteTransactions.containsKey(new XidKey(xid))) {
+            return false;
+        }
+        try {
+            journal.forgotten(xid);
+        } catch (IOException e) {
+            MSCLogger.TXN.journalWriteFailed(e, journalFile);
+        }
+        return true;
     }
     
     protected void finalize() {
@@ -104,10 +215,12 @@ public final class TransactionXAResourceManager {
 
     /**
      * Get the existing transaction with the given XID.  If no such transaction exists, {@code null} is returned.
+     * The transaction can be used to perform work, such as installing services, while its branch is active.
      *
+     * @param xid the transaction branch XID
      * @return the existing transaction with the given XID or {@code null} if none exist
      */
-    XATransaction getTransaction(Xid xid) {
+    public XATransaction getTransaction(Xid xid) {
         return incompleteTransactions.get(new XidKey(xid));
     }
 
@@ -136,6 +249,15 @@ public final class TransactionXAResourceManager {
         for (Map.Entry<XidKey, XATransaction> entry : incompleteTransactions.entrySet()) {
             list.add(entry.getKey().getXid());
         }
+        final XAJournal journal = this.journal;
+        if (journal != null) {
+            // transactions prepared before a restart
+            for (Xid xid : journal.getPreparedTransactions()) {
+                if (!incompleteTransactions.containsKey(new XidKey(xid))) {
+                    list.add(xid);
+                }
+            }
+        }
         return list.toArray(new Xid[list.size()]);
     }
 
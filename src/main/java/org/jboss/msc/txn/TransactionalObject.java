@@ -34,8 +34,8 @@ import java.util.Map.Entry;
  */
 abstract class TransactionalObject {
 
-    private static AttachmentKey<Map<TransactionalObject, Object>> TRANSACTIONAL_OBJECTS = AttachmentKey.create();
-    private static AttachmentKey<TaskController<Void>> UNLOCK_TASK = AttachmentKey.create();
+    private static final AttachmentKey<Map<TransactionalObject, Object>> TRANSACTIONAL_OBJECTS = AttachmentKey.createIndexed();
+    private static final AttachmentKey<TaskController<Void>> UNLOCK_TASK = AttachmentKey.createIndexed();
 
     // inner lock
     private Transaction lock;
@@ -62,8 +62,10 @@ abstract class TransactionalObject {
                     return;
                 }
                 assert !currentLock.isTerminated();
+                final long waitStart = EventRecorder.startTime();
                 try {
                     transaction.waitFor(currentLock);
+                    EventRecorder.recordLockWaited(transaction, currentLock, waitStart);
                 } catch (DeadlockException e) {
                     // TODO review this: isn't there a better way of adding this problem, specifically why do we need
                     // a task controller, and how will that look like in the log?
@@ -94,7 +96,10 @@ abstract class TransactionalObject {
                 transaction.putAttachment(UNLOCK_TASK, taskFactory.newTask().setTraits(new UnlockWriteTask(transactionalObjects)).release());
             }
         }
-        transactionalObjects.put(this, snapshot);
+        // tasks of the same transaction lock objects concurrently
+        synchronized (transactionalObjects) {
+            transactionalObjects.put(this, snapshot);
+        }
     }
 
     /**
@@ -129,10 +134,10 @@ abstract class TransactionalObject {
         return lock.getAttachment(UNLOCK_TASK);
     }
 
-    private final void unlockWrite() {
+    private final void unlockWrite(boolean committed) {
         assert Thread.holdsLock(this);
         lock = null;
-        writeUnlocked();
+        writeUnlocked(committed);
     }
 
     /**
@@ -167,8 +172,19 @@ abstract class TransactionalObject {
 
     /**
      * Notifies that this object is now write unlocked.
+     * 
+     * @param committed {@code true} if the transaction that held the lock was committed, {@code false} if it was
+     *                  rolled back, in which case {@link #revert(Object)} is invoked next
+     */
+    void writeUnlocked(boolean committed) {}
+
+    /**
+     * Notifies that the transaction that held the lock has committed. Invoked once every object locked by the
+     * transaction is unlocked, without holding any lock, so that listeners can be called safely.
+     *
+     * @param snapshot the snapshot taken when this object was locked
      */
-    void writeUnlocked() {}
+    void committed(Object snapshot) {}
 
     private static class UnlockWriteTask implements Validatable, Committable, Revertible {
 
@@ -198,12 +214,13 @@ abstract class TransactionalObject {
                     final TransactionalObject transactionalObject = entry.getKey();
                     final Object snapshot = entry.getValue();
                     synchronized (transactionalObject) {
-                        transactionalObject.unlockWrite();
+                        transactionalObject.unlockWrite(false);
                         if (snapshot != null) {
                             transactionalObject.revert(snapshot);
                         }
                     }
                 }
+                release();
             } finally {
                 context.complete();
             }
@@ -214,13 +231,24 @@ abstract class TransactionalObject {
             try {
                 for (TransactionalObject transactionalObject: transactionalObjects.keySet()) {
                     synchronized (transactionalObject) {
-                        transactionalObject.unlockWrite();
+                        transactionalObject.unlockWrite(true);
                     }
                 }
+                for (Entry<TransactionalObject, Object> entry: transactionalObjects.entrySet()) {
+                    entry.getKey().committed(entry.getValue());
+                }
+                release();
             } finally {
                 context.complete();
             }
         }
+
+        // the map is attached to the transaction as well, do not let it retain the objects and their snapshots
+        private void release() {
+            synchronized (transactionalObjects) {
+                transactionalObjects.clear();
+            }
+        }
     }
 
 }
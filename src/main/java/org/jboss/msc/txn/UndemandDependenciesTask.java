@@ -17,9 +17,14 @@
  */
 package org.jboss.msc.txn;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 /**
- * Task for undemanding dependencies.
+ * Task for undemanding dependencies. Undemand is propagated transitively through all {@code ON_DEMAND} and {@code LAZY}
+ * dependencies in a single graph traversal.
  * 
  * @author <a href="mailto:frainone@redhat.com">Flavia Rainone</a>
  */
@@ -72,9 +77,27 @@ class UndemandDependenciesTask implements Executable<Void> {
     @Override
     public void execute(ExecuteContext<Void> context) {
         assert context instanceof TaskFactory;
+        final TaskFactory taskFactory = (TaskFactory) context;
         try {
-            for (DependencyImpl<?> dependency: service.getDependencies()) {
-                dependency.undemand(transaction, (TaskFactory)context);
+            // undemand the whole chain of dependencies in a single traversal, and only then transition the services
+            // whose demand has changed
+            final List<ServiceControllerImpl<?>> undemandedServices = new ArrayList<ServiceControllerImpl<?>>();
+            final Deque<ServiceControllerImpl<?>> pendingServices = new ArrayDeque<ServiceControllerImpl<?>>();
+            pendingServices.add(service);
+            ServiceControllerImpl<?> pendingService;
+            while ((pendingService = pendingServices.poll()) != null) {
+                for (DependencyImpl<?> dependency: pendingService.getDependencies()) {
+                    final ServiceControllerImpl<?> dependencyController = dependency.undemand(transaction, taskFactory);
+                    if (dependencyController != null && dependencyController.removeUpDemand(transaction, taskFactory)) {
+                        undemandedServices.add(dependencyController);
+                        if (dependencyController.undemandDependencies()) {
+                            pendingServices.add(dependencyController);
+                        }
+                    }
+                }
+            }
+            for (ServiceControllerImpl<?> undemandedService: undemandedServices) {
+                undemandedService.transition(transaction, taskFactory);
             }
         } finally {
             context.complete();
@@ -0,0 +1,401 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.txn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.transaction.xa.Xid;
+
+import org.jboss.msc.txn.TransactionXAResourceManager.XidKey;
+
+/**
+ * An append-only journal of XA transaction decisions, backing the recovery of a {@link TransactionXAResourceManager}.
+ * <p>
+ * The journal is a memory-mapped file of records, each one holding a decision (prepared, committed, rolled back or
+ * forgotten) and the XID it applies to. Prepare decisions are made durable before the prepare vote is returned, by a
+ * group commit: concurrent prepares are synced by a single {@code force} of the mapped file. Completion decisions are
+ * not synced on their own, as losing them only makes the transaction manager complete the transaction again. When the
+ * journal is full, it is compacted, keeping only the records of transactions that are still prepared.
+ */
+final class XAJournal implements Closeable {
+
+    private static final int MAGIC = 0x4d534358;
+    private static final int HEADER_SIZE = 4;
+    private static final int INITIAL_SIZE = 1 << 20;
+
+    private static final byte PREPARED = 1;
+    private static final byte COMMITTED = 2;
+    private static final byte ROLLED_BACK = 3;
+    private static final byte FORGOTTEN = 4;
+
+    private final File file;
+    // the minimum size of the mapped file
+    private final int initialSize;
+    // transactions prepared and not completed yet, in journal order
+    private final Map<XidKey, Xid> preparedTransactions = new LinkedHashMap<XidKey, Xid>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    // the number of bytes appended since the journal was opened, and the number of those that are durable
+    private long appended;
+    private long synced;
+    private boolean syncing;
+    // the number of times the journal was forced to disk
+    private long forces;
+
+    private XAJournal(final File file, final int initialSize) {
+        this.file = file;
+        this.initialSize = initialSize;
+    }
+
+    /**
+     * Opens a journal, recovering the transactions that were prepared and not completed when it was last closed.
+     *
+     * @param file the journal file, created if it does not exist
+     * @return the journal
+     * @throws IOException if the journal cannot be read or written
+     */
+    static XAJournal open(final File file) throws IOException {
+        return open(file, INITIAL_SIZE);
+    }
+
+    /**
+     * Opens a journal whose mapped file is at least {@code initialSize} bytes long.
+     *
+     * @param file the journal file, created if it does not exist
+     * @param initialSize the minimum size of the mapped file, also its size after compacting a journal with few
+     *                    prepared transactions
+     * @return the journal
+     * @throws IOException if the journal cannot be read or written
+     */
+    static XAJournal open(final File file, final int initialSize) throws IOException {
+        final XAJournal journal = new XAJournal(file, initialSize);
+        synchronized (journal) {
+            if (file.exists()) {
+                journal.recover();
+            }
+            // drop the records of completed transactions right away
+            journal.compact(0);
+        }
+        return journal;
+    }
+
+    /**
+     * Returns the transactions that were prepared and not completed yet.
+     */
+    synchronized Collection<Xid> getPreparedTransactions() {
+        return Arrays.asList(preparedTransactions.values().toArray(new Xid[preparedTransactions.size()]));
+    }
+
+    /**
+     * Indicates if {@code xid} was prepared and not completed yet.
+     */
+    synchronized boolean isPrepared(final Xid xid) {
+        return preparedTransactions.containsKey(new XidKey(xid));
+    }
+
+    /**
+     * Durably records that {@code xid} is prepared. Returns only once the record is synced to disk.
+     */
+    void prepared(final Xid xid) throws IOException {
+        sync(append(PREPARED, xid));
+    }
+
+    /**
+     * Records that {@code xid} is committed.
+     */
+    void committed(final Xid xid) throws IOException {
+        append(COMMITTED, xid);
+    }
+
+    /**
+     * Records that {@code xid} is rolled back.
+     */
+    void rolledBack(final Xid xid) throws IOException {
+        append(ROLLED_BACK, xid);
+    }
+
+    /**
+     * Records that {@code xid} is forgotten.
+     */
+    void forgotten(final Xid xid) throws IOException {
+        append(FORGOTTEN, xid);
+    }
+
+    /**
+     * Returns the number of times the journal was forced to disk since it was opened. Concurrent prepares share a
+     * single force.
+     */
+    synchronized long getForceCount() {
+        return forces;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @return the number of bytes that must be synced for the record to be durable
+     */
+    private synchronized long append(final byte type, final Xid xid) throws IOException {
+        if (channel == null) {
+            throw new IOException("Journal " + file + " is closed");
+        }
+        final XidKey key = new XidKey(xid);
+        if (type == PREPARED) {
+            preparedTransactions.put(key, xid);
+        } else if (preparedTransactions.remove(key) == null) {
+            // nothing to complete, the transaction was never prepared
+            return appended;
+        }
+        final byte[] record = encode(type, xid);
+        if (buffer.remaining() < record.length) {
+            compact(record.length);
+        }
+        buffer.put(record);
+        return appended += record.length;
+    }
+
+    /**
+     * Waits until the first {@code position} appended bytes are durable. A single thread at a time forces the journal,
+     * syncing the records appended by all threads so far.
+     */
+    private void sync(final long position) throws IOException {
+        final MappedByteBuffer toForce;
+        final long target;
+        synchronized (this) {
+            boolean interrupted = false;
+            try {
+                while (synced < position && syncing) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (synced >= position) {
+                return;
+            }
+            if (buffer == null) {
+                throw new IOException("Journal " + file + " is closed");
+            }
+            syncing = true;
+            toForce = buffer;
+            target = appended;
+        }
+        boolean forced = false;
+        try {
+            toForce.force();
+            forced = true;
+        } finally {
+            synchronized (this) {
+                syncing = false;
+                if (forced) {
+                    forces ++;
+                    if (target > synced) {
+                        synced = target;
+                    }
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with the records of the prepared transactions only, leaving room for at least
+     * {@code extraSpace} bytes. The rewritten journal is synced before replacing the current one.
+     */
+    private void compact(final int extraSpace) throws IOException {
+        assert Thread.holdsLock(this);
+        final ByteBuffer live = ByteBuffer.allocate(liveSize());
+        for (Xid xid: preparedTransactions.values()) {
+            live.put(encode(PREPARED, xid));
+        }
+        live.flip();
+        int size = initialSize;
+        while (size < (HEADER_SIZE + live.remaining() + extraSpace) * 2) {
+            size <<= 1;
+        }
+        final File compacted = new File(file.getPath() + ".compact");
+        final FileChannel compactedChannel = new RandomAccessFile(compacted, "rw").getChannel();
+        boolean ok = false;
+        try {
+            final MappedByteBuffer compactedBuffer = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            compactedBuffer.putInt(MAGIC);
+            compactedBuffer.put(live);
+            compactedBuffer.force();
+            if (channel != null) {
+                channel.close();
+            }
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = compactedChannel;
+            buffer = compactedBuffer;
+            synced = appended;
+            ok = true;
+        } finally {
+            if (!ok) {
+                compactedChannel.close();
+                channel = null;
+                buffer = null;
+            }
+        }
+    }
+
+    private int liveSize() {
+        int size = 0;
+        for (Xid xid: preparedTransactions.values()) {
+            size += recordSize(xid);
+        }
+        return size;
+    }
+
+    /**
+     * Reads the journal, rebuilding the prepared transactions. Reading stops at the first incomplete or corrupted
+     * record, i.e., at the end of what had been written when the journal was last closed.
+     */
+    private void recover() throws IOException {
+        assert Thread.holdsLock(this);
+        final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                return;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("File " + file + " is not a transaction journal");
+            }
+            final CRC32 crc = new CRC32();
+            try {
+                while (buffer.remaining() >= 4) {
+                    final int length = buffer.getInt();
+                    if (length <= 4 || length > buffer.remaining()) {
+                        break;
+                    }
+                    final byte[] body = new byte[length - 4];
+                    buffer.get(body);
+                    crc.reset();
+                    crc.update(body);
+                    if ((int) crc.getValue() != buffer.getInt()) {
+                        break;
+                    }
+                    final ByteBuffer record = ByteBuffer.wrap(body);
+                    final byte type = record.get();
+                    final Xid xid = decode(record);
+                    if (type == PREPARED) {
+                        preparedTransactions.put(new XidKey(xid), xid);
+                    } else {
+                        preparedTransactions.remove(new XidKey(xid));
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                // incomplete record, the end of the journal
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static int recordSize(final Xid xid) {
+        // length, type, format id, global transaction id, branch qualifier, checksum
+        return 4 + 1 + 4 + 2 + xid.getGlobalTransactionId().length + 2 + xid.getBranchQualifier().length + 4;
+    }
+
+    private static byte[] encode(final byte type, final Xid xid) {
+        final byte[] globalTransactionId = xid.getGlobalTransactionId();
+        final byte[] branchQualifier = xid.getBranchQualifier();
+        final int size = recordSize(xid);
+        final ByteBuffer record = ByteBuffer.allocate(size);
+        record.putInt(size - 4);
+        record.put(type);
+        record.putInt(xid.getFormatId());
+        record.putShort((short) globalTransactionId.length);
+        record.put(globalTransactionId);
+        record.putShort((short) branchQualifier.length);
+        record.put(branchQualifier);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, size - 8);
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    private static Xid decode(final ByteBuffer record) {
+        final int formatId = record.getInt();
+        final byte[] globalTransactionId = new byte[record.getShort()];
+        record.get(globalTransactionId);
+        final byte[] branchQualifier = new byte[record.getShort()];
+        record.get(branchQualifier);
+        return new RecoveredXid(formatId, globalTransactionId, branchQualifier);
+    }
+
+    /**
+     * A XID read from the journal.
+     */
+    private static final class RecoveredXid implements Xid {
+        private final int formatId;
+        private final byte[] globalTransactionId;
+        private final byte[] branchQualifier;
+
+        RecoveredXid(final int formatId, final byte[] globalTransactionId, final byte[] branchQualifier) {
+            this.formatId = formatId;
+            this.globalTransactionId = globalTransactionId;
+            this.branchQualifier = branchQualifier;
+        }
+
+        @Override
+        public int getFormatId() {
+            return formatId;
+        }
+
+        @Override
+        public byte[] getGlobalTransactionId() {
+            return globalTransactionId.clone();
+        }
+
+        @Override
+        public byte[] getBranchQualifier() {
+            return branchQualifier.clone();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.test.services;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.jboss.msc.service.ServiceContainer;
+import org.jboss.msc.service.ServiceContainerFactory;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.ServiceRegistry;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.TestService;
+import org.jboss.msc.txn.BasicTransaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Boot cache test case.
+ */
+public class BootCacheTestCase extends AbstractServiceTest {
+
+    private static final ServiceName firstSN = ServiceName.of("first");
+    private static final ServiceName secondSN = ServiceName.of("second");
+    private static final ServiceName thirdSN = ServiceName.of("third", "with", "\"quoted\" segments");
+
+    private File bootCacheFile;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        bootCacheFile = File.createTempFile("msc-boot", ".cache");
+        assertTrue(bootCacheFile.delete());
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        bootCacheFile.delete();
+        super.tearDown();
+    }
+
+    private void bootAndShutdown() throws Exception {
+        final ServiceContainer container = ServiceContainerFactory.getInstance().newServiceContainer(bootCacheFile);
+        final ServiceRegistry registry = container.newRegistry();
+        final TestService thirdService = addService(registry, thirdSN);
+        final TestService secondService = addService(registry, secondSN, thirdSN);
+        final TestService firstService = addService(registry, firstSN, secondSN);
+        assertNotNull(firstService);
+        assertNotNull(secondService);
+        assertNotNull(thirdService);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+        assertTrue(thirdService.isUp());
+        // a cached graph never prevents cycles from being detected
+        assertNull(addService(registry, ServiceName.of("fourth"), firstSN, ServiceName.of("fourth")));
+        shutdownContainer(container);
+        assertFalse(firstService.isUp());
+        assertFalse(secondService.isUp());
+        assertFalse(thirdService.isUp());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>container with no boot cache created, services installed and container shut down</LI>
+     *   <LI>boot cache file is written</LI>
+     *   <LI>new container created with the boot cache, same services installed and container shut down</LI>
+     * </UL>
+     */
+    @Test
+    public void warmBoot() throws Exception {
+        bootAndShutdown();
+        assertTrue(bootCacheFile.isFile());
+        final long length = bootCacheFile.length();
+        assertTrue(length > 0);
+        bootAndShutdown();
+        assertTrue(length == bootCacheFile.length());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>container created with a corrupted boot cache file</LI>
+     *   <LI>boot cache is ignored, services are installed and the boot cache file is overwritten</LI>
+     * </UL>
+     */
+    @Test
+    public void corruptedBootCache() throws Exception {
+        final FileOutputStream out = new FileOutputStream(bootCacheFile);
+        try {
+            out.write(new byte[] {'M', 'S', 'C', 'B', 0, 0, 0, 1, 0, 0, 0, 5, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        } finally {
+            out.close();
+        }
+        bootAndShutdown();
+        bootAndShutdown();
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>container with no boot cache created, services installed and container shut down</LI>
+     *   <LI>new container created with the boot cache, services installed with reversed dependencies</LI>
+     *   <LI>stale boot cache is dropped, services start and the boot cache file is overwritten</LI>
+     * </UL>
+     */
+    @Test
+    public void staleBootCache() throws Exception {
+        bootAndShutdown();
+        final ServiceContainer container = ServiceContainerFactory.getInstance().newServiceContainer(bootCacheFile);
+        final ServiceRegistry registry = container.newRegistry();
+        final TestService firstService = addService(registry, firstSN);
+        final TestService secondService = addService(registry, secondSN, firstSN);
+        final TestService thirdService = addService(registry, thirdSN, secondSN);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+        assertTrue(thirdService.isUp());
+        assertNull(addService(registry, ServiceName.of("fourth"), thirdSN, ServiceName.of("fourth")));
+        shutdownContainer(container);
+        assertFalse(thirdService.isUp());
+        bootAndShutdown();
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>container with no boot cache created and services installed</LI>
+     *   <LI>container shut down by a transaction that is aborted: the boot cache file is not written</LI>
+     *   <LI>container shut down again: the boot cache file is written</LI>
+     * </UL>
+     */
+    @Test
+    public void abortedShutdown() throws Exception {
+        final ServiceContainer container = ServiceContainerFactory.getInstance().newServiceContainer(bootCacheFile);
+        final ServiceRegistry registry = container.newRegistry();
+        addService(registry, thirdSN);
+        addService(registry, secondSN, thirdSN);
+        final BasicTransaction txn = newTransaction();
+        container.shutdown(txn);
+        prepare(txn);
+        abort(txn);
+        assertFalse(bootCacheFile.exists());
+        shutdownContainer(container);
+        assertTrue(bootCacheFile.isFile());
+    }
+}
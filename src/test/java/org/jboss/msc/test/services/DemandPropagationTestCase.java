@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.test.services;
+
+import static org.jboss.msc.service.ServiceMode.ACTIVE;
+import static org.jboss.msc.service.ServiceMode.LAZY;
+import static org.jboss.msc.service.ServiceMode.ON_DEMAND;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.TestService;
+import org.junit.Test;
+
+/**
+ * Demand propagation test case.
+ */
+public class DemandPropagationTestCase extends AbstractServiceTest {
+
+    private static final ServiceName firstSN = ServiceName.of("first");
+    private static final ServiceName secondSN = ServiceName.of("second");
+    private static final ServiceName thirdSN = ServiceName.of("third");
+    private static final ServiceName fourthSN = ServiceName.of("fourth");
+    private static final ServiceName fifthSN = ServiceName.of("fifth");
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ON_DEMAND mode), no dependencies</LI>
+     *   <LI><B>second service</B> (LAZY mode), depends on <B>first service</B></LI>
+     *   <LI><B>third service</B> (ON_DEMAND mode), depends on <B>second service</B></LI>
+     *   <LI><B>fourth service</B> (ON_DEMAND mode), depends on <B>third service</B> and <B>first service</B></LI>
+     *   <LI><B>fifth service</B> (ACTIVE mode), depends on <B>fourth service</B>, demands the whole chain</LI>
+     *   <LI>removal of <B>fifth service</B> undemands the whole chain</LI>
+     * </UL>
+     */
+    @Test
+    public void demandChain() throws Exception {
+        final TestService firstService = addService(firstSN, ON_DEMAND);
+        final TestService secondService = addService(secondSN, LAZY, firstSN);
+        final TestService thirdService = addService(thirdSN, ON_DEMAND, secondSN);
+        final TestService fourthService = addService(fourthSN, ON_DEMAND, thirdSN, firstSN);
+        assertNotNull(firstService);
+        assertNotNull(secondService);
+        assertNotNull(thirdService);
+        assertNotNull(fourthService);
+        assertFalse(firstService.isUp());
+        assertFalse(secondService.isUp());
+        assertFalse(thirdService.isUp());
+        assertFalse(fourthService.isUp());
+
+        final TestService fifthService = addService(fifthSN, ACTIVE, fourthSN);
+        assertNotNull(fifthService);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+        assertTrue(thirdService.isUp());
+        assertTrue(fourthService.isUp());
+        assertTrue(fifthService.isUp());
+
+        assertTrue(removeService(fifthSN, fifthService));
+        assertFalse(fifthService.isUp());
+        assertFalse(fourthService.isUp());
+        assertFalse(thirdService.isUp());
+        // LAZY service stops as well, because its ON_DEMAND dependency is no longer demanded
+        assertFalse(secondService.isUp());
+        assertFalse(firstService.isUp());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ON_DEMAND mode), no dependencies</LI>
+     *   <LI><B>second service</B> (ON_DEMAND mode), depends on <B>first service</B></LI>
+     *   <LI><B>third service</B> (ACTIVE mode), depends on <B>second service</B>, demands the chain</LI>
+     *   <LI>removal of <B>third service</B> undemands the chain, once</LI>
+     *   <LI><B>fourth service</B> (ACTIVE mode), depends on <B>second service</B>, demands the chain again</LI>
+     * </UL>
+     */
+    @Test
+    public void demandChainAfterDependentRemoval() throws Exception {
+        final TestService firstService = addService(firstSN, ON_DEMAND);
+        final TestService secondService = addService(secondSN, ON_DEMAND, firstSN);
+        final TestService thirdService = addService(thirdSN, ACTIVE, secondSN);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+        assertTrue(thirdService.isUp());
+
+        assertTrue(removeService(thirdSN, thirdService));
+        assertFalse(secondService.isUp());
+        assertFalse(firstService.isUp());
+
+        final TestService fourthService = addService(fourthSN, ACTIVE, secondSN);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+        assertTrue(fourthService.isUp());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ON_DEMAND mode), no dependencies</LI>
+     *   <LI><B>second service</B> (ACTIVE mode), depends on <B>first service</B></LI>
+     *   <LI>disabling the registry stops both services, and <B>second service</B> no longer demands
+     *   <B>first service</B></LI>
+     *   <LI>enabling the registry demands and starts both services again</LI>
+     * </UL>
+     */
+    @Test
+    public void demandAfterRegistryReenabled() throws Exception {
+        final TestService firstService = addService(firstSN, ON_DEMAND);
+        final TestService secondService = addService(secondSN, ACTIVE, firstSN);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+
+        disableRegistry();
+        assertFalse(firstService.isUp());
+        assertFalse(secondService.isUp());
+
+        enableRegistry();
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+    }
+}
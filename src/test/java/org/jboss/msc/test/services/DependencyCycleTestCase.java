@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.test.services;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.msc.service.DependencyFlag;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.TestService;
+import org.jboss.msc.test.utils.TestService.DependencyInfo;
+import org.jboss.msc.test.utils.TestServiceBuilder;
+import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.Problem;
+import org.junit.Test;
+
+/**
+ * Dependency cycle detection test case.
+ */
+public class DependencyCycleTestCase extends AbstractServiceTest {
+
+    private static final ServiceName firstSN = ServiceName.of("first");
+    private static final ServiceName secondSN = ServiceName.of("second");
+    private static final ServiceName thirdSN = ServiceName.of("third");
+    private static final ServiceName fourthSN = ServiceName.of("fourth");
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B>, <B>second service</B> and <B>third service</B> installed in a single transaction</LI>
+     *   <LI><B>first service</B> depends on <B>second service</B>, which depends on <B>third service</B>, which
+     *   depends on <B>first service</B></LI>
+     *   <LI>transaction cannot be committed</LI>
+     * </UL>
+     */
+    @Test
+    public void cycleInSingleTransaction() throws Exception {
+        final BasicTransaction txn = newTransaction();
+        new TestServiceBuilder(txn, firstSN, secondSN).install();
+        new TestServiceBuilder(txn, secondSN, thirdSN).install();
+        new TestServiceBuilder(txn, thirdSN, firstSN).install();
+        prepare(txn);
+        assertFalse(canCommit(txn));
+        assertFalse(txnController.getProblemReport(txn).getProblems().isEmpty());
+        abort(txn);
+        assertNull(serviceRegistry.getService(firstSN));
+        assertNull(serviceRegistry.getService(secondSN));
+        assertNull(serviceRegistry.getService(thirdSN));
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> installed, with an unrequired dependency on missing <B>second service</B></LI>
+     *   <LI><B>second service</B> installed, with an unrequired dependency on missing <B>third service</B></LI>
+     *   <LI>attempt to install <B>third service</B>, with an unrequired dependency on <B>first service</B>, fails</LI>
+     *   <LI><B>third service</B> installed with no dependencies</LI>
+     * </UL>
+     */
+    @Test
+    public void cycleAcrossTransactions() throws Exception {
+        final TestService firstService = addService(firstSN, null, unrequiredFlag, secondSN);
+        assertNotNull(firstService);
+        final TestService secondService = addService(secondSN, null, unrequiredFlag, thirdSN);
+        assertNotNull(secondService);
+        assertNull(addService(thirdSN, null, unrequiredFlag, firstSN));
+        assertNull(serviceRegistry.getService(thirdSN));
+        final TestService thirdService = addService(thirdSN);
+        assertNotNull(thirdService);
+        assertTrue(thirdService.isUp());
+        assertTrue(secondService.isUp());
+        assertTrue(firstService.isUp());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>services installed in the reverse order of their dependencies, forcing the dependency graph to be
+     *   reordered at each installation</LI>
+     *   <LI>attempt to install <B>fourth service</B> depending on all the other services fails</LI>
+     *   <LI><B>fourth service</B> installed with no dependencies</LI>
+     * </UL>
+     */
+    @Test
+    public void reverseInstallationOrder() throws Exception {
+        final TestService firstService = addService(firstSN, null, unrequiredFlag, secondSN);
+        final TestService secondService = addService(secondSN, null, unrequiredFlag, thirdSN);
+        final TestService thirdService = addService(thirdSN, null, unrequiredFlag, fourthSN);
+        final TestService fourthService = addService(fourthSN, null, unrequiredFlag, firstSN, secondSN, thirdSN);
+        assertNull(fourthService);
+        final TestService otherFourthService = addService(fourthSN);
+        assertNotNull(firstService);
+        assertNotNull(secondService);
+        assertNotNull(thirdService);
+        assertNotNull(otherFourthService);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+        assertTrue(thirdService.isUp());
+        assertTrue(otherFourthService.isUp());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> and <B>second service</B> depending on each other installed in a transaction that
+     *   tolerates the cycle problem, and committed</LI>
+     *   <LI><B>third service</B>, depending on <B>first service</B>, installed</LI>
+     *   <LI><B>first service</B> removed</LI>
+     *   <LI>attempt to install <B>first service</B> depending on <B>third service</B> fails</LI>
+     *   <LI><B>first service</B> installed with no dependencies, <B>second service</B> and <B>third service</B>
+     *   start</LI>
+     * </UL>
+     */
+    @Test
+    public void committedCycle() throws Exception {
+        final BasicTransaction txn = txnController.create(defaultExecutor, Problem.Severity.ERROR);
+        new TestServiceBuilder(txn, firstSN, new DependencyInfo<Void>(secondSN, DependencyFlag.UNREQUIRED)).install();
+        final TestServiceBuilder secondServiceBuilder = new TestServiceBuilder(txn, secondSN,
+                new DependencyInfo<Void>(firstSN, DependencyFlag.UNREQUIRED));
+        secondServiceBuilder.install();
+        final TestService secondService = secondServiceBuilder.getService();
+        prepare(txn);
+        assertTrue(canCommit(txn));
+        assertFalse(txnController.getProblemReport(txn).getProblems().isEmpty());
+        commit(txn);
+        assertNotNull(serviceRegistry.getService(firstSN));
+        assertFalse(secondService.isUp());
+        final TestService thirdService = addService(thirdSN, null, unrequiredFlag, firstSN);
+        assertNotNull(thirdService);
+        assertFalse(thirdService.isUp());
+        assertTrue(removeService(firstSN, getService(firstSN)));
+        // the edge left out of the committed cycle is gone, cycles through its registrations are still found
+        assertNull(addService(firstSN, null, unrequiredFlag, thirdSN));
+        final TestService firstService = addService(firstSN);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+        assertTrue(thirdService.isUp());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.services;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.TestService;
+import org.jboss.msc.txn.EventRecorder;
+import org.jboss.msc.txn.TaskController;
+import org.jboss.msc.txn.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Event recorder test case.
+ */
+public class EventRecorderTestCase extends AbstractServiceTest {
+
+    private static final ServiceName fooSN = ServiceName.of("foo");
+    private final List<String> events = new CopyOnWriteArrayList<String>();
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        EventRecorder.install(new EventRecorder() {
+            @Override
+            public void transactionCreated(final Transaction transaction) {
+                events.add("created");
+            }
+
+            @Override
+            public void transactionPrepared(final Transaction transaction, final int taskCount, final long nanos) {
+                events.add("prepared");
+            }
+
+            @Override
+            public void transactionCommitted(final Transaction transaction, final int taskCount, final long nanos) {
+                events.add("committed");
+            }
+
+            @Override
+            public void taskPhaseExecuted(final TaskController<?> task, final TaskPhase phase, final Object callback,
+                    final ClassLoader classLoader, final long nanos) {
+                events.add(phase.name());
+            }
+
+            @Override
+            public void serviceStarted(final ServiceName serviceName, final long waitNanos, final long nanos) {
+                events.add("started " + serviceName);
+            }
+
+            @Override
+            public void serviceStopped(final ServiceName serviceName, final long waitNanos, final long nanos) {
+                events.add("stopped " + serviceName);
+            }
+        });
+        super.setUp();
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            EventRecorder.install(null);
+        }
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>foo</B> service (ACTIVE mode)</LI>
+     *   <LI>disable <B>foo</B></LI>
+     *   <LI>the transactions, their task phases and the start and stop of <B>foo</B> are recorded</LI>
+     * </UL>
+     */
+    @Test
+    public void recordEvents() throws Exception {
+        addService(fooSN);
+        assertTrue(events.contains("created"));
+        assertTrue(events.contains("prepared"));
+        assertTrue(events.contains("committed"));
+        assertTrue(events.contains("EXECUTE"));
+        assertTrue(events.contains("COMMIT"));
+        assertTrue(events.contains("started foo"));
+        disableService(fooSN);
+        assertTrue(events.contains("stopped foo"));
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>install a recorder that fails on every event</LI>
+     *   <LI><B>foo</B> service (ACTIVE mode) is installed and disabled: the failures are logged, and do not affect the
+     *   transactions nor the service</LI>
+     * </UL>
+     */
+    @Test
+    public void failingRecorder() throws Exception {
+        EventRecorder.install(new EventRecorder() {
+            @Override
+            public void transactionCreated(final Transaction transaction) {
+                throw new RuntimeException("created");
+            }
+
+            @Override
+            public void transactionPrepared(final Transaction transaction, final int taskCount, final long nanos) {
+                throw new RuntimeException("prepared");
+            }
+
+            @Override
+            public void transactionCommitted(final Transaction transaction, final int taskCount, final long nanos) {
+                throw new RuntimeException("committed");
+            }
+
+            @Override
+            public void taskPhaseExecuted(final TaskController<?> task, final TaskPhase phase, final Object callback,
+                    final ClassLoader classLoader, final long nanos) {
+                throw new RuntimeException(phase.name());
+            }
+
+            @Override
+            public void serviceStarted(final ServiceName serviceName, final long waitNanos, final long nanos) {
+                throw new RuntimeException("started");
+            }
+
+            @Override
+            public void serviceStopped(final ServiceName serviceName, final long waitNanos, final long nanos) {
+                throw new RuntimeException("stopped");
+            }
+        });
+        final TestService foo = addService(fooSN);
+        assertTrue(foo.isUp());
+        disableService(fooSN);
+        assertFalse(foo.isUp());
+    }
+}
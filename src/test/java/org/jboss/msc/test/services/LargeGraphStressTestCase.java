@@ -0,0 +1,320 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceMode;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.ServiceGraph;
+import org.jboss.msc.test.utils.TestService;
+import org.jboss.msc.test.utils.TestServiceBuilder;
+import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.ServiceController;
+import org.junit.Test;
+
+/**
+ * Stress and soak test on a large random service graph: boot, concurrent deploy/undeploy churn, registry
+ * disable/enable and shutdown, reporting throughput, boot time, peak heap and executor utilization.
+ * <p>
+ * The default graph is small enough for the regular build. Production scale is reproduced by setting system
+ * properties, for instance {@code mvn test -Dtest=LargeGraphStressTestCase -Dmsc.stress.services=100000}:
+ * <UL>
+ *   <LI>{@code msc.stress.services}: the number of services in the graph (default 2000)</LI>
+ *   <LI>{@code msc.stress.dependencies}: the mean number of dependencies per service (default 2)</LI>
+ *   <LI>{@code msc.stress.failureRate}: the fraction of services that fail to start (default 0.01)</LI>
+ *   <LI>{@code msc.stress.childRate}: the fraction of up services that get a child service (default 0.05)</LI>
+ *   <LI>{@code msc.stress.churnThreads}: the number of concurrent deployers (default 4)</LI>
+ *   <LI>{@code msc.stress.churnRounds}: the number of deploy/undeploy rounds per deployer (default 10)</LI>
+ *   <LI>{@code msc.stress.seed}: the graph random seed (default 1)</LI>
+ * </UL>
+ */
+public class LargeGraphStressTestCase extends AbstractServiceTest {
+
+    private static final ServiceName stressSN = ServiceName.of("stress");
+    private static final int serviceCount = Integer.getInteger("msc.stress.services", 2000);
+    private static final double meanDependencyCount = Double.parseDouble(System.getProperty("msc.stress.dependencies", "2"));
+    private static final double failureRate = Double.parseDouble(System.getProperty("msc.stress.failureRate", "0.01"));
+    private static final double childRate = Double.parseDouble(System.getProperty("msc.stress.childRate", "0.05"));
+    private static final int churnThreads = Integer.getInteger("msc.stress.churnThreads", 4);
+    private static final int churnRounds = Integer.getInteger("msc.stress.churnRounds", 10);
+    private static final long seed = Long.getLong("msc.stress.seed", 1L);
+    private static final int deploymentSize = 10;
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>boot a random graph in a single transaction: the active services and the services they demand start,
+     *   unless they or one of their dependencies fail to start</LI>
+     *   <LI>install child services under some of the up services</LI>
+     *   <LI>concurrently deploy and undeploy small deployments depending on the graph</LI>
+     *   <LI>disable the services that failed to start, so they are not started again</LI>
+     *   <LI>disable the registry: every service stops and the child services are removed</LI>
+     *   <LI>enable the registry: the graph is up again, except for services no longer demanded by the disabled
+     *   services</LI>
+     *   <LI>shut down the container</LI>
+     * </UL>
+     */
+    @Test
+    public void largeGraph() throws Exception {
+        final Report report = new Report();
+        report.start();
+        try {
+            final ServiceGraph graph = new ServiceGraph(stressSN, serviceCount, meanDependencyCount, failureRate, new Random(seed));
+            report.graph(graph);
+
+            // boot
+            long start = System.nanoTime();
+            final TestService[] services = boot(graph);
+            report.phase("boot", start, graph.getServiceCount());
+            final boolean[] expectedUp = graph.getExpectedUp();
+            assertUp(graph, services, expectedUp);
+
+            // child services
+            start = System.nanoTime();
+            final int childCount = installChildren(graph, services, expectedUp);
+            report.phase("children", start, childCount);
+
+            // churn
+            start = System.nanoTime();
+            final int deployments = churn(graph, expectedUp);
+            report.phase("churn", start, deployments * deploymentSize * 2);
+            assertUp(graph, services, expectedUp);
+
+            // disable the services that failed, so they are not started again along with the registry
+            disableFailedServices(graph);
+
+            // registry disable and enable
+            start = System.nanoTime();
+            disableRegistry();
+            report.phase("disable", start, graph.getServiceCount() + childCount);
+            for (TestService service : services) {
+                assertFalse(service.isUp());
+            }
+            assertEquals(0, serviceRegistry.countServices(stressSN.append("child")));
+            start = System.nanoTime();
+            enableRegistry();
+            report.phase("enable", start, graph.getServiceCount());
+            assertUp(graph, services, graph.getExpectedUp(true));
+
+            // shutdown
+            start = System.nanoTime();
+            shutdownContainer();
+            report.phase("shutdown", start, graph.getServiceCount());
+        } finally {
+            report.stop();
+        }
+    }
+
+    private TestService[] boot(final ServiceGraph graph) throws Exception {
+        final TestService[] services = new TestService[graph.getServiceCount()];
+        final BasicTransaction txn = newTransaction();
+        for (int i = 0; i < services.length; i++) {
+            final TestServiceBuilder builder = new TestServiceBuilder(txn, graph.getName(i), graph.failsToStart(i), graph.getMode(i), graph.getDependencyNames(i));
+            builder.install();
+            services[i] = builder.getService();
+        }
+        prepare(txn);
+        commit(txn);
+        return services;
+    }
+
+    private void assertUp(final ServiceGraph graph, final TestService[] services, final boolean[] expectedUp) {
+        for (int i = 0; i < graph.getServiceCount(); i++) {
+            assertEquals(graph.getName(i).toString(), expectedUp[i], services[i].isUp());
+        }
+    }
+
+    private void disableFailedServices(final ServiceGraph graph) throws Exception {
+        final BasicTransaction txn = newTransaction();
+        for (int i = 0; i < graph.getServiceCount(); i++) {
+            if (graph.failsToStart(i)) {
+                serviceRegistry.getRequiredService(graph.getName(i)).disable(txn);
+            }
+        }
+        prepare(txn);
+        commit(txn);
+    }
+
+    private int installChildren(final ServiceGraph graph, final TestService[] services, final boolean[] expectedUp) throws Exception {
+        final Random random = new Random(seed + 1);
+        final BasicTransaction txn = newTransaction();
+        final List<TestService> children = new ArrayList<TestService>();
+        for (int i = 0; i < graph.getServiceCount(); i++) {
+            if (expectedUp[i] && random.nextDouble() < childRate) {
+                final ServiceName childName = stressSN.append("child", Integer.toString(i));
+                final ServiceBuilder<Void> serviceBuilder = services[i].getServiceContext().addService(serviceRegistry, childName, txn);
+                final TestService child = new TestService(childName, serviceBuilder, false);
+                serviceBuilder.setService(child);
+                serviceBuilder.install();
+                children.add(child);
+            }
+        }
+        prepare(txn);
+        commit(txn);
+        for (TestService child : children) {
+            assertTrue(child.isUp());
+        }
+        assertEquals(children.size(), serviceRegistry.countServices(stressSN.append("child")));
+        return children.size();
+    }
+
+    /**
+     * Deploys and undeploys small deployments from several threads. The services of a deployment all depend on the
+     * same up service of the graph, so concurrent deployments contend for locks, but cannot deadlock.
+     *
+     * @return the number of deployments installed and removed
+     */
+    private int churn(final ServiceGraph graph, final boolean[] expectedUp) throws Exception {
+        final List<Integer> anchors = new ArrayList<Integer>();
+        for (int i = 0; i < graph.getServiceCount(); i++) {
+            if (expectedUp[i]) {
+                anchors.add(i);
+            }
+        }
+        final AtomicInteger deployments = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(churnThreads);
+        for (int t = 0; t < churnThreads; t++) {
+            final int deployer = t;
+            new Thread("churn-" + t) {
+                @Override
+                public void run() {
+                    try {
+                        final Random random = new Random(seed + 2 + deployer);
+                        for (int round = 0; round < churnRounds && !anchors.isEmpty(); round++) {
+                            final ServiceName anchor = graph.getName(anchors.get(random.nextInt(anchors.size())));
+                            final ServiceName deploymentName = stressSN.append("deployment", deployer + "-" + round);
+                            deploy(deploymentName, anchor);
+                            undeploy(deploymentName);
+                            deployments.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(0, serviceRegistry.countServices(stressSN.append("deployment")));
+        return deployments.get();
+    }
+
+    private void deploy(final ServiceName deploymentName, final ServiceName anchor) throws Exception {
+        final BasicTransaction txn = newTransaction(defaultExecutor);
+        final TestService[] services = new TestService[deploymentSize];
+        for (int i = 0; i < deploymentSize; i++) {
+            final TestServiceBuilder builder = new TestServiceBuilder(txn, deploymentName.append("s" + i), false, ServiceMode.ACTIVE, anchor);
+            builder.install();
+            services[i] = builder.getService();
+        }
+        prepare(txn);
+        commit(txn);
+        for (TestService service : services) {
+            assertTrue(service.isUp());
+        }
+    }
+
+    private void undeploy(final ServiceName deploymentName) throws Exception {
+        final BasicTransaction txn = newTransaction(defaultExecutor);
+        serviceRegistry.removeServices(deploymentName, txn);
+        prepare(txn);
+        commit(txn);
+    }
+
+    /**
+     * Collects and prints the figures of a run: phase durations and throughput, peak heap and executor utilization.
+     */
+    private final class Report {
+        private final StringBuilder text = new StringBuilder();
+        private final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+        private volatile boolean sampling = true;
+        private long activeThreadSamples;
+        private long samples;
+        private Thread sampler;
+
+        void start() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    pool.resetPeakUsage();
+                    heapPools.add(pool);
+                }
+            }
+            sampler = new Thread("executor-sampler") {
+                @Override
+                public void run() {
+                    while (sampling) {
+                        activeThreadSamples += defaultExecutor.getActiveCount();
+                        samples++;
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            };
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+
+        void graph(final ServiceGraph graph) {
+            text.append(String.format("graph: %d services, %d dependencies, seed %d%n", graph.getServiceCount(), graph.getEdgeCount(), seed));
+        }
+
+        void phase(final String phase, final long startNanos, final int serviceCount) {
+            final long nanos = System.nanoTime() - startNanos;
+            final double seconds = nanos / 1e9;
+            text.append(String.format("%-9s %8d ms, %9.0f services/s%n", phase + ":", TimeUnit.NANOSECONDS.toMillis(nanos), serviceCount / Math.max(seconds, 1e-9)));
+        }
+
+        void stop() throws InterruptedException {
+            sampling = false;
+            sampler.join();
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : heapPools) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+            final int poolSize = defaultExecutor.getMaximumPoolSize();
+            text.append(String.format("peak heap: %d MB%n", peakHeap >> 20));
+            text.append(String.format("executor: %d tasks completed, %.1f%% utilization of %d threads%n", defaultExecutor.getCompletedTaskCount(),
+                    samples == 0 ? 0.0 : 100.0 * activeThreadSamples / samples / poolSize, poolSize));
+            System.out.print(text);
+        }
+    }
+}
@@ -18,10 +18,13 @@
 package org.jboss.msc.test.services;
 
 import static org.jboss.msc.service.DependencyFlag.UNREQUIRED;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import org.jboss.msc.service.ServiceBuilder;
 import org.jboss.msc.service.ServiceMode;
 import org.jboss.msc.service.ServiceName;
 import org.jboss.msc.service.ServiceNotFoundException;
@@ -334,4 +337,86 @@ public class RegistryTestCase extends AbstractServiceTest {
         prepare(transaction);
         commit(transaction);
     }
+
+    @Test
+    public void subtreeQueries() throws InterruptedException {
+        final ServiceName appName = ServiceName.of("app");
+        final ServiceName fooName = appName.append("foo");
+        final TestService fooService = addService(registry3, fooName);
+        final TestService fooXService = addService(registry3, fooName.append("x"));
+        final TestService fooYService = addService(registry3, fooName.append("y", "z"));
+        final TestService barService = addService(registry3, appName.append("bar"), new DependencyInfo<TestService>(fooName, UNREQUIRED));
+        assertTrue(fooService.isUp());
+        assertTrue(fooXService.isUp());
+        assertTrue(fooYService.isUp());
+        assertTrue(barService.isUp());
+
+        assertEquals(4, registry3.countServices(appName));
+        assertEquals(3, registry3.countServices(fooName));
+        assertEquals(1, registry3.countServices(fooName.append("y")));
+        assertEquals(0, registry3.countServices(fooName.append("w")));
+        assertEquals(0, registry1.countServices(appName));
+        assertEquals(1, registry1.countServices(ServiceName.of("a", "different")));
+        assertTrue(registry3.getServices(fooName).contains(registry3.getRequiredService(fooName.append("x"))));
+        assertFalse(registry3.getServices(fooName).contains(registry3.getRequiredService(appName.append("bar"))));
+    }
+
+    @Test
+    public void removeSubtree() throws InterruptedException {
+        final ServiceName appName = ServiceName.of("app");
+        final ServiceName fooName = appName.append("foo");
+        final TestService fooService = addService(registry3, fooName);
+        final TestService fooXService = addService(registry3, fooName.append("x"));
+        final TestService barService = addService(registry3, appName.append("bar"), new DependencyInfo<TestService>(fooName, UNREQUIRED));
+        assertTrue(barService.isUp());
+
+        final BasicTransaction transaction = newTransaction();
+        registry3.removeServices(fooName, transaction);
+        prepare(transaction);
+        commit(transaction);
+        assertFalse(fooService.isUp());
+        assertFalse(fooXService.isUp());
+        assertNull(registry3.getService(fooName));
+        assertNull(registry3.getService(fooName.append("x")));
+        assertEquals(0, registry3.countServices(fooName));
+        assertEquals(1, registry3.countServices(appName));
+        // services outside the subtree are not affected
+        assertTrue(serviceA.isUp());
+        assertTrue(serviceD.isUp());
+        assertTrue(serviceH.isUp());
+    }
+
+    @Test
+    public void aliasedSubtree() throws InterruptedException {
+        final ServiceName appName = ServiceName.of("app");
+        final ServiceName fooName = appName.append("foo");
+        final ServiceName otherName = ServiceName.of("other");
+        final TestService fooService = addService(registry3, fooName);
+        final BasicTransaction transaction = newTransaction();
+        final ServiceBuilder<Void> serviceBuilder = txnController.getServiceContext().addService(registry3, otherName, transaction);
+        final TestService otherService = new TestService(otherName, serviceBuilder, false);
+        serviceBuilder.setService(otherService);
+        serviceBuilder.addAliases(fooName.append("x"), fooName.append("y"), appName.append("z"));
+        serviceBuilder.install();
+        prepare(transaction);
+        commit(transaction);
+        assertTrue(otherService.isUp());
+
+        // aliased services are counted once
+        assertEquals(2, registry3.countServices(fooName));
+        assertEquals(2, registry3.countServices(appName));
+        assertEquals(1, registry3.countServices(fooName.append("y")));
+        assertEquals(registry3.getServices(fooName).size(), registry3.countServices(fooName));
+
+        // services only aliased under the subtree are not removed
+        final BasicTransaction removeTransaction = newTransaction();
+        registry3.removeServices(fooName, removeTransaction);
+        prepare(removeTransaction);
+        commit(removeTransaction);
+        assertFalse(fooService.isUp());
+        assertTrue(otherService.isUp());
+        assertNull(registry3.getService(fooName));
+        assertNotNull(registry3.getService(otherName));
+        assertEquals(1, registry3.countServices(fooName));
+    }
 }
@@ -0,0 +1,227 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.msc.service.Dependency;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.TestService;
+import org.jboss.msc.test.utils.TestService.DependencyInfo;
+import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.Listener;
+import org.jboss.msc.txn.ServiceController;
+import org.junit.Test;
+
+/**
+ * Service replacement test case.
+ */
+public class ReplaceServiceTestCase extends AbstractServiceTest {
+
+    private static final ServiceName firstSN = ServiceName.of("first");
+    private static final ServiceName secondSN = ServiceName.of("second");
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ACTIVE mode), value "blue"</LI>
+     *   <LI><B>second service</B> (ACTIVE mode), depends on <B>first service</B></LI>
+     *   <LI>replace <B>first service</B> by a service with value "green": <B>second service</B> is not restarted, and
+     *       sees the new value</LI>
+     * </UL>
+     */
+    @Test
+    public void replaceService() throws Exception {
+        final ValueService blue = addValueService("blue");
+        final TestService secondService = addService(serviceRegistry, secondSN, new DependencyInfo<String>(firstSN));
+        assertTrue(secondService.isUp());
+        final Dependency<?> dependency = secondService.getDependency(0);
+        assertEquals("blue", dependency.get());
+
+        final BasicTransaction txn = newTransaction();
+        final ValueService green = replaceValueService("green", txn);
+        prepare(txn);
+        commit(txn);
+
+        assertFalse(blue.isUp());
+        assertTrue(green.isUp());
+        assertTrue(secondService.isUp());
+        assertEquals(1, secondService.getStartCount());
+        assertEquals("green", dependency.get());
+        assertSame(green, serviceRegistry.getRequiredService(firstSN).getService());
+
+        // the replacement is a regular service from now on
+        assertTrue(removeService(secondSN, secondService));
+        assertTrue(removeService(firstSN, secondService));
+        assertFalse(green.isUp());
+        assertFalse(secondService.isUp());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ACTIVE mode), value "blue"</LI>
+     *   <LI><B>second service</B> (ACTIVE mode), depends on <B>first service</B></LI>
+     *   <LI>replace <B>first service</B> by a service with value "green" and rollback: "blue" is restored</LI>
+     * </UL>
+     */
+    @Test
+    public void revertReplacement() throws Exception {
+        final ValueService blue = addValueService("blue");
+        final TestService secondService = addService(serviceRegistry, secondSN, new DependencyInfo<String>(firstSN));
+        final Dependency<?> dependency = secondService.getDependency(0);
+
+        final BasicTransaction txn = newTransaction();
+        final ValueService green = replaceValueService("green", txn);
+        green.waitStart();
+        rollback(txn);
+
+        assertTrue(blue.isUp());
+        assertFalse(green.isUp());
+        assertTrue(secondService.isUp());
+        assertEquals(1, secondService.getStartCount());
+        assertEquals("blue", dependency.get());
+        assertSame(blue, serviceRegistry.getRequiredService(firstSN).getService());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ACTIVE mode), value "blue"</LI>
+     *   <LI>replace <B>first service</B> by a service that fails to start: "blue" is kept</LI>
+     * </UL>
+     */
+    @Test
+    public void failedReplacement() throws Exception {
+        final ValueService blue = addValueService("blue");
+
+        final BasicTransaction txn = newTransaction();
+        final ValueService green = replaceValueService(null, txn);
+        prepare(txn);
+        commit(txn);
+
+        assertTrue(blue.isUp());
+        assertFalse(green.isUp());
+        assertSame(blue, serviceRegistry.getRequiredService(firstSN).getService());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ACTIVE mode), value "blue"</LI>
+     *   <LI><B>second service</B> (ACTIVE mode), depends on <B>first service</B>, listens to dependency value changes
+     *   </LI>
+     *   <LI>replace <B>first service</B> by a service with value "green": the listener is notified once, and sees
+     *       "green"</LI>
+     * </UL>
+     */
+    @Test
+    public void dependencyChangeListener() throws Exception {
+        addValueService("blue");
+        final TestService secondService = addService(serviceRegistry, secondSN, new DependencyInfo<String>(firstSN));
+        @SuppressWarnings("unchecked")
+        final Dependency<String> dependency = (Dependency<String>) secondService.getDependency(0);
+        final List<String> values = new CopyOnWriteArrayList<String>();
+        dependency.setChangeListener(new Listener<Dependency<String>>() {
+            @Override
+            public void handleEvent(Dependency<String> result) {
+                values.add(result.get());
+            }
+        });
+
+        final BasicTransaction txn = newTransaction();
+        replaceValueService("green", txn);
+        prepare(txn);
+        commit(txn);
+
+        assertEquals(Collections.singletonList("green"), values);
+        assertEquals("green", dependency.get());
+    }
+
+    private ValueService addValueService(String value) throws Exception {
+        final BasicTransaction txn = newTransaction();
+        final ServiceBuilder<String> serviceBuilder = txnController.getServiceContext().addService(String.class, serviceRegistry, firstSN, txn);
+        final ValueService service = new ValueService(value);
+        serviceBuilder.setService(service);
+        assertNotNull(serviceBuilder.install());
+        prepare(txn);
+        commit(txn);
+        assertTrue(service.isUp());
+        return service;
+    }
+
+    private ValueService replaceValueService(String value, BasicTransaction txn) {
+        final ServiceController replaced = serviceRegistry.getRequiredService(firstSN);
+        final ServiceBuilder<String> serviceBuilder = txnController.getServiceContext().replaceService(String.class, replaced, txn);
+        final ValueService service = new ValueService(value);
+        serviceBuilder.setService(service);
+        assertNotNull(serviceBuilder.install());
+        return service;
+    }
+
+    private static final class ValueService implements Service<String> {
+        private final String value;
+        private final AtomicBoolean up = new AtomicBoolean();
+        private final CountDownLatch startLatch = new CountDownLatch(1);
+
+        // a null value makes the service fail to start
+        ValueService(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public void start(StartContext<String> context) {
+            if (value == null) {
+                context.fail();
+            } else {
+                up.set(true);
+                context.complete(value);
+            }
+            startLatch.countDown();
+        }
+
+        @Override
+        public void stop(StopContext context) {
+            up.set(false);
+            context.complete();
+        }
+
+        boolean isUp() {
+            return up.get();
+        }
+
+        void waitStart() throws InterruptedException {
+            startLatch.await();
+        }
+    }
+}
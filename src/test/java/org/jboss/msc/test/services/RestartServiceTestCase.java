@@ -0,0 +1,237 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.services;
+
+import static org.jboss.msc.service.ServiceMode.ACTIVE;
+import static org.jboss.msc.service.ServiceMode.ON_DEMAND;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.msc.service.Dependency;
+import org.jboss.msc.service.DependencyFlag;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.TestService;
+import org.jboss.msc.test.utils.TestService.DependencyInfo;
+import org.jboss.msc.txn.BasicTransaction;
+import org.junit.Test;
+
+/**
+ * Service restart test case.
+ */
+public class RestartServiceTestCase extends AbstractServiceTest {
+
+    private static final ServiceName firstSN = ServiceName.of("first");
+    private static final ServiceName secondSN = ServiceName.of("second");
+    private static final ServiceName thirdSN = ServiceName.of("third");
+    private static final ServiceName fourthSN = ServiceName.of("fourth");
+    private static final ServiceName fifthSN = ServiceName.of("fifth");
+    private static final ServiceName sixthSN = ServiceName.of("sixth");
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ON_DEMAND mode), no dependencies</LI>
+     *   <LI><B>second service</B> (ACTIVE mode), depends on <B>first service</B></LI>
+     *   <LI><B>third service</B> (ACTIVE mode), depends on <B>second service</B>, tolerates its restart</LI>
+     *   <LI><B>fourth service</B> (ACTIVE mode), depends on <B>third service</B></LI>
+     *   <LI><B>fifth service</B> (ACTIVE mode), depends on <B>second service</B></LI>
+     *   <LI><B>sixth service</B> (ACTIVE mode), depends on <B>fifth service</B></LI>
+     *   <LI>restart <B>second service</B>: only <B>fifth</B> and <B>sixth</B> services are restarted along with it</LI>
+     * </UL>
+     */
+    @Test
+    public void restartWithTolerantDependent() throws Exception {
+        final TestService firstService = addService(firstSN, ON_DEMAND);
+        final TestService secondService = addService(secondSN, ACTIVE, firstSN);
+        final TestService thirdService = addService(serviceRegistry, thirdSN, false, ACTIVE,
+                new DependencyInfo<Void>(secondSN, DependencyFlag.RESTART_TOLERANT));
+        final TestService fourthService = addService(fourthSN, ACTIVE, thirdSN);
+        final TestService fifthService = addService(fifthSN, ACTIVE, secondSN);
+        final TestService sixthService = addService(sixthSN, ACTIVE, fifthSN);
+        assertTrue(firstService.isUp());
+        assertTrue(sixthService.isUp());
+
+        restartService(secondSN);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+        assertTrue(thirdService.isUp());
+        assertTrue(fourthService.isUp());
+        assertTrue(fifthService.isUp());
+        assertTrue(sixthService.isUp());
+        // dependencies are not undemanded during restart
+        assertEquals(1, firstService.getStartCount());
+        assertEquals(2, secondService.getStartCount());
+        // tolerant dependents are not affected
+        assertEquals(1, thirdService.getStartCount());
+        assertEquals(1, fourthService.getStartCount());
+        // other dependents are restarted
+        assertEquals(2, fifthService.getStartCount());
+        assertEquals(2, sixthService.getStartCount());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ACTIVE mode), no dependencies, tolerated by <B>second service</B></LI>
+     *   <LI>restart <B>first service</B> twice, then remove it: <B>second service</B> stops</LI>
+     * </UL>
+     */
+    @Test
+    public void restartTwiceAndRemove() throws Exception {
+        final TestService firstService = addService(firstSN);
+        final TestService secondService = addService(serviceRegistry, secondSN, false, ACTIVE,
+                new DependencyInfo<Void>(firstSN, DependencyFlag.RESTART_TOLERANT, DependencyFlag.UNREQUIRED));
+        restartService(firstSN);
+        restartService(firstSN);
+        assertTrue(firstService.isUp());
+        assertTrue(secondService.isUp());
+        assertEquals(3, firstService.getStartCount());
+        assertEquals(1, secondService.getStartCount());
+
+        assertTrue(removeService(firstSN, firstService));
+        assertFalse(firstService.isUp());
+        assertFalse(secondService.isUp());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ON_DEMAND mode), no dependencies, is not started</LI>
+     *   <LI>restart <B>first service</B>: nothing happens</LI>
+     * </UL>
+     */
+    @Test
+    public void restartDownService() throws Exception {
+        final TestService firstService = addService(firstSN, ON_DEMAND);
+        assertFalse(firstService.isUp());
+        restartService(firstSN);
+        assertFalse(firstService.isUp());
+        assertEquals(0, firstService.getStartCount());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ACTIVE mode), no dependencies, value "v1"</LI>
+     *   <LI><B>second service</B> (ACTIVE mode), depends on <B>first service</B>, reads its value on start</LI>
+     *   <LI>restart <B>first service</B>: <B>second service</B> is restarted in the same transaction and reads the
+     *   value of the new <B>first service</B> instance, "v2"</LI>
+     * </UL>
+     */
+    @Test
+    public void restartedDependencyValue() throws Exception {
+        addValueService();
+        final DependentService secondService = addDependentService();
+        assertEquals("v1", secondService.getStartValue());
+
+        restartService(firstSN);
+        assertEquals("v2", secondService.getStartValue());
+        assertEquals("v2", secondService.dependency.get());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ACTIVE mode), no dependencies, value "v1"</LI>
+     *   <LI><B>second service</B> (ACTIVE mode), depends on <B>first service</B>, reads its value on start</LI>
+     *   <LI>restart <B>first service</B> and roll back: <B>second service</B> reads "v2" during the transaction, and
+     *   the committed value "v1" again once it is rolled back</LI>
+     * </UL>
+     */
+    @Test
+    public void rolledBackDependencyValue() throws Exception {
+        addValueService();
+        final DependentService secondService = addDependentService();
+        assertEquals("v1", secondService.dependency.get());
+
+        final BasicTransaction txn = newTransaction();
+        serviceRegistry.getRequiredService(firstSN).restart(txn);
+        prepare(txn);
+        assertEquals("v2", secondService.getStartValue());
+        assertEquals("v2", secondService.dependency.get());
+        abort(txn);
+        assertEquals("v1", secondService.dependency.get());
+    }
+
+    private void addValueService() throws Exception {
+        final BasicTransaction txn = newTransaction();
+        final ServiceBuilder<String> serviceBuilder = txnController.getServiceContext().addService(String.class, serviceRegistry, firstSN, txn);
+        serviceBuilder.setService(new ValueService());
+        serviceBuilder.install();
+        prepare(txn);
+        commit(txn);
+    }
+
+    private DependentService addDependentService() throws Exception {
+        final BasicTransaction txn = newTransaction();
+        final ServiceBuilder<Void> serviceBuilder = txnController.getServiceContext().addService(serviceRegistry, secondSN, txn);
+        final DependentService service = new DependentService(serviceBuilder.<String>addDependency(firstSN));
+        serviceBuilder.setService(service);
+        serviceBuilder.install();
+        prepare(txn);
+        commit(txn);
+        return service;
+    }
+
+    // every start provides a new value: "v1", "v2", ...
+    private static final class ValueService implements Service<String> {
+        private final AtomicInteger startCount = new AtomicInteger();
+
+        @Override
+        public void start(StartContext<String> context) {
+            context.complete("v" + startCount.incrementAndGet());
+        }
+
+        @Override
+        public void stop(StopContext context) {
+            context.complete();
+        }
+    }
+
+    private static final class DependentService implements Service<Void> {
+        private final Dependency<String> dependency;
+        private volatile String startValue;
+
+        DependentService(Dependency<String> dependency) {
+            this.dependency = dependency;
+        }
+
+        @Override
+        public void start(StartContext<Void> context) {
+            startValue = dependency.get();
+            context.complete();
+        }
+
+        @Override
+        public void stop(StopContext context) {
+            context.complete();
+        }
+
+        String getStartValue() {
+            return startValue;
+        }
+    }
+}
@@ -258,4 +258,30 @@ public class RollbackServiceStateTestCase extends AbstractServiceTest {
         assertFalse(firstService.isUp());
     }
 
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>add a service</LI>
+     *   <LI>add a dependent service, requiring the first service, and rollback the transaction</LI>
+     *   <LI>remove the first service: no dependent is left behind by the rollback</LI>
+     * </UL>
+     */
+    @Test
+    public void revertDependentInstallation() throws Exception {
+        final TestService firstService = addService(firstSN);
+        assertTrue(firstService.isUp());
+        // add dependent service and rollback
+        final BasicTransaction txn = newTransaction();
+        final TestServiceBuilder secondServiceBuilder = new TestServiceBuilder(txn, secondSN, new DependencyInfo<Void>(firstSN, DependencyFlag.REQUIRED));
+        final TestService secondService = secondServiceBuilder.getService();
+        assertNotNull(secondServiceBuilder.install());
+        secondService.waitStart();
+        assertTrue(secondService.isUp());
+        rollback(txn);
+        assertFalse(secondService.isUp());
+        assertTrue(firstService.isUp());
+        // first service can be removed
+        assertTrue(removeService(firstSN, firstService));
+        assertFalse(firstService.isUp());
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.services;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.ServiceContext;
+import org.junit.Test;
+
+/**
+ * Measures the heap retained by installed services and by their dependencies, as the growth of the used heap after
+ * a full collection. Services share a single stateless {@link Service} and names are created beforehand, so only the
+ * structures of the container are measured.
+ * <p>
+ * Heap measurements depend on the JVM and on the collector, so this test only runs when the {@code msc.footprint}
+ * system property is {@code true}, e.g. {@code mvn test -Dtest=ServiceFootprintTestCase -Dmsc.footprint=true}.
+ */
+public class ServiceFootprintTestCase extends AbstractServiceTest {
+
+    private static final int SERVICES = 20000;
+    // upper bounds, with some slack over the measured figures to absorb differences between JVMs
+    private static final long MAX_BYTES_PER_SERVICE = 750;
+    private static final long MAX_BYTES_PER_DEPENDENCY = 100;
+
+    private static final Service<Void> service = new Service<Void>() {
+        @Override
+        public void start(StartContext<Void> context) {
+            context.complete();
+        }
+
+        @Override
+        public void stop(StopContext context) {
+            context.complete();
+        }
+    };
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>install many services without dependencies: the heap grows by less than {@link #MAX_BYTES_PER_SERVICE}
+     *   per service</LI>
+     *   <LI>install as many services, each depending on one of the former: the heap grows by less than
+     *   {@link #MAX_BYTES_PER_SERVICE} per service plus {@link #MAX_BYTES_PER_DEPENDENCY} per dependency</LI>
+     * </UL>
+     */
+    @Test
+    public void footprint() throws Exception {
+        assumeTrue(Boolean.getBoolean("msc.footprint"));
+        final ServiceName[] names = new ServiceName[SERVICES];
+        final ServiceName[] dependentNames = new ServiceName[SERVICES];
+        for (int i = 0; i < SERVICES; i++) {
+            names[i] = ServiceName.of("footprint", "s" + i);
+            dependentNames[i] = ServiceName.of("footprint", "d" + i);
+        }
+        final long initialHeap = usedHeap();
+        install(names, null);
+        final long servicesHeap = usedHeap();
+        install(dependentNames, names);
+        final long dependentsHeap = usedHeap();
+
+        final long bytesPerService = (servicesHeap - initialHeap) / SERVICES;
+        final long bytesPerDependency = (dependentsHeap - servicesHeap) / SERVICES - bytesPerService;
+        assertTrue(bytesPerService + " bytes per service", bytesPerService < MAX_BYTES_PER_SERVICE);
+        assertTrue(bytesPerDependency + " bytes per dependency", bytesPerDependency < MAX_BYTES_PER_DEPENDENCY);
+    }
+
+    private void install(final ServiceName[] names, final ServiceName[] dependencies) throws Exception {
+        // an untracked transaction, so that it can be collected once committed
+        final BasicTransaction txn = newTransaction(defaultExecutor);
+        final ServiceContext serviceContext = txnController.getServiceContext();
+        for (int i = 0; i < names.length; i++) {
+            final ServiceBuilder<Void> serviceBuilder = serviceContext.addService(serviceRegistry, names[i], txn);
+            serviceBuilder.setService(service);
+            if (dependencies != null) {
+                serviceBuilder.addDependency(dependencies[i]);
+            }
+            serviceBuilder.install();
+        }
+        prepare(txn);
+        commit(txn);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.jboss.msc.service.LatencyStatistics;
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceLatency;
+import org.jboss.msc.service.ServiceLatencyReport;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.txn.BasicTransaction;
+import org.junit.Test;
+
+/**
+ * Service start and stop latency test case.
+ */
+public class ServiceLatencyTestCase extends AbstractServiceTest {
+
+    private static final ServiceName fastSN = ServiceName.of("fast");
+    private static final ServiceName slowSN = ServiceName.of("slow");
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>fast service</B> (ACTIVE mode)</LI>
+     *   <LI><B>slow service</B> (ACTIVE mode), takes 50 milliseconds to start</LI>
+     *   <LI>the slowest services report lists <B>slow service</B> first</LI>
+     *   <LI>disable <B>slow service</B>: its stop latency is recorded</LI>
+     * </UL>
+     */
+    @Test
+    public void slowestServices() throws Exception {
+        addService(fastSN);
+        addSlowService();
+
+        ServiceLatencyReport report = serviceRegistry.getSlowestServices(10);
+        List<ServiceLatency> services = report.getServices();
+        assertEquals(2, services.size());
+        assertEquals(slowSN, services.get(0).getServiceName());
+        assertEquals(fastSN, services.get(1).getServiceName());
+        final LatencyStatistics startLatency = services.get(0).getStartLatency();
+        assertEquals(1, startLatency.getCount());
+        assertTrue(startLatency.getTotalNanos() >= 50000000L);
+        assertTrue(startLatency.getPercentileNanos(99) >= 50000000L);
+        assertEquals(startLatency.getMaxNanos(), startLatency.getTotalNanos());
+        assertEquals(0, services.get(0).getStopLatency().getCount());
+
+        disableService(slowSN);
+        report = serviceRegistry.getSlowestServices(1);
+        services = report.getServices();
+        assertEquals(1, services.size());
+        assertEquals(slowSN, services.get(0).getServiceName());
+        assertEquals(1, services.get(0).getStopLatency().getCount());
+        assertTrue(report.toJson().startsWith("{\"services\":[{\"name\":\"slow\",\"start\":{\"count\":1,"));
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>empty registry: the slowest services report is empty</LI>
+     * </UL>
+     */
+    @Test
+    public void emptyReport() {
+        final ServiceLatencyReport report = serviceRegistry.getSlowestServices(5);
+        assertTrue(report.getServices().isEmpty());
+        assertEquals("{\"services\":[]}", report.toJson());
+    }
+
+    private void addSlowService() throws Exception {
+        final BasicTransaction txn = newTransaction();
+        final ServiceBuilder<Void> serviceBuilder = txnController.getServiceContext().addService(serviceRegistry, slowSN, txn);
+        serviceBuilder.setService(new Service<Void>() {
+            @Override
+            public void start(StartContext<Void> context) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                context.complete();
+            }
+
+            @Override
+            public void stop(StopContext context) {
+                context.complete();
+            }
+        });
+        assertNotNull(serviceBuilder.install());
+        prepare(txn);
+        commit(txn);
+    }
+}
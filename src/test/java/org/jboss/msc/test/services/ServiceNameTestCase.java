@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.test.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.ServiceNameCodec;
+import org.junit.Test;
+
+/**
+ * {@link ServiceName} test case.
+ */
+public class ServiceNameTestCase {
+
+    @Test
+    public void intern() {
+        final ServiceName name1 = ServiceName.of("jboss", "deployment", "unit", "foo");
+        final ServiceName name2 = ServiceName.parse("jboss.deployment.unit.foo");
+        assertNotSame(name1, name2);
+        final ServiceName interned = name1.intern();
+        assertSame(interned, name2.intern());
+        assertSame(interned, interned.intern());
+        assertSame(interned, ServiceName.ofInterned("jboss", "deployment", "unit", "foo"));
+        assertSame(interned, ServiceName.ofInterned(ServiceName.of("jboss", "deployment"), "unit", "foo"));
+        assertEquals(name1, interned);
+        assertEquals(interned, name2);
+        assertEquals(name1.hashCode(), interned.hashCode());
+    }
+
+    @Test
+    public void internSharesPrefixes() {
+        final ServiceName foo = ServiceName.ofInterned("jboss", "deployment", "unit", "foo");
+        final ServiceName bar = ServiceName.of("jboss", "deployment", "unit", "bar").intern();
+        assertSame(foo.getParent(), bar.getParent());
+        assertSame(foo.getParent(), ServiceName.ofInterned("jboss", "deployment", "unit"));
+        assertFalse(foo.equals(bar));
+        assertTrue(foo.getParent().isParentOf(bar));
+    }
+
+    @Test
+    public void codec() throws IOException {
+        final List<ServiceName> names = Arrays.asList(
+                ServiceName.of("jboss", "deployment", "unit", "foo"),
+                ServiceName.of("jboss", "deployment", "unit", "bar"),
+                ServiceName.of("jboss", "deployment"),
+                ServiceName.of("unit", "foo"),
+                ServiceName.of("jboss", "deployment", "unit", "foo"),
+                ServiceName.of("other", "\"quoted\" segment", "\u00e9t\u00e9"));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ServiceNameCodec.writeServiceNames(new DataOutputStream(bytes), names);
+        final List<ServiceName> readNames = ServiceNameCodec.readServiceNames(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(names, readNames);
+        // prefixes are shared
+        assertSame(readNames.get(0).getParent(), readNames.get(1).getParent());
+        assertSame(readNames.get(2), readNames.get(0).getParent().getParent());
+        assertSame(readNames.get(0), readNames.get(4));
+    }
+
+    @Test
+    public void codecRejectsInvalidInput() throws IOException {
+        // one name referring to a prefix that was never written
+        final byte[] invalid = new byte[] {1, 5, 0};
+        try {
+            ServiceNameCodec.readServiceNames(new DataInputStream(new ByteArrayInputStream(invalid)));
+            fail("StreamCorruptedException expected");
+        } catch (StreamCorruptedException expected) {
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.services;
+
+import static org.jboss.msc.service.ServiceMode.ON_DEMAND;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.ServiceState;
+import org.jboss.msc.service.ServiceStateEvent;
+import org.jboss.msc.service.ServiceStateSubscription;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.TestService;
+import org.jboss.msc.txn.BasicTransaction;
+import org.junit.Test;
+
+/**
+ * Service state subscription test case.
+ */
+public class ServiceStateSubscriptionTestCase extends AbstractServiceTest {
+
+    private static final ServiceName firstSN = ServiceName.of("first");
+    private static final ServiceName secondSN = ServiceName.of("second");
+    private static final ServiceName thirdSN = ServiceName.of("third");
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>subscribe to the registry</LI>
+     *   <LI>add <B>first service</B> (ACTIVE mode) and <B>second service</B> (ON_DEMAND mode)</LI>
+     *   <LI>remove <B>first service</B></LI>
+     *   <LI>every committed state change is published, in order</LI>
+     * </UL>
+     */
+    @Test
+    public void registrySubscription() throws Exception {
+        final ServiceStateSubscription subscription = serviceRegistry.subscribe(16);
+        final TestService firstService = addService(firstSN);
+        addService(secondSN, ON_DEMAND);
+        assertTrue(removeService(firstSN, firstService));
+
+        final List<ServiceStateEvent> events = new ArrayList<ServiceStateEvent>();
+        assertEquals(3, subscription.drainTo(events, 10));
+        assertEvent(events.get(0), firstSN, ServiceState.NEW, ServiceState.UP);
+        assertEvent(events.get(1), secondSN, ServiceState.NEW, ServiceState.DOWN);
+        assertEvent(events.get(2), firstSN, ServiceState.UP, ServiceState.REMOVED);
+        assertNull(subscription.poll());
+        assertEquals(0, subscription.getDroppedEvents());
+
+        subscription.close();
+        addService(thirdSN);
+        assertNull(subscription.poll());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>add <B>first service</B> and <B>second service</B>, subscribe to <B>first service</B></LI>
+     *   <LI>disable and enable both services: only <B>first service</B> changes are published</LI>
+     *   <LI>close the subscription and disable <B>first service</B>: nothing is published</LI>
+     * </UL>
+     */
+    @Test
+    public void serviceSubscription() throws Exception {
+        addService(firstSN);
+        addService(secondSN);
+        final ServiceStateSubscription subscription = serviceRegistry.getRequiredService(firstSN).subscribe(4);
+        disableService(firstSN);
+        disableService(secondSN);
+        enableService(secondSN);
+        enableService(firstSN);
+
+        assertEvent(subscription.poll(), firstSN, ServiceState.UP, ServiceState.DOWN);
+        assertEvent(subscription.poll(), firstSN, ServiceState.DOWN, ServiceState.UP);
+        assertNull(subscription.poll());
+
+        subscription.close();
+        disableService(firstSN);
+        assertNull(subscription.poll());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>subscribe to the registry with capacity for two events</LI>
+     *   <LI>add a service and rollback: nothing is published</LI>
+     *   <LI>add three services: the third event is dropped</LI>
+     * </UL>
+     */
+    @Test
+    public void rollbackAndOverflow() throws Exception {
+        final ServiceStateSubscription subscription = serviceRegistry.subscribe(2);
+        final BasicTransaction txn = newTransaction();
+        final ServiceBuilder<Void> serviceBuilder = txnController.getServiceContext().addService(serviceRegistry, firstSN, txn);
+        final TestService firstService = new TestService(firstSN, serviceBuilder, false);
+        serviceBuilder.setService(firstService);
+        assertNotNull(serviceBuilder.install());
+        firstService.waitStart();
+        rollback(txn);
+        assertNull(subscription.poll());
+
+        addService(firstSN);
+        addService(secondSN);
+        addService(thirdSN);
+        assertEvent(subscription.poll(), firstSN, ServiceState.NEW, ServiceState.UP);
+        assertEvent(subscription.poll(), secondSN, ServiceState.NEW, ServiceState.UP);
+        assertNull(subscription.poll());
+        assertEquals(1, subscription.getDroppedEvents());
+    }
+
+    private static void assertEvent(ServiceStateEvent event, ServiceName serviceName, ServiceState previousState, ServiceState state) {
+        assertNotNull(event);
+        assertEquals(serviceName, event.getServiceName());
+        assertEquals(previousState, event.getPreviousState());
+        assertEquals(state, event.getState());
+    }
+}
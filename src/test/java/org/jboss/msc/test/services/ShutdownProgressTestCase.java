@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.services;
+
+import static org.jboss.msc.service.ServiceMode.ACTIVE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.msc.service.Service;
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.service.ShutdownProgress;
+import org.jboss.msc.service.StartContext;
+import org.jboss.msc.service.StopContext;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.TestService;
+import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.Listener;
+import org.junit.Test;
+
+/**
+ * Container shutdown progress test case.
+ */
+public class ShutdownProgressTestCase extends AbstractServiceTest {
+
+    private static final ServiceName firstSN = ServiceName.of("first");
+    private static final ServiceName secondSN = ServiceName.of("second");
+    private static final ServiceName thirdSN = ServiceName.of("third");
+    private static final ServiceName fourthSN = ServiceName.of("fourth");
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ACTIVE mode), no dependencies</LI>
+     *   <LI><B>second service</B> (ACTIVE mode), depends on <B>first service</B></LI>
+     *   <LI><B>third service</B> (ACTIVE mode), depends on <B>second service</B></LI>
+     *   <LI><B>fourth service</B> (ACTIVE mode), depends on <B>first service</B></LI>
+     *   <LI>container shutdown reports three waves: <B>third</B> and <B>fourth</B>, <B>second</B>, <B>first</B></LI>
+     * </UL>
+     */
+    @Test
+    public void shutdownWaves() throws Exception {
+        final TestService firstService = addService(firstSN, ACTIVE);
+        final TestService secondService = addService(secondSN, ACTIVE, firstSN);
+        final TestService thirdService = addService(thirdSN, ACTIVE, secondSN);
+        final TestService fourthService = addService(fourthSN, ACTIVE, firstSN);
+        assertNotNull(firstService);
+        assertNotNull(secondService);
+        assertNotNull(thirdService);
+        assertNotNull(fourthService);
+        assertTrue(fourthService.isUp());
+
+        final List<ShutdownProgress> events = Collections.synchronizedList(new ArrayList<ShutdownProgress>());
+        shutdownContainer(serviceContainer, new Listener<ShutdownProgress>() {
+            @Override
+            public void handleEvent(ShutdownProgress progress) {
+                events.add(progress);
+            }
+        });
+        assertFalse(firstService.isUp());
+        assertFalse(secondService.isUp());
+        assertFalse(thirdService.isUp());
+        assertFalse(fourthService.isUp());
+
+        assertEquals(3, events.size());
+        final int[] removedServices = {2, 3, 4};
+        for (int i = 0; i < events.size(); i++) {
+            final ShutdownProgress progress = events.get(i);
+            assertEquals(i + 1, progress.getCompletedWaves());
+            assertEquals(3, progress.getTotalWaves());
+            assertEquals(removedServices[i], progress.getRemovedServices());
+            assertEquals(4, progress.getTotalServices());
+        }
+        assertFalse(events.get(1).isComplete());
+        assertTrue(events.get(2).isComplete());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>shutdown of an empty container reports no progress</LI>
+     * </UL>
+     */
+    @Test
+    public void emptyContainerShutdown() throws Exception {
+        final List<ShutdownProgress> events = Collections.synchronizedList(new ArrayList<ShutdownProgress>());
+        shutdownContainer(serviceContainer, new Listener<ShutdownProgress>() {
+            @Override
+            public void handleEvent(ShutdownProgress progress) {
+                events.add(progress);
+            }
+        });
+        assertTrue(events.isEmpty());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI><B>first service</B> (ACTIVE mode), no dependencies</LI>
+     *   <LI><B>second service</B> (ACTIVE mode), no dependencies</LI>
+     *   <LI>container shutdown stops both services of the single wave in parallel: each stop waits for the other one
+     *   to be entered</LI>
+     * </UL>
+     */
+    @Test
+    public void waveServicesStopInParallel() throws Exception {
+        final CountDownLatch stopping = new CountDownLatch(2);
+        final AtomicInteger parallelStops = new AtomicInteger();
+        addStoppingService(firstSN, stopping, parallelStops);
+        addStoppingService(secondSN, stopping, parallelStops);
+        shutdownContainer(serviceContainer);
+        assertEquals(2, parallelStops.get());
+    }
+
+    private void addStoppingService(final ServiceName serviceName, final CountDownLatch stopping, final AtomicInteger parallelStops) throws Exception {
+        final BasicTransaction txn = newTransaction();
+        final ServiceBuilder<Void> serviceBuilder = txnController.getServiceContext().addService(serviceRegistry, serviceName, txn);
+        serviceBuilder.setService(new Service<Void>() {
+            @Override
+            public void start(StartContext<Void> context) {
+                context.complete();
+            }
+
+            @Override
+            public void stop(StopContext context) {
+                stopping.countDown();
+                try {
+                    if (stopping.await(10, TimeUnit.SECONDS)) {
+                        parallelStops.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    context.complete();
+                }
+            }
+        });
+        assertNotNull(serviceBuilder.install());
+        prepare(txn);
+        commit(txn);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.test.tasks;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jboss.msc.test.utils.AbstractTransactionTest;
+import org.jboss.msc.test.utils.TestCommittable;
+import org.jboss.msc.test.utils.TestExecutable;
+import org.jboss.msc.test.utils.TestRevertible;
+import org.jboss.msc.txn.ArjunaResource;
+import org.jboss.msc.txn.BasicTransaction;
+import org.junit.Test;
+
+import com.arjuna.ats.arjuna.AtomicAction;
+import com.arjuna.ats.arjuna.coordinator.TwoPhaseOutcome;
+
+/**
+ * Drives transactions registered with an Arjuna {@link AtomicAction} through prepare, commit and abort.
+ */
+public final class ArjunaResourceTestCase extends AbstractTransactionTest {
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>transaction with a task that has no commit nor rollback behavior is registered with an atomic action</LI>
+     *   <LI>the action prepares; the transaction votes read-only and is committed during prepare</LI>
+     * </UL>
+     */
+    @Test
+    public void readOnlyPrepare() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final TestExecutable<Void> e = new TestExecutable<Void>();
+        newTask(transaction, e, null, null, null);
+        final TestAction action = newAction();
+        ArjunaResource.getArjunaResource(txnController).registerWithAction(action, transaction);
+        assertEquals(TwoPhaseOutcome.PREPARE_READONLY, action.prepare());
+        assertCalled(e);
+        assertCommitted(transaction);
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>transaction with a committable task is registered with an atomic action</LI>
+     *   <LI>the action prepares; the transaction votes OK</LI>
+     *   <LI>the action commits the transaction</LI>
+     * </UL>
+     */
+    @Test
+    public void prepareAndCommit() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final TestExecutable<Void> e = new TestExecutable<Void>();
+        final TestRevertible r = new TestRevertible();
+        final TestCommittable c = new TestCommittable();
+        newTask(transaction, e, null, r, c);
+        final TestAction action = newAction();
+        ArjunaResource.getArjunaResource(txnController).registerWithAction(action, transaction);
+        assertEquals(TwoPhaseOutcome.PREPARE_OK, action.prepare());
+        assertPrepared(transaction);
+        action.commitPrepared();
+        assertCalled(e);
+        assertCalled(c);
+        assertNotCalled(r);
+        assertCommitted(transaction);
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>transaction with a revertible task is registered with an atomic action</LI>
+     *   <LI>the action prepares; the transaction votes OK</LI>
+     *   <LI>the action aborts the transaction</LI>
+     * </UL>
+     */
+    @Test
+    public void prepareAndAbort() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final TestExecutable<Void> e = new TestExecutable<Void>();
+        final TestRevertible r = new TestRevertible();
+        final TestCommittable c = new TestCommittable();
+        newTask(transaction, e, null, r, c);
+        final TestAction action = newAction();
+        ArjunaResource.getArjunaResource(txnController).registerWithAction(action, transaction);
+        assertEquals(TwoPhaseOutcome.PREPARE_OK, action.prepare());
+        assertPrepared(transaction);
+        action.abortPrepared();
+        assertCalled(e);
+        assertCalled(r);
+        assertNotCalled(c);
+        assertAborted(transaction);
+    }
+
+    private static TestAction newAction() {
+        final TestAction action = new TestAction();
+        action.begin();
+        // do not leave the action associated with the thread, or the next one would be nested in it
+        AtomicAction.suspend();
+        return action;
+    }
+
+    /**
+     * An atomic action whose two phases are driven by the test, so that the prepare vote can be checked.
+     */
+    private static final class TestAction extends AtomicAction {
+
+        int prepare() {
+            return prepare(true);
+        }
+
+        void commitPrepared() {
+            phase2Commit(true);
+        }
+
+        void abortPrepared() {
+            phase2Abort(true);
+        }
+    }
+}
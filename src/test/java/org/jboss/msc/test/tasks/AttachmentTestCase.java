@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.jboss.msc.test.utils.AbstractTransactionTest;
+import org.jboss.msc.txn.AttachmentKey;
+import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.Factory;
+import org.junit.Test;
+
+/**
+ * Transaction attachments test case.
+ */
+public class AttachmentTestCase extends AbstractTransactionTest {
+
+    private static final AttachmentKey<List<String>> LIST_KEY = AttachmentKey.create(new Factory<List<String>>() {
+        @Override
+        public List<String> create() {
+            return new ArrayList<String>();
+        }
+    });
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>put, replace and remove attachments of a transaction</LI>
+     *   <LI>a key with a factory creates its value on first get</LI>
+     * </UL>
+     */
+    @Test
+    public void attachments() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final AttachmentKey<String> key = AttachmentKey.create();
+        assertFalse(transaction.hasAttachment(key));
+        assertNull(transaction.getAttachment(key));
+        assertNull(transaction.putAttachmentIfAbsent(key, "a"));
+        assertEquals("a", transaction.putAttachmentIfAbsent(key, "b"));
+        assertTrue(transaction.ensureAttachmentValue(key, "a"));
+        assertFalse(transaction.replaceAttachment(key, "b", "c"));
+        assertTrue(transaction.replaceAttachment(key, "a", "c"));
+        assertEquals("c", transaction.putAttachment(key, "d"));
+        assertFalse(transaction.removeAttachment(key, "c"));
+        assertEquals("d", transaction.removeAttachment(key));
+        assertFalse(transaction.hasAttachment(key));
+
+        final List<String> list = transaction.getAttachment(LIST_KEY);
+        assertSame(list, transaction.getAttachment(LIST_KEY));
+        prepare(transaction);
+        commit(transaction);
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>create more keys than can be indexed, while other threads attach values to the same transaction</LI>
+     *   <LI>every attachment is kept, whether it is stored in a slot or in the fallback map</LI>
+     * </UL>
+     */
+    @Test
+    public void manyKeys() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final int threadCount = 4;
+        final int keysPerThread = 50;
+        final List<List<AttachmentKey<Integer>>> keys = new ArrayList<List<AttachmentKey<Integer>>>();
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            final List<AttachmentKey<Integer>> threadKeys = new ArrayList<AttachmentKey<Integer>>();
+            keys.add(threadKeys);
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < keysPerThread; j++) {
+                            final AttachmentKey<Integer> key = AttachmentKey.create();
+                            threadKeys.add(key);
+                            transaction.putAttachment(key, j);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        for (List<AttachmentKey<Integer>> threadKeys : keys) {
+            assertEquals(keysPerThread, threadKeys.size());
+            for (int j = 0; j < keysPerThread; j++) {
+                assertEquals(Integer.valueOf(j), transaction.getAttachment(threadKeys.get(j)));
+            }
+        }
+        prepare(transaction);
+        commit(transaction);
+    }
+}
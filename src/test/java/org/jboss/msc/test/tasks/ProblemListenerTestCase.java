@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jboss.msc.test.utils.AbstractTransactionTest;
+import org.jboss.msc.test.utils.TestExecutable;
+import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.Executable;
+import org.jboss.msc.txn.ExecuteContext;
+import org.jboss.msc.txn.Listener;
+import org.jboss.msc.txn.Problem;
+import org.jboss.msc.txn.Problem.Severity;
+import org.jboss.msc.txn.TaskController;
+import org.junit.Test;
+
+/**
+ * Problem listener and fail fast test case.
+ */
+public class ProblemListenerTestCase extends AbstractTransactionTest {
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>a task adds a warning, then an error, to a transaction with a problem listener</LI>
+     *   <LI>the listener is notified of both problems, while the transaction is still active</LI>
+     *   <LI>without fail fast, the dependent task executes</LI>
+     * </UL>
+     */
+    @Test
+    public void streamProblems() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final List<Problem> problems = new CopyOnWriteArrayList<Problem>();
+        transaction.addProblemListener(new ProblemCollector(problems));
+        final TaskController<Void> task = newTask(transaction, new FailingExecutable(), null, null, null);
+        final TestExecutable<Void> dependent = new TestExecutable<Void>();
+        newTask(transaction, dependent, null, null, null, task);
+        prepare(transaction);
+        assertTrue(dependent.wasCalled());
+        assertEquals(2, problems.size());
+        assertSame(Severity.WARNING, problems.get(0).getSeverity());
+        assertSame(Severity.ERROR, problems.get(1).getSeverity());
+        abort(transaction);
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>a task adds an error to a transaction that fails fast on errors</LI>
+     *   <LI>the tasks that depend on it are cancelled instead of executed</LI>
+     *   <LI>the transaction can still be prepared, and then aborted</LI>
+     * </UL>
+     */
+    @Test
+    public void failFast() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        transaction.setFailFast(Severity.ERROR);
+        final TaskController<Void> task = newTask(transaction, new FailingExecutable(), null, null, null);
+        final TestExecutable<Void> dependent = new TestExecutable<Void>();
+        final TaskController<Void> dependentTask = newTask(transaction, dependent, null, null, null, task);
+        final TestExecutable<Void> transitiveDependent = new TestExecutable<Void>();
+        newTask(transaction, transitiveDependent, null, null, null, dependentTask);
+        prepare(transaction);
+        assertFalse(dependent.wasCalled());
+        assertFalse(transitiveDependent.wasCalled());
+        assertFalse(canCommit(transaction));
+        abort(transaction);
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>fail fast severity must be above the maximum severity of the transaction</LI>
+     * </UL>
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void failFastOnTolerableSeverity() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        try {
+            transaction.setFailFast(Severity.WARNING);
+        } finally {
+            prepare(transaction);
+            commit(transaction);
+        }
+    }
+
+    private static final class FailingExecutable implements Executable<Void> {
+        @Override
+        public void execute(final ExecuteContext<Void> context) {
+            context.addProblem(Severity.WARNING, "warning");
+            context.addProblem(Severity.ERROR, "error");
+            context.complete();
+        }
+    }
+
+    private static final class ProblemCollector implements Listener<Problem> {
+        private final List<Problem> problems;
+
+        ProblemCollector(final List<Problem> problems) {
+            this.problems = problems;
+        }
+
+        @Override
+        public void handleEvent(final Problem problem) {
+            problems.add(problem);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.jboss.msc.test.utils.AbstractTransactionTest;
+import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.Problem;
+import org.jboss.msc.txn.Problem.Severity;
+import org.jboss.msc.txn.ProblemReport;
+import org.jboss.msc.txn.TaskController;
+import org.junit.Test;
+
+/**
+ * Problem report test case.
+ */
+public class ProblemReportTestCase extends AbstractTransactionTest {
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>add the same failure many times, with distinct exception instances, to an aggregating report</LI>
+     *   <LI>the report has a single entry, with all the occurrences counted</LI>
+     * </UL>
+     */
+    @Test
+    public void aggregateProblems() throws Exception {
+        final TaskController<Void> task = newTask();
+        final ProblemReport report = new ProblemReport();
+        report.setAggregating(true);
+        for (int i = 0; i < 1000; i++) {
+            report.addProblem(new Problem(task, "missing dependency", new IllegalStateException("foo"), Severity.ERROR));
+        }
+        report.addProblem(new Problem(task, "missing dependency", Severity.WARNING));
+        final List<Problem> problems = report.getProblems();
+        assertEquals(2, problems.size());
+        assertEquals(1000, report.getOccurrences(problems.get(0)));
+        assertEquals(1, report.getOccurrences(problems.get(1)));
+        assertEquals(1000, report.getProblemCount(Severity.ERROR));
+        assertEquals(1001, report.getProblemCount());
+        assertSame(Severity.ERROR, report.getMaxSeverity());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>add more problems than the cap of the report</LI>
+     *   <LI>the report records problems up to the cap, in order, and summarizes the remaining ones</LI>
+     * </UL>
+     */
+    @Test
+    public void capProblems() throws Exception {
+        final TaskController<Void> task = newTask();
+        final ProblemReport report = new ProblemReport();
+        report.setMaxProblems(3);
+        for (int i = 0; i < 10; i++) {
+            report.addProblem(new Problem(task, "problem " + i, i == 7 ? Severity.CRITICAL : Severity.WARNING));
+        }
+        final List<Problem> problems = report.getProblems();
+        assertEquals(4, problems.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("problem " + i, problems.get(i).getMessage());
+        }
+        assertSame(Severity.CRITICAL, problems.get(3).getSeverity());
+        assertSame(problems, report.getProblems());
+        assertEquals(10, report.getProblemCount());
+        assertSame(Severity.CRITICAL, report.getMaxSeverity());
+    }
+
+    private TaskController<Void> newTask() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final TaskController<Void> task = txnController.newTask(transaction).release();
+        prepare(transaction);
+        commit(transaction);
+        return task;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.test.tasks;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+
+import org.jboss.msc.test.utils.AbstractTransactionTest;
+import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.CommitContext;
+import org.jboss.msc.txn.Committable;
+import org.jboss.msc.txn.Executable;
+import org.jboss.msc.txn.ExecuteContext;
+import org.jboss.msc.txn.Revertible;
+import org.jboss.msc.txn.RollbackContext;
+import org.jboss.msc.txn.TaskController;
+import org.jboss.msc.txn.Validatable;
+import org.jboss.msc.txn.ValidateContext;
+import org.junit.Test;
+
+/**
+ * Tests that tasks release what they no longer need while their transaction is still referenced.
+ */
+public class TaskReleaseTestCase extends AbstractTransactionTest {
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>a task is executed in a transaction that is neither prepared nor committed</LI>
+     *   <LI>its executable can be collected before the transaction completes</LI>
+     * </UL>
+     */
+    @Test
+    public void executableReleasedOnceExecuted() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final CountDownLatch executed = new CountDownLatch(1);
+        final Reference<Executable<Void>> executable = newExecutedTask(transaction, executed);
+        executed.await();
+        assertCollected(executable);
+        prepare(transaction);
+        commit(transaction);
+        assertCommitted(transaction);
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>a task with validatable, revertible and committable is prepared and committed</LI>
+     *   <LI>the validatable can be collected once the transaction is prepared</LI>
+     *   <LI>the revertible and the committable can be collected once the transaction is committed, even though the
+     *   transaction and the task controller are still referenced</LI>
+     * </UL>
+     */
+    @Test
+    public void callbacksReleasedOnCommit() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final Callbacks callbacks = new Callbacks();
+        final TaskController<Void> controller = callbacks.newTask(transaction);
+        prepare(transaction);
+        assertCollected(callbacks.validatable);
+        assertNotNull(callbacks.committable.get());
+        commit(transaction);
+        assertCommitted(transaction);
+        assertCollected(callbacks.revertible);
+        assertCollected(callbacks.committable);
+        assertNotNull(controller.getTransaction());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>a task with validatable, revertible and committable is prepared and aborted</LI>
+     *   <LI>all of them can be collected once the transaction is rolled back</LI>
+     * </UL>
+     */
+    @Test
+    public void callbacksReleasedOnAbort() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final Callbacks callbacks = new Callbacks();
+        final TaskController<Void> controller = callbacks.newTask(transaction);
+        prepare(transaction);
+        abort(transaction);
+        assertAborted(transaction);
+        assertCollected(callbacks.revertible);
+        assertCollected(callbacks.committable);
+        assertNotNull(controller.getTransaction());
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>a parent task creates child tasks, one depending on the other</LI>
+     *   <LI>once the transaction is committed, the children can be collected even though the transaction and the parent
+     *   task controller are still referenced</LI>
+     * </UL>
+     */
+    @Test
+    public void subgraphReleasedOnCommit() throws Exception {
+        final BasicTransaction transaction = newTransaction();
+        final Children children = new Children();
+        final TaskController<Void> parent = newTask(transaction, children, null, null, null);
+        prepare(transaction);
+        commit(transaction);
+        assertCommitted(transaction);
+        assertCollected(children.first);
+        assertCollected(children.second);
+        assertNotNull(parent.getTransaction());
+    }
+
+    private static Reference<Executable<Void>> newExecutedTask(final BasicTransaction transaction, final CountDownLatch executed) {
+        final Executable<Void> executable = new Executable<Void>() {
+            @Override
+            public void execute(ExecuteContext<Void> context) {
+                context.complete();
+                executed.countDown();
+            }
+        };
+        newTask(transaction, executable, null, null, null);
+        return new WeakReference<Executable<Void>>(executable);
+    }
+
+    private static void assertCollected(final Reference<?> reference) throws InterruptedException {
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+
+    private static final class Callbacks {
+        private Reference<Validatable> validatable;
+        private Reference<Revertible> revertible;
+        private Reference<Committable> committable;
+
+        TaskController<Void> newTask(final BasicTransaction transaction) {
+            final Validatable validatable = new Validatable() {
+                @Override
+                public void validate(ValidateContext context) {
+                    context.complete();
+                }
+            };
+            final Revertible revertible = new Revertible() {
+                @Override
+                public void rollback(RollbackContext context) {
+                    context.complete();
+                }
+            };
+            final Committable committable = new Committable() {
+                @Override
+                public void commit(CommitContext context) {
+                    context.complete();
+                }
+            };
+            this.validatable = new WeakReference<Validatable>(validatable);
+            this.revertible = new WeakReference<Revertible>(revertible);
+            this.committable = new WeakReference<Committable>(committable);
+            return AbstractTransactionTest.newTask(transaction, null, validatable, revertible, committable);
+        }
+    }
+
+    private static final class Children implements Executable<Void> {
+        private volatile Reference<TaskController<Void>> first, second;
+
+        @Override
+        public void execute(ExecuteContext<Void> context) {
+            final TaskController<Void> first = newTask(context, new NoopExecutable(), null, null, null);
+            final TaskController<Void> second = newTask(context, new NoopExecutable(), null, null, null, first);
+            this.first = new WeakReference<TaskController<Void>>(first);
+            this.second = new WeakReference<TaskController<Void>>(second);
+            context.complete();
+        }
+    }
+
+    private static final class NoopExecutable implements Executable<Void> {
+        @Override
+        public void execute(ExecuteContext<Void> context) {
+            context.complete();
+        }
+    }
+}
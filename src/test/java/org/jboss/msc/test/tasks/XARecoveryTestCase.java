@@ -0,0 +1,235 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.tasks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.jboss.msc.service.ServiceBuilder;
+import org.jboss.msc.service.ServiceName;
+import org.jboss.msc.test.utils.AbstractServiceTest;
+import org.jboss.msc.test.utils.TestService;
+import org.jboss.msc.test.utils.TestService.DependencyInfo;
+import org.jboss.msc.txn.Problem.Severity;
+import org.jboss.msc.txn.TransactionController;
+import org.jboss.msc.txn.TransactionXAResourceManager;
+import org.jboss.msc.txn.XATransaction;
+import org.junit.Test;
+
+/**
+ * XA recovery journal and completion test case.
+ */
+public class XARecoveryTestCase extends AbstractServiceTest {
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>prepare a XA transaction on a resource manager with a journal</LI>
+     *   <LI>crash right after prepare, and restart the resource manager: the transaction is recovered, and can be committed</LI>
+     *   <LI>restart the resource manager again: there is nothing left to recover</LI>
+     * </UL>
+     */
+    @Test
+    public void recoverPreparedTransaction() throws Exception {
+        final File crashedJournal = File.createTempFile("msc", ".journal");
+        final File journal = File.createTempFile("msc", ".journal");
+        try {
+            final TestXid xid = new TestXid(1);
+            TransactionXAResourceManager resourceManager = newResourceManager(journal);
+            final XAResource xaResource = resourceManager.createXAResource(defaultExecutor, Severity.WARNING);
+            xaResource.start(xid, XAResource.TMNOFLAGS);
+            serviceRegistry.disable(resourceManager.getTransaction(xid));
+            xaResource.end(xid, XAResource.TMSUCCESS);
+            assertEquals(XAResource.XA_OK, xaResource.prepare(xid));
+            // simulate a crash by keeping the journal as it is right after prepare
+            Files.copy(journal.toPath(), crashedJournal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            xaResource.rollback(xid);
+            resourceManager.destroy();
+
+            resourceManager = newResourceManager(crashedJournal);
+            XAResource recoveryResource = resourceManager.createRecoveryXAResource();
+            final Xid[] recovered = recoveryResource.recover(XAResource.TMSTARTRSCAN);
+            assertEquals(1, recovered.length);
+            assertEquals(xid.getFormatId(), recovered[0].getFormatId());
+            assertArrayEquals(xid.getGlobalTransactionId(), recovered[0].getGlobalTransactionId());
+            assertArrayEquals(xid.getBranchQualifier(), recovered[0].getBranchQualifier());
+            recoveryResource.commit(recovered[0], false);
+            assertEquals(0, recoveryResource.recover(XAResource.TMSTARTRSCAN).length);
+            resourceManager.destroy();
+
+            resourceManager = newResourceManager(crashedJournal);
+            recoveryResource = resourceManager.createRecoveryXAResource();
+            assertEquals(0, recoveryResource.recover(XAResource.TMSTARTRSCAN).length);
+            try {
+                recoveryResource.commit(xid, false);
+                fail("XAException expected");
+            } catch (XAException e) {
+                assertEquals(XAException.XAER_NOTA, e.errorCode);
+            }
+            resourceManager.destroy();
+        } finally {
+            crashedJournal.delete();
+            journal.delete();
+        }
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>prepare a XA transaction that changed nothing: prepare returns XA_RDONLY</LI>
+     *   <LI>the transaction is already completed: it is not recovered, and cannot be committed</LI>
+     * </UL>
+     */
+    @Test
+    public void prepareReadOnlyTransaction() throws Exception {
+        final File journal = File.createTempFile("msc", ".journal");
+        try {
+            final TestXid xid = new TestXid(2);
+            final TransactionXAResourceManager resourceManager = newResourceManager(journal);
+            final XAResource xaResource = resourceManager.createXAResource(defaultExecutor, Severity.WARNING);
+            xaResource.start(xid, XAResource.TMNOFLAGS);
+            xaResource.end(xid, XAResource.TMSUCCESS);
+            assertEquals(XAResource.XA_RDONLY, xaResource.prepare(xid));
+            assertNull(resourceManager.getTransaction(xid));
+            assertEquals(0, xaResource.recover(XAResource.TMSTARTRSCAN).length);
+            try {
+                xaResource.commit(xid, false);
+                fail("XAException expected");
+            } catch (XAException e) {
+                assertEquals(XAException.XAER_NOTA, e.errorCode);
+            }
+            resourceManager.destroy();
+        } finally {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>disable the registry in a XA transaction</LI>
+     *   <LI>commit the transaction in one phase, without preparing it first</LI>
+     *   <LI>the registry is disabled, and there is nothing left to recover</LI>
+     * </UL>
+     */
+    @Test
+    public void commitOnePhase() throws Exception {
+        final File journal = File.createTempFile("msc", ".journal");
+        try {
+            final TestXid xid = new TestXid(3);
+            final TransactionXAResourceManager resourceManager = newResourceManager(journal);
+            final XAResource xaResource = resourceManager.createXAResource(defaultExecutor, Severity.WARNING);
+            xaResource.start(xid, XAResource.TMNOFLAGS);
+            final XATransaction transaction = resourceManager.getTransaction(xid);
+            serviceRegistry.disable(transaction);
+            xaResource.end(xid, XAResource.TMSUCCESS);
+            xaResource.commit(xid, true);
+            assertTrue(transaction.isTerminated());
+            assertNull(resourceManager.getTransaction(xid));
+            assertEquals(0, xaResource.recover(XAResource.TMSTARTRSCAN).length);
+            resourceManager.destroy();
+        } finally {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>install a service with a missing required dependency in a XA transaction, whose maximum severity is
+     *   warning</LI>
+     *   <LI>commit the transaction in one phase: validation reports an error, so the transaction rolls back, and
+     *   commit fails with XA_RBROLLBACK</LI>
+     *   <LI>the service is not installed, and there is nothing left to recover</LI>
+     * </UL>
+     */
+    @Test
+    public void commitOnePhaseRolledBack() throws Exception {
+        final File journal = File.createTempFile("msc", ".journal");
+        try {
+            final TestXid xid = new TestXid(4);
+            final TransactionController transactionController = TransactionController.createInstance();
+            final TransactionXAResourceManager resourceManager = newResourceManager(transactionController, journal);
+            final XAResource xaResource = resourceManager.createXAResource(defaultExecutor, Severity.WARNING);
+            xaResource.start(xid, XAResource.TMNOFLAGS);
+            final XATransaction transaction = resourceManager.getTransaction(xid);
+            final ServiceName serviceName = ServiceName.of("service");
+            final ServiceBuilder<Void> serviceBuilder = transactionController.getServiceContext().addService(serviceRegistry, serviceName, transaction);
+            serviceBuilder.setService(new TestService(serviceName, serviceBuilder, false, new DependencyInfo<Void>(ServiceName.of("missing"))));
+            serviceBuilder.install();
+            xaResource.end(xid, XAResource.TMSUCCESS);
+            try {
+                xaResource.commit(xid, true);
+                fail("XAException expected");
+            } catch (XAException e) {
+                assertEquals(XAException.XA_RBROLLBACK, e.errorCode);
+            }
+            assertTrue(transaction.isTerminated());
+            assertNull(resourceManager.getTransaction(xid));
+            assertNull(serviceRegistry.getService(serviceName));
+            assertEquals(0, xaResource.recover(XAResource.TMSTARTRSCAN).length);
+            resourceManager.destroy();
+        } finally {
+            journal.delete();
+        }
+    }
+
+    private static TransactionXAResourceManager newResourceManager(File journal) throws Exception {
+        return newResourceManager(TransactionController.createInstance(), journal);
+    }
+
+    private static TransactionXAResourceManager newResourceManager(TransactionController transactionController, File journal) throws Exception {
+        final TransactionXAResourceManager resourceManager = TransactionXAResourceManager.create(transactionController);
+        resourceManager.openJournal(journal);
+        return resourceManager;
+    }
+
+    private static final class TestXid implements Xid {
+        private final int id;
+
+        TestXid(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getFormatId() {
+            return 0x4d5343;
+        }
+
+        @Override
+        public byte[] getGlobalTransactionId() {
+            return new byte[] {'g', (byte) id};
+        }
+
+        @Override
+        public byte[] getBranchQualifier() {
+            return new byte[] {'b', (byte) id};
+        }
+    }
+}
@@ -32,8 +32,10 @@ import org.jboss.msc.service.ServiceContainerFactory;
 import org.jboss.msc.service.ServiceMode;
 import org.jboss.msc.service.ServiceName;
 import org.jboss.msc.service.ServiceRegistry;
+import org.jboss.msc.service.ShutdownProgress;
 import org.jboss.msc.test.utils.TestService.DependencyInfo;
 import org.jboss.msc.txn.BasicTransaction;
+import org.jboss.msc.txn.Listener;
 import org.jboss.msc.txn.Problem;
 import org.jboss.msc.txn.Problem.Severity;
 import org.jboss.msc.txn.ServiceContext;
@@ -117,8 +119,12 @@ public class AbstractServiceTest extends AbstractTransactionTest {
     }
 
     protected final void shutdownContainer(final ServiceContainer serviceContainer) throws Exception {
+        shutdownContainer(serviceContainer, null);
+    }
+
+    protected final void shutdownContainer(final ServiceContainer serviceContainer, final Listener<ShutdownProgress> progressListener) throws Exception {
         final BasicTransaction txn = newTransaction();
-        txnController.newTask(txn, new ShutdownContainerTask(serviceContainer, txn)).release();
+        txnController.newTask(txn, new ShutdownContainerTask(serviceContainer, txn, progressListener)).release();
         prepare(txn);
         commit(txn);
         assertNoCriticalProblems(txn);
@@ -246,7 +252,7 @@ public class AbstractServiceTest extends AbstractTransactionTest {
         prepare(txn);
         commit(txn);
         assertNoCriticalProblems(txn);
-        assertNull(serviceRegistry.getService(serviceName));
+        assertNotNull(serviceRegistry.getService(serviceName));
     }
 
     protected final void enableService(final ServiceName serviceName) throws InterruptedException {
@@ -260,13 +266,25 @@ public class AbstractServiceTest extends AbstractTransactionTest {
         prepare(txn);
         commit(txn);
         assertNoCriticalProblems(txn);
-        assertNull(serviceRegistry.getService(serviceName));
+        assertNotNull(serviceRegistry.getService(serviceName));
     }
 
     protected final void disableService(final ServiceName serviceName) throws InterruptedException {
-        enableService(serviceRegistry, serviceName);
+        disableService(serviceRegistry, serviceName);
     }
     
+    protected final void restartService(final ServiceRegistry serviceRegistry, final ServiceName serviceName) throws InterruptedException {
+        final BasicTransaction txn = newTransaction();
+        txnController.newTask(txn, new RestartServiceTask(serviceRegistry, serviceName, txn)).release();
+        prepare(txn);
+        commit(txn);
+        assertNoCriticalProblems(txn);
+    }
+
+    protected final void restartService(final ServiceName serviceName) throws InterruptedException {
+        restartService(serviceRegistry, serviceName);
+    }
+
     protected final TestService getService(final ServiceName serviceName) throws InterruptedException {
         return getService(serviceRegistry, serviceName);
     }
@@ -0,0 +1,163 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.msc.test.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.jboss.msc.service.ServiceMode;
+import org.jboss.msc.service.ServiceName;
+
+/**
+ * A random service graph, shaped like the graphs of real deployments: most services have few dependencies, and a few
+ * services are depended on by many others (power law fan-in, obtained by preferential attachment). Dependencies
+ * always point to services generated earlier, so the graph is acyclic and can be installed in generation order.
+ */
+public final class ServiceGraph {
+
+    private final ServiceName[] names;
+    private final ServiceMode[] modes;
+    private final boolean[] failToStart;
+    private final int[][] dependencies;
+    private final int edgeCount;
+
+    /**
+     * Generates a graph.
+     *
+     * @param prefix               the prefix of service names
+     * @param serviceCount         the number of services
+     * @param meanDependencyCount  the mean number of dependencies of each service
+     * @param failureRate          the fraction of services that fail to start
+     * @param random               the random generator
+     */
+    public ServiceGraph(final ServiceName prefix, final int serviceCount, final double meanDependencyCount, final double failureRate, final Random random) {
+        names = new ServiceName[serviceCount];
+        modes = new ServiceMode[serviceCount];
+        failToStart = new boolean[serviceCount];
+        dependencies = new int[serviceCount][];
+        // every service appears once, plus once per dependent, so services are picked proportionally to their fan-in
+        final List<Integer> attachments = new ArrayList<Integer>();
+        int edgeCount = 0;
+        for (int i = 0; i < serviceCount; i++) {
+            names[i] = prefix.append("s" + i);
+            final double mode = random.nextDouble();
+            modes[i] = mode < 0.6 ? ServiceMode.ACTIVE : mode < 0.85 ? ServiceMode.ON_DEMAND : ServiceMode.LAZY;
+            failToStart[i] = random.nextDouble() < failureRate;
+            // geometric distribution of the dependency count
+            int dependencyCount = 0;
+            while (i > 0 && random.nextDouble() < meanDependencyCount / (meanDependencyCount + 1)) {
+                dependencyCount++;
+            }
+            final int[] serviceDependencies = new int[Math.min(dependencyCount, i)];
+            int found = 0;
+            for (int attempt = 0; found < serviceDependencies.length && attempt < serviceDependencies.length * 4; attempt++) {
+                final int dependency = attachments.get(random.nextInt(attachments.size()));
+                if (!contains(serviceDependencies, found, dependency)) {
+                    serviceDependencies[found++] = dependency;
+                    attachments.add(dependency);
+                }
+            }
+            dependencies[i] = found == serviceDependencies.length ? serviceDependencies : Arrays.copyOf(serviceDependencies, found);
+            edgeCount += found;
+            attachments.add(i);
+        }
+        this.edgeCount = edgeCount;
+    }
+
+    private static boolean contains(final int[] array, final int length, final int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getServiceCount() {
+        return names.length;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public ServiceName getName(final int service) {
+        return names[service];
+    }
+
+    public ServiceMode getMode(final int service) {
+        return modes[service];
+    }
+
+    public boolean failsToStart(final int service) {
+        return failToStart[service];
+    }
+
+    public ServiceName[] getDependencyNames(final int service) {
+        final int[] serviceDependencies = dependencies[service];
+        final ServiceName[] dependencyNames = new ServiceName[serviceDependencies.length];
+        for (int i = 0; i < serviceDependencies.length; i++) {
+            dependencyNames[i] = names[serviceDependencies[i]];
+        }
+        return dependencyNames;
+    }
+
+    /**
+     * Computes which services are expected to be up once the graph is installed: the active services, and the
+     * services they demand, provided that neither the service nor any of its transitive dependencies fails to start.
+     *
+     * @return the expected up status of each service
+     */
+    public boolean[] getExpectedUp() {
+        return getExpectedUp(false);
+    }
+
+    /**
+     * Computes which services are expected to be up once the graph is started from scratch, as in
+     * {@link #getExpectedUp()}.
+     *
+     * @param failedServicesDisabled {@code true} if the services that fail to start are disabled, in which case they
+     *                               do not demand their dependencies either
+     * @return the expected up status of each service
+     */
+    public boolean[] getExpectedUp(final boolean failedServicesDisabled) {
+        final boolean[] canStart = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            canStart[i] = !failToStart[i];
+            for (int dependency : dependencies[i]) {
+                canStart[i] &= canStart[dependency];
+            }
+        }
+        // dependents are generated after their dependencies, so demand is propagated in reverse order
+        final boolean[] demanded = new boolean[names.length];
+        for (int i = names.length - 1; i >= 0; i--) {
+            if ((modes[i] == ServiceMode.ACTIVE || demanded[i]) && !(failedServicesDisabled && failToStart[i])) {
+                for (int dependency : dependencies[i]) {
+                    demanded[dependency] = true;
+                }
+            }
+        }
+        final boolean[] expectedUp = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            expectedUp[i] = canStart[i] && (modes[i] == ServiceMode.ACTIVE || demanded[i]);
+        }
+        return expectedUp;
+    }
+}
@@ -19,8 +19,10 @@
 package org.jboss.msc.test.utils;
 
 import org.jboss.msc.service.ServiceContainer;
+import org.jboss.msc.service.ShutdownProgress;
 import org.jboss.msc.txn.Executable;
 import org.jboss.msc.txn.ExecuteContext;
+import org.jboss.msc.txn.Listener;
 import org.jboss.msc.txn.Transaction;
 
 /**
@@ -32,16 +34,22 @@ final class ShutdownContainerTask implements Executable<Void> {
     
     private final ServiceContainer container;
     private final Transaction transaction;
+    private final Listener<ShutdownProgress> progressListener;
 
     ShutdownContainerTask(final ServiceContainer container, final Transaction transaction) {
+        this(container, transaction, null);
+    }
+
+    ShutdownContainerTask(final ServiceContainer container, final Transaction transaction, final Listener<ShutdownProgress> progressListener) {
         this.container = container;
         this.transaction = transaction;
+        this.progressListener = progressListener;
     }
 
     @Override
     public void execute(final ExecuteContext<Void> context) {
         try {
-            container.shutdown(transaction);
+            container.shutdown(transaction, progressListener);
         } finally {
             context.complete();
         }
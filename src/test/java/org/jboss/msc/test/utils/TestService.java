@@ -23,6 +23,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.msc.service.Dependency;
 import org.jboss.msc.service.DependencyFlag;
@@ -50,6 +51,7 @@ public final class TestService implements Service<Void> {
     private final boolean failToStart;
     private AtomicBoolean up = new AtomicBoolean();
     private AtomicBoolean failed = new AtomicBoolean();
+    private AtomicInteger startCount = new AtomicInteger();
 
     public TestService(ServiceName serviceName, ServiceBuilder<Void> serviceBuilder, final boolean failToStart, final DependencyInfo<?>... dependencyInfos) {
         this.serviceContext = serviceBuilder.getServiceContext();
@@ -65,6 +67,7 @@ public final class TestService implements Service<Void> {
     @Override
     public void start(final StartContext<Void> context) {
         assertFalse(up.get() || failed.get());
+        startCount.incrementAndGet();
         if (failToStart) {
             failed.set(true);
             //context.addProblem(new UnsupportedOperationException());
@@ -101,6 +104,10 @@ public final class TestService implements Service<Void> {
         return up.get();
     }
 
+    public int getStartCount() {
+        return startCount.get();
+    }
+
     public ServiceContext getServiceContext() {
         return serviceContext;
     }
@@ -0,0 +1,281 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2013 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.msc.txn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.transaction.xa.Xid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * XA recovery journal test case: compaction, damaged trailing records and group commit.
+ */
+public class XAJournalTestCase {
+
+    private static final int SMALL_SIZE = 4096;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("msc", ".journal");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".compact").delete();
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>prepare and complete many more transactions than the mapped journal file can hold, leaving some prepared</LI>
+     *   <LI>the journal is compacted each time it fills up, and does not grow</LI>
+     *   <LI>reopen the journal: exactly the transactions left prepared are recovered, in prepare order</LI>
+     * </UL>
+     */
+    @Test
+    public void compactWhenFull() throws Exception {
+        final List<Xid> leftPrepared = new ArrayList<Xid>();
+        XAJournal journal = XAJournal.open(file, SMALL_SIZE);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                final Xid xid = new TestXid(i);
+                journal.prepared(xid);
+                if (i % 100 == 0) {
+                    leftPrepared.add(xid);
+                } else if (i % 2 == 0) {
+                    journal.committed(xid);
+                } else {
+                    journal.rolledBack(xid);
+                }
+            }
+            assertEquals(SMALL_SIZE, file.length());
+        } finally {
+            journal.close();
+        }
+        journal = XAJournal.open(file, SMALL_SIZE);
+        try {
+            assertXids(leftPrepared, journal.getPreparedTransactions());
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>prepare three transactions, and cut the journal file in the middle of the last record</LI>
+     *   <LI>reopen the journal: only the first two transactions are recovered</LI>
+     *   <LI>prepare another transaction and reopen the journal again: the truncated record was overwritten</LI>
+     * </UL>
+     */
+    @Test
+    public void truncatedTrailingRecord() throws Exception {
+        final List<Xid> xids = prepare(3);
+        final long end = endOfRecords(xids);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(end - 5);
+        } finally {
+            raf.close();
+        }
+        XAJournal journal = XAJournal.open(file, SMALL_SIZE);
+        try {
+            assertXids(xids.subList(0, 2), journal.getPreparedTransactions());
+            journal.prepared(new TestXid(3));
+        } finally {
+            journal.close();
+        }
+        journal = XAJournal.open(file, SMALL_SIZE);
+        try {
+            final List<Xid> expected = new ArrayList<Xid>(xids.subList(0, 2));
+            expected.add(new TestXid(3));
+            assertXids(expected, journal.getPreparedTransactions());
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>prepare three transactions, and corrupt the last byte of the body of the last record</LI>
+     *   <LI>reopen the journal: the checksum of the last record does not match, only the first two transactions are
+     *   recovered</LI>
+     * </UL>
+     */
+    @Test
+    public void corruptTrailingRecord() throws Exception {
+        final List<Xid> xids = prepare(3);
+        final long end = endOfRecords(xids);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // the last body byte precedes the 4 byte checksum
+            raf.seek(end - 5);
+            final int b = raf.read();
+            raf.seek(end - 5);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+        final XAJournal journal = XAJournal.open(file, SMALL_SIZE);
+        try {
+            assertXids(xids.subList(0, 2), journal.getPreparedTransactions());
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Usecase:
+     * <UL>
+     *   <LI>many threads prepare transactions at the same time</LI>
+     *   <LI>the prepares share forces of the journal: there are fewer forces than prepares</LI>
+     *   <LI>reopen the journal: all transactions are recovered</LI>
+     * </UL>
+     */
+    @Test
+    public void concurrentPreparesShareForce() throws Exception {
+        final int threadCount = 16;
+        final XAJournal journal = XAJournal.open(file, SMALL_SIZE);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final List<Thread> threads = new ArrayList<Thread>();
+        final long initialForces;
+        try {
+            initialForces = journal.getForceCount();
+            // hold the journal so that the prepares pile up and are appended together once it is released
+            synchronized (journal) {
+                for (int i = 0; i < threadCount; i++) {
+                    final Xid xid = new TestXid(i);
+                    final Thread thread = new Thread(new Runnable() {
+                        public void run() {
+                            try {
+                                journal.prepared(xid);
+                            } catch (Throwable t) {
+                                failure.compareAndSet(null, t);
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    });
+                    threads.add(thread);
+                    thread.start();
+                }
+                for (Thread thread: threads) {
+                    while (thread.getState() != Thread.State.BLOCKED) {
+                        Thread.sleep(1);
+                    }
+                }
+            }
+            done.await();
+            assertEquals(null, failure.get());
+            final long forces = journal.getForceCount() - initialForces;
+            assertTrue("expected fewer than " + threadCount + " forces, got " + forces, forces < threadCount);
+            assertEquals(threadCount, journal.getPreparedTransactions().size());
+        } finally {
+            journal.close();
+        }
+        final XAJournal reopened = XAJournal.open(file, SMALL_SIZE);
+        try {
+            assertEquals(threadCount, reopened.getPreparedTransactions().size());
+            for (int i = 0; i < threadCount; i++) {
+                assertTrue(reopened.isPrepared(new TestXid(i)));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private List<Xid> prepare(final int count) throws IOException {
+        final List<Xid> xids = new ArrayList<Xid>();
+        final XAJournal journal = XAJournal.open(file, SMALL_SIZE);
+        try {
+            for (int i = 0; i < count; i++) {
+                final Xid xid = new TestXid(i);
+                journal.prepared(xid);
+                xids.add(xid);
+            }
+        } finally {
+            journal.close();
+        }
+        return xids;
+    }
+
+    // the journal starts with a 4 byte header, followed by the records
+    private static long endOfRecords(final List<Xid> xids) {
+        long end = 4;
+        for (Xid xid: xids) {
+            // length, type, format id, global transaction id, branch qualifier, checksum
+            end += 4 + 1 + 4 + 2 + xid.getGlobalTransactionId().length + 2 + xid.getBranchQualifier().length + 4;
+        }
+        return end;
+    }
+
+    private static void assertXids(final List<Xid> expected, final Collection<Xid> actual) {
+        assertEquals(expected.size(), actual.size());
+        final Iterator<Xid> iterator = actual.iterator();
+        for (Xid xid: expected) {
+            final Xid actualXid = iterator.next();
+            assertEquals(xid.getFormatId(), actualXid.getFormatId());
+            assertArrayEquals(xid.getGlobalTransactionId(), actualXid.getGlobalTransactionId());
+            assertArrayEquals(xid.getBranchQualifier(), actualXid.getBranchQualifier());
+        }
+    }
+
+    private static final class TestXid implements Xid {
+        private final int id;
+
+        TestXid(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getFormatId() {
+            return 0x4d5343;
+        }
+
+        @Override
+        public byte[] getGlobalTransactionId() {
+            return new byte[] {'g', (byte) (id >> 8), (byte) id};
+        }
+
+        @Override
+        public byte[] getBranchQualifier() {
+            return new byte[] {'b', (byte) (id >> 8), (byte) id};
+        }
+    }
+}